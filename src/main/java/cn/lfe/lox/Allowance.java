@@ -0,0 +1,54 @@
+package cn.lfe.lox;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * What is left of a {@link Budget} during one run, shared by the script
+ * and every task it spawns. Interpreters take instructions and allocations
+ * from it in chunks, and count them down on their own, so the shared
+ * counters are only touched once per chunk.
+ */
+final class Allowance {
+    final Budget budget;
+    private final AtomicLong instructions;
+    private final AtomicLong allocations;
+    private final boolean timed;
+    // The System.nanoTime() the run has to be over by, if timed.
+    private final long deadline;
+
+    Allowance(Budget budget) {
+        this.budget = budget;
+        this.instructions = new AtomicLong(budget.instructions());
+        this.allocations = new AtomicLong(budget.allocations());
+        this.timed = budget.wallTime() != null;
+        this.deadline = timed ? System.nanoTime() + budget.wallTime().toNanos() : 0;
+    }
+
+    // Up to chunk instructions, fewer when less is left; none once the
+    // budget is spent.
+    int takeInstructions(int chunk) {
+        return take(instructions, chunk);
+    }
+
+    int takeAllocations(int chunk) {
+        return take(allocations, chunk);
+    }
+
+    boolean expired() {
+        return timed && System.nanoTime() - deadline >= 0;
+    }
+
+    // Long.MAX_VALUE if the run has no wall time limit.
+    long nanosLeft() {
+        return timed ? deadline - System.nanoTime() : Long.MAX_VALUE;
+    }
+
+    private static int take(AtomicLong left, int chunk) {
+        while (true) {
+            long available = left.get();
+            if (available <= 0) return 0;
+            int taken = (int) Math.min(available, chunk);
+            if (left.compareAndSet(available, available - taken)) return taken;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package cn.lfe.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A straight-line run of IR instructions ending in a terminator.
+ */
+class BasicBlock {
+    final int id;
+    final List<Instruction> instructions = new ArrayList<>();
+
+    BasicBlock(int id) {
+        this.id = id;
+    }
+
+    boolean isTerminated() {
+        return !instructions.isEmpty() && terminator().op.isTerminator();
+    }
+
+    Instruction terminator() {
+        return instructions.get(instructions.size() - 1);
+    }
+
+    @Override
+    public String toString() {
+        return "b" + id;
+    }
+}
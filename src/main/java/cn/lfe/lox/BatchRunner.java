@@ -0,0 +1,182 @@
+package cn.lfe.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Stream;
+
+/**
+ * Runs many independent scripts in one JVM, in parallel on a work-stealing
+ * pool, each in its own {@link LoxContext} with captured output, and
+ * reports how each one ended. Scripts that finish early leave their worker
+ * free to take queued ones from the others, so a few slow scripts don't
+ * hold up the batch.
+ */
+class BatchRunner {
+    // Exit statuses, the same as running the script on its own.
+    static final int EXIT_OK = 0;
+    static final int EXIT_ERROR = 65;
+    static final int EXIT_UNREADABLE = 66;
+
+    /**
+     * How one script of the batch ended.
+     */
+    static final class Entry {
+        final Path path;
+        final int exitStatus;
+        final ScriptResult result;
+
+        Entry(Path path, int exitStatus, ScriptResult result) {
+            this.path = path;
+            this.exitStatus = exitStatus;
+            this.result = result;
+        }
+
+        // SHA-256 of what the script printed, to compare runs by.
+        String outputHash() {
+            return ProgramCache.sha256(result.output());
+        }
+    }
+
+    private final int jobs;
+    private final Set<Superinstruction.Kind> fused;
+    // Null unless the IR pipeline is requested.
+    private final List<String> passes;
+    private final boolean irBackend;
+
+    BatchRunner(int jobs, Set<Superinstruction.Kind> fused, List<String> passes,
+                boolean irBackend) {
+        if (jobs < 1) {
+            throw new IllegalArgumentException("Jobs must be positive.");
+        }
+        this.jobs = jobs;
+        this.fused = fused;
+        this.passes = passes;
+        this.irBackend = irBackend;
+    }
+
+    // A directory stands for every .lox file below it, and a glob such as
+    // "tests/**/*.lox" for the files it matches below its leading part
+    // without wildcards. The scripts come back sorted.
+    static List<Path> scripts(String pattern) throws IOException {
+        Path path = Paths.get(pattern);
+        if (Files.isDirectory(path)) {
+            return scripts(path, "**.lox");
+        }
+        int wildcard = indexOfWildcard(pattern);
+        if (wildcard < 0) {
+            return List.of(path);
+        }
+        int separator = pattern.lastIndexOf('/', wildcard);
+        Path base = Paths.get(separator < 0 ? "." : pattern.substring(0, separator + 1));
+        return scripts(base, pattern.substring(separator + 1));
+    }
+
+    private static List<Path> scripts(Path base, String glob) throws IOException {
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        try (Stream<Path> files = Files.walk(base)) {
+            return files.filter(Files::isRegularFile)
+                    .filter(file -> matcher.matches(base.relativize(file)))
+                    .map(Path::normalize)
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private static int indexOfWildcard(String pattern) {
+        for (int i = 0; i < pattern.length(); i++) {
+            if ("*?[{".indexOf(pattern.charAt(i)) >= 0) return i;
+        }
+        return -1;
+    }
+
+    // Entries come back in the order of scripts, whatever order they ran in.
+    List<Entry> run(List<Path> scripts) {
+        ForkJoinPool pool = new ForkJoinPool(jobs);
+        try {
+            List<ForkJoinTask<Entry>> tasks = new ArrayList<>(scripts.size());
+            for (Path script : scripts) {
+                tasks.add(pool.submit(() -> run(script)));
+            }
+            List<Entry> entries = new ArrayList<>(tasks.size());
+            for (ForkJoinTask<Entry> task : tasks) {
+                entries.add(task.join());
+            }
+            return entries;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    Entry run(Path script) {
+        long start = System.nanoTime();
+        StringSink output = new StringSink();
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        PrintStream err = new PrintStream(errors, true, StandardCharsets.UTF_8);
+
+        String source;
+        try {
+            source = new String(Files.readAllBytes(script), Charset.defaultCharset());
+        } catch (IOException e) {
+            err.println("Could not read " + script + ": " + e.getMessage());
+            return new Entry(script, EXIT_UNREADABLE, result(ScriptResult.Status.COMPILE_ERROR,
+                    output, errors, start));
+        }
+
+        PassManager passManager = passes != null ? new PassManager(passes, null, null) : null;
+        LoxContext context = new LoxContext(output, new Diagnostics(err), fused, passManager, irBackend);
+        ScriptResult.Status status;
+        try {
+            CompiledProgram program = context.compile(source);
+            if (program == null) {
+                status = ScriptResult.Status.COMPILE_ERROR;
+            } else {
+                status = context.run(program) ? ScriptResult.Status.OK : ScriptResult.Status.RUNTIME_ERROR;
+            }
+        } catch (Throwable error) {
+            // Whatever a script does to the interpreter, such as nesting
+            // code too deeply for the parser, fails that script alone.
+            err.println(error instanceof StackOverflowError ? "Stack overflow." : error.toString());
+            status = ScriptResult.Status.RUNTIME_ERROR;
+        }
+        return new Entry(script, status == ScriptResult.Status.OK ? EXIT_OK : EXIT_ERROR,
+                result(status, output, errors, start));
+    }
+
+    // One line per script, then a summary line; each failed script's
+    // errors follow its line, indented.
+    static void report(List<Entry> entries, Duration elapsed, PrintStream out) {
+        int failed = 0;
+        for (Entry entry : entries) {
+            out.printf("%-13s %3d %8.1fms %s %s%n", entry.result.status(), entry.exitStatus,
+                    entry.result.elapsed().toNanos() / 1e6, entry.outputHash(), entry.path);
+            if (entry.exitStatus != EXIT_OK) {
+                failed++;
+                for (String line : entry.result.errors().strip().split("\n")) {
+                    out.println("    " + line);
+                }
+            }
+        }
+        out.printf("%d scripts, %d passed, %d failed in %.2fs%n",
+                entries.size(), entries.size() - failed, failed, elapsed.toNanos() / 1e9);
+    }
+
+    private static ScriptResult result(ScriptResult.Status status, StringSink output,
+                                       ByteArrayOutputStream errors, long start) {
+        return new ScriptResult(status, output.toString(), errors.toString(StandardCharsets.UTF_8),
+                Duration.ofNanos(System.nanoTime() - start));
+    }
+}
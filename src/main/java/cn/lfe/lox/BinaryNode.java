@@ -0,0 +1,130 @@
+package cn.lfe.lox;
+
+/**
+ * Self-specializing execution of an {@link Expr.Binary} site. A site starts
+ * {@code UNINITIALIZED}, rewrites itself on first execution to the variant
+ * matching the operator and the operand types it sees, and falls back to
+ * {@code GENERIC} for good the first time a guard fails.
+ */
+enum BinaryNode {
+    UNINITIALIZED {
+        @Override
+        Object execute(Expr.Binary expr, Object left, Object right) {
+            BinaryNode node = specialize(expr.operator.type, left, right);
+            expr.node = node;
+            return node.execute(expr, left, right);
+        }
+    },
+    NUMBER_ADD {
+        @Override
+        Object execute(Expr.Binary expr, Object left, Object right) {
+            if (Numbers.isNumber(left) && Numbers.isNumber(right)) return Numbers.add(left, right);
+            return deoptimize(expr, left, right);
+        }
+    },
+    NUMBER_SUBTRACT {
+        @Override
+        Object execute(Expr.Binary expr, Object left, Object right) {
+            if (Numbers.isNumber(left) && Numbers.isNumber(right)) return Numbers.subtract(left, right);
+            return deoptimize(expr, left, right);
+        }
+    },
+    NUMBER_MULTIPLY {
+        @Override
+        Object execute(Expr.Binary expr, Object left, Object right) {
+            if (Numbers.isNumber(left) && Numbers.isNumber(right)) return Numbers.multiply(left, right);
+            return deoptimize(expr, left, right);
+        }
+    },
+    NUMBER_DIVIDE {
+        @Override
+        Object execute(Expr.Binary expr, Object left, Object right) {
+            if (Numbers.isNumber(left) && Numbers.isNumber(right)) return Numbers.divide(left, right);
+            return deoptimize(expr, left, right);
+        }
+    },
+    NUMBER_GREATER {
+        @Override
+        Object execute(Expr.Binary expr, Object left, Object right) {
+            if (Numbers.isNumber(left) && Numbers.isNumber(right)) return Numbers.greater(left, right);
+            return deoptimize(expr, left, right);
+        }
+    },
+    NUMBER_GREATER_EQUAL {
+        @Override
+        Object execute(Expr.Binary expr, Object left, Object right) {
+            if (Numbers.isNumber(left) && Numbers.isNumber(right)) return Numbers.greaterEqual(left, right);
+            return deoptimize(expr, left, right);
+        }
+    },
+    NUMBER_LESS {
+        @Override
+        Object execute(Expr.Binary expr, Object left, Object right) {
+            if (Numbers.isNumber(left) && Numbers.isNumber(right)) return Numbers.less(left, right);
+            return deoptimize(expr, left, right);
+        }
+    },
+    NUMBER_LESS_EQUAL {
+        @Override
+        Object execute(Expr.Binary expr, Object left, Object right) {
+            if (Numbers.isNumber(left) && Numbers.isNumber(right)) return Numbers.lessEqual(left, right);
+            return deoptimize(expr, left, right);
+        }
+    },
+    NUMBER_EQUAL {
+        @Override
+        Object execute(Expr.Binary expr, Object left, Object right) {
+            if (Numbers.isNumber(left) && Numbers.isNumber(right)) return Numbers.equal(left, right);
+            return deoptimize(expr, left, right);
+        }
+    },
+    NUMBER_NOT_EQUAL {
+        @Override
+        Object execute(Expr.Binary expr, Object left, Object right) {
+            if (Numbers.isNumber(left) && Numbers.isNumber(right)) return !Numbers.equal(left, right);
+            return deoptimize(expr, left, right);
+        }
+    },
+    STRING_CONCAT {
+        @Override
+        Object execute(Expr.Binary expr, Object left, Object right) {
+            if (Rope.isString(left) && Rope.isString(right)) return Rope.concat(left, right);
+            return deoptimize(expr, left, right);
+        }
+    },
+    GENERIC {
+        @Override
+        Object execute(Expr.Binary expr, Object left, Object right) {
+            return Interpreter.binary(expr.operator, left, right);
+        }
+    };
+
+    abstract Object execute(Expr.Binary expr, Object left, Object right);
+
+    private static BinaryNode specialize(TokenType operator, Object left, Object right) {
+        if (Numbers.isNumber(left) && Numbers.isNumber(right)) {
+            return switch (operator) {
+                case PLUS -> NUMBER_ADD;
+                case MINUS -> NUMBER_SUBTRACT;
+                case STAR -> NUMBER_MULTIPLY;
+                case SLASH -> NUMBER_DIVIDE;
+                case GREATER -> NUMBER_GREATER;
+                case GREATER_EQUAL -> NUMBER_GREATER_EQUAL;
+                case LESS -> NUMBER_LESS;
+                case LESS_EQUAL -> NUMBER_LESS_EQUAL;
+                case EQUAL_EQUAL -> NUMBER_EQUAL;
+                case BANG_EQUAL -> NUMBER_NOT_EQUAL;
+                default -> GENERIC;
+            };
+        }
+        if (operator == TokenType.PLUS && Rope.isString(left) && Rope.isString(right)) {
+            return STRING_CONCAT;
+        }
+        return GENERIC;
+    }
+
+    private static Object deoptimize(Expr.Binary expr, Object left, Object right) {
+        expr.node = GENERIC;
+        return GENERIC.execute(expr, left, right);
+    }
+}
@@ -0,0 +1,42 @@
+package cn.lfe.lox;
+
+import java.util.List;
+
+/**
+ * A method read off an instance without being called right away, such as
+ * {@code var f = object.method;}. Immediate calls bind the receiver
+ * directly and never create one.
+ */
+class BoundMethod implements LoxCallable {
+    private final Object receiver;
+    private final LoxFunction method;
+
+    BoundMethod(Object receiver, LoxFunction method) {
+        this.receiver = receiver;
+        this.method = method;
+    }
+
+    @Override
+    public int arity() {
+        return method.arity();
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        return callN(interpreter, arguments.toArray());
+    }
+
+    @Override
+    public Object callN(Interpreter interpreter, Object... arguments) {
+        Object[] frame = method.frame(receiver);
+        for (int i = 0; i < arguments.length; i++) {
+            method.bind(frame, i, arguments[i]);
+        }
+        return method.invoke(interpreter, frame);
+    }
+
+    @Override
+    public String toString() {
+        return method.toString();
+    }
+}
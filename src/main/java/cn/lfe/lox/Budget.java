@@ -0,0 +1,108 @@
+package cn.lfe.lox;
+
+import java.time.Duration;
+
+/**
+ * Limits on what one run of a script may use, set on a {@link LoxContext}
+ * or a {@link ScriptService}. A run that goes over any of them is stopped
+ * where it is and fails, with the limit it exceeded reported as its error;
+ * the tasks it spawned share its budget.
+ *
+ * <p>Instructions are counted where the interpreter already polls for
+ * cancellation: once per loop iteration and once per function call.
+ * Allocations are the instances, lists, maps and closures the script
+ * creates. Budgets are immutable; each {@code with} method returns a copy
+ * with one more limit.
+ */
+public final class Budget {
+    public enum Kind {
+        INSTRUCTIONS("Instruction"),
+        WALL_TIME("Wall time"),
+        CALL_DEPTH("Call depth"),
+        ALLOCATIONS("Allocation");
+
+        private final String description;
+
+        Kind(String description) {
+            this.description = description;
+        }
+    }
+
+    public static final Budget UNLIMITED =
+            new Budget(Long.MAX_VALUE, null, Integer.MAX_VALUE, Long.MAX_VALUE);
+
+    private final long instructions;
+    // Null when there is no limit.
+    private final Duration wallTime;
+    private final int callDepth;
+    private final long allocations;
+
+    private Budget(long instructions, Duration wallTime, int callDepth, long allocations) {
+        this.instructions = instructions;
+        this.wallTime = wallTime;
+        this.callDepth = callDepth;
+        this.allocations = allocations;
+    }
+
+    public Budget withInstructions(long instructions) {
+        if (instructions < 1) {
+            throw new IllegalArgumentException("Instructions must be positive.");
+        }
+        return new Budget(instructions, wallTime, callDepth, allocations);
+    }
+
+    public Budget withWallTime(Duration wallTime) {
+        if (wallTime.isNegative() || wallTime.isZero()) {
+            throw new IllegalArgumentException("Wall time must be positive.");
+        }
+        return new Budget(instructions, wallTime, callDepth, allocations);
+    }
+
+    public Budget withCallDepth(int callDepth) {
+        if (callDepth < 1) {
+            throw new IllegalArgumentException("Call depth must be positive.");
+        }
+        return new Budget(instructions, wallTime, callDepth, allocations);
+    }
+
+    public Budget withAllocations(long allocations) {
+        if (allocations < 0) {
+            throw new IllegalArgumentException("Allocations must not be negative.");
+        }
+        return new Budget(instructions, wallTime, callDepth, allocations);
+    }
+
+    public long instructions() {
+        return instructions;
+    }
+
+    // Null when there is no limit.
+    public Duration wallTime() {
+        return wallTime;
+    }
+
+    public int callDepth() {
+        return callDepth;
+    }
+
+    public long allocations() {
+        return allocations;
+    }
+
+    // "Instruction budget of 1000 exceeded."
+    String exceeded(Kind kind) {
+        Object limit = switch (kind) {
+            case INSTRUCTIONS -> instructions;
+            case WALL_TIME -> wallTime.toMillis() + "ms";
+            case CALL_DEPTH -> callDepth;
+            case ALLOCATIONS -> allocations;
+        };
+        return kind.description + " budget of " + limit + " exceeded.";
+    }
+
+    @Override
+    public String toString() {
+        return "Budget[instructions=" + instructions + ", wallTime=" + wallTime +
+                ", callDepth=" + callDepth + ", allocations=" + allocations + "]";
+    }
+}
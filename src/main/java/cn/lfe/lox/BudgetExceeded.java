@@ -0,0 +1,16 @@
+package cn.lfe.lox;
+
+/**
+ * Unwinds a run that went over its {@link Budget}, from wherever it was.
+ * Not a {@link RuntimeError} or a {@link NativeError}, so no call site
+ * turns it into an error of its own; {@link LoxContext} catches it at the
+ * top and reports it.
+ */
+class BudgetExceeded extends RuntimeException {
+    final Budget.Kind kind;
+
+    BudgetExceeded(Budget budget, Budget.Kind kind) {
+        super(budget.exceeded(kind), null, false, false);
+        this.kind = kind;
+    }
+}
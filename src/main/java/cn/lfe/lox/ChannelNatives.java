@@ -0,0 +1,66 @@
+package cn.lfe.lox;
+
+/**
+ * Native functions over {@link LoxChannel}, for passing values between
+ * tasks:
+ * <pre>
+ * channel(capacity)      a new channel holding up to capacity values
+ * send(ch, value)        adds value, waiting while ch is full
+ * receive(ch)            takes the oldest value, waiting while ch is empty;
+ *                        nil once ch is closed and empty
+ * receiveMany(ch, max)   a list of up to max values, waiting only for the
+ *                        first; an empty list once ch is closed and empty
+ * close(ch)              wakes the waiting tasks; sending fails from now on
+ * </pre>
+ */
+final class ChannelNatives {
+    private ChannelNatives() {
+    }
+
+    static void define(Environment globals) {
+        globals.define("channel", new NativeFunction(1) {
+            @Override
+            public Object call1(Interpreter interpreter, Object capacity) {
+                return new LoxChannel(positiveInt(capacity, "Channel capacity"));
+            }
+        });
+        globals.define("send", new NativeFunction(2) {
+            @Override
+            public Object call2(Interpreter interpreter, Object channel, Object value) {
+                LoxChannel.cast(channel).send(interpreter, value);
+                return null;
+            }
+        });
+        globals.define("receive", new NativeFunction(1) {
+            @Override
+            public Object call1(Interpreter interpreter, Object channel) {
+                return LoxChannel.cast(channel).receive(interpreter);
+            }
+        });
+        globals.define("receiveMany", new NativeFunction(2) {
+            @Override
+            public Object call2(Interpreter interpreter, Object channel, Object max) {
+                return LoxChannel.cast(channel).receiveMany(interpreter,
+                        positiveInt(max, "Receive count"));
+            }
+        });
+        globals.define("close", new NativeFunction(1) {
+            @Override
+            public Object call1(Interpreter interpreter, Object channel) {
+                LoxChannel.cast(channel).close();
+                return null;
+            }
+        });
+    }
+
+    private static int positiveInt(Object value, String what) {
+        if (value instanceof Long number && number > 0 && number <= Integer.MAX_VALUE) {
+            return (int) (long) number;
+        }
+        if (value instanceof Double number && number > 0 && number <= Integer.MAX_VALUE
+                && number == Math.floor(number)) {
+            return (int) (double) number;
+        }
+        throw new NativeError(what + " must be a positive integer.");
+    }
+}
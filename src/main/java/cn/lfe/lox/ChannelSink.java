@@ -0,0 +1,112 @@
+package cn.lfe.lox;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Buffered sink that encodes output into one large {@link ByteBuffer} and
+ * writes it to a channel only when the buffer fills up or on
+ * {@link #flush()}. ASCII text and numbers are written byte by byte
+ * without going through an encoder or building strings.
+ */
+class ChannelSink implements OutputSink {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final WritableByteChannel channel;
+    private final CharsetEncoder encoder;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final byte[] newline;
+
+    ChannelSink(WritableByteChannel channel, Charset charset) {
+        this.channel = channel;
+        this.encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.newline = System.lineSeparator().getBytes(charset);
+    }
+
+    // Standard output, encoded the way System.out would encode it.
+    static ChannelSink stdout() {
+        return new ChannelSink(new FileOutputStream(FileDescriptor.out).getChannel(),
+                System.out.charset());
+    }
+
+    @Override
+    public void println(CharSequence text) {
+        String string = text.toString();
+        int length = string.length();
+        for (int i = 0; i < length; i++) {
+            char c = string.charAt(i);
+            if (c >= 0x80) {
+                encode(CharBuffer.wrap(string, i, length));
+                break;
+            }
+            if (!buffer.hasRemaining()) drain();
+            buffer.put((byte) c);
+        }
+        newline();
+    }
+
+    @Override
+    public void println(double number) {
+        if (buffer.remaining() < NumberFormatter.MAX_LENGTH) drain();
+        int end = NumberFormatter.format(number, buffer.array(), buffer.position());
+        buffer.position(end);
+        newline();
+    }
+
+    @Override
+    public void println(long number) {
+        if (buffer.remaining() < NumberFormatter.MAX_LENGTH) drain();
+        int end = NumberFormatter.format(number, buffer.array(), buffer.position());
+        buffer.position(end);
+        newline();
+    }
+
+    @Override
+    public void flush() {
+        drain();
+    }
+
+    private void encode(CharBuffer chars) {
+        encoder.reset();
+        while (true) {
+            CoderResult result = encoder.encode(chars, buffer, true);
+            if (result.isOverflow()) {
+                drain();
+            } else {
+                break;
+            }
+        }
+        while (encoder.flush(buffer).isOverflow()) {
+            drain();
+        }
+    }
+
+    private void newline() {
+        if (buffer.remaining() < newline.length) drain();
+        buffer.put(newline);
+    }
+
+    private void drain() {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            buffer.clear();
+        }
+    }
+}
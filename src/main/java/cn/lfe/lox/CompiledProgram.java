@@ -0,0 +1,75 @@
+package cn.lfe.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A script that has been scanned, parsed, resolved and optimized without
+ * reference to any interpreter, ready to run in any {@link LoxContext}, as
+ * often and on as many threads at once as needed; every run starts from
+ * that context's globals.
+ *
+ * <p>Everything compilation decides is written into the tree before the
+ * program is handed out, and never changes afterwards. The only writes
+ * while running are the self-specializing nodes and inline caches, which
+ * hold immutable values that any thread may replace at any time without
+ * changing what the program does.
+ */
+public final class CompiledProgram {
+    final List<Stmt> statements;
+    // Slots the top-level code needs for the locals of its blocks.
+    final int slotCount;
+    // The globals the program refers to, wherever they are defined, by
+    // the number their sites know them by.
+    final List<String> globals;
+
+    private CompiledProgram(List<Stmt> statements, List<String> globals) {
+        this.statements = List.copyOf(statements);
+        this.slotCount = Resolver.scriptSlots(statements);
+        this.globals = List.copyOf(globals);
+    }
+
+    // Throws IllegalArgumentException with the errors, formatted like on
+    // the command line, if source doesn't compile.
+    public static CompiledProgram compile(String source) {
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        Diagnostics diagnostics = new Diagnostics(new PrintStream(errors, true, StandardCharsets.UTF_8));
+        CompiledProgram program = compile(source, diagnostics,
+                EnumSet.allOf(Superinstruction.Kind.class));
+        if (program == null) {
+            throw new IllegalArgumentException(errors.toString(StandardCharsets.UTF_8).trim());
+        }
+        return program;
+    }
+
+    // Returns null if source has errors, after reporting them. Also gives
+    // up if diagnostics already had errors, like the prompt does until
+    // they are cleared.
+    static CompiledProgram compile(String source, Diagnostics diagnostics,
+                                   Set<Superinstruction.Kind> fused) {
+        // get tokens
+        Scanner scanner = new Scanner(source, diagnostics);
+        List<Token> tokens = scanner.scanTokens();
+
+        // get expression
+        Parser parser = new Parser(tokens, diagnostics);
+        List<Stmt> statements = parser.parse();
+
+        // Stop if there was a syntax error.
+        if (diagnostics.hadError()) return null;
+
+        Resolver resolver = new Resolver(diagnostics);
+        resolver.resolve(statements);
+
+        // Stop if there was a resolution error.
+        if (diagnostics.hadError()) return null;
+
+        new TypeInference().infer(statements);
+        new SuperinstructionPass(fused).fuse(statements);
+        return new CompiledProgram(statements, resolver.globals());
+    }
+}
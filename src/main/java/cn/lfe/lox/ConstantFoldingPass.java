@@ -0,0 +1,69 @@
+package cn.lfe.lox;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Evaluates operators whose inputs are all constants and substitutes the
+ * result for the temporary everywhere it is used. Operations that would
+ * fail at runtime are left alone so the error still happens, in order.
+ */
+class ConstantFoldingPass implements IrPass {
+    @Override
+    public String name() {
+        return "fold";
+    }
+
+    @Override
+    public void run(IrFunction function) {
+        Map<Integer, Operand> folded = new HashMap<>();
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (BasicBlock block : function.blocks) {
+                Iterator<Instruction> iterator = block.instructions.iterator();
+                while (iterator.hasNext()) {
+                    Instruction instruction = iterator.next();
+                    substitute(instruction, folded);
+                    Operand constant = fold(instruction);
+                    if (constant != null) {
+                        folded.put(instruction.dest, constant);
+                        iterator.remove();
+                        changed = true;
+                    }
+                }
+            }
+        }
+    }
+
+    private static void substitute(Instruction instruction, Map<Integer, Operand> folded) {
+        for (int i = 0; i < instruction.args.length; i++) {
+            Operand arg = instruction.args[i];
+            if (!arg.isConstant() && folded.containsKey(arg.temp)) {
+                instruction.args[i] = folded.get(arg.temp);
+            }
+        }
+    }
+
+    private static Operand fold(Instruction instruction) {
+        for (Operand arg : instruction.args) {
+            if (!arg.isConstant()) return null;
+        }
+
+        try {
+            return switch (instruction.op) {
+                case ADD, SUBTRACT, MULTIPLY, DIVIDE,
+                     GREATER, GREATER_EQUAL, LESS, LESS_EQUAL, EQUAL, NOT_EQUAL ->
+                        Operand.constant(Interpreter.binary(instruction.token,
+                                instruction.args[0].value, instruction.args[1].value));
+                case NEGATE, NOT ->
+                        Operand.constant(Interpreter.unary(instruction.token,
+                                instruction.args[0].value));
+                default -> null;
+            };
+        } catch (RuntimeError error) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package cn.lfe.lox;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Removes pure instructions whose temporaries are never read.
+ */
+class DeadCodePass implements IrPass {
+    @Override
+    public String name() {
+        return "dce";
+    }
+
+    @Override
+    public void run(IrFunction function) {
+        boolean changed = true;
+        while (changed) {
+            Set<Integer> used = new HashSet<>();
+            for (BasicBlock block : function.blocks) {
+                for (Instruction instruction : block.instructions) {
+                    for (Operand arg : instruction.args) {
+                        if (!arg.isConstant()) used.add(arg.temp);
+                    }
+                }
+            }
+
+            changed = false;
+            for (BasicBlock block : function.blocks) {
+                changed |= block.instructions.removeIf(instruction ->
+                        instruction.op.isPure() && !used.contains(instruction.dest));
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package cn.lfe.lox;
+
+import java.io.PrintStream;
+
+/**
+ * Where the front end and the interpreter report errors, and whether any
+ * were reported. Every {@link LoxContext} has its own, so the errors of one
+ * script never mark another as failed. Without a stream it prints to
+ * whatever {@code System.err} is at the time of each report.
+ */
+class Diagnostics {
+    private final PrintStream stream;
+    private boolean hadError = false;
+    private boolean hadRuntimeError = false;
+
+    Diagnostics() {
+        this(null);
+    }
+
+    Diagnostics(PrintStream stream) {
+        this.stream = stream;
+    }
+
+    void error(int line, String message) {
+        report(line, "", message);
+    }
+
+    void error(Token token, String message) {
+        if (token.type == TokenType.EOF) {
+            report(token.line, " at end", message);
+        } else {
+            report(token.line, " at '" + token.lexeme + "'", message);
+        }
+    }
+
+    void runtimeError(RuntimeError error) {
+        String where = error.trace.isEmpty()
+                ? "[line " + error.getToken().line + "]"
+                : String.join("\n", error.trace);
+        err().println(error.getMessage() + "\n" + where);
+        hadError = true;
+        hadRuntimeError = true;
+    }
+
+    // A run stopped by its budget fails like one with a runtime error.
+    void budgetExceeded(BudgetExceeded exceeded) {
+        err().println(exceeded.getMessage());
+        hadError = true;
+        hadRuntimeError = true;
+    }
+
+    boolean hadError() {
+        return hadError;
+    }
+
+    boolean hadRuntimeError() {
+        return hadRuntimeError;
+    }
+
+    // The prompt forgets the errors of one line before reading the next.
+    void reset() {
+        hadError = false;
+        hadRuntimeError = false;
+    }
+
+    private void report(int line, String where, String message) {
+        err().println("[line " + line + "] Error" + where + ": " + message);
+        hadError = true;
+    }
+
+    private PrintStream err() {
+        return stream != null ? stream : System.err;
+    }
+}
@@ -1,64 +1,191 @@
 package cn.lfe.lox;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Global variables, shared by every task of a script. Each binding has the
+ * slot its {@link GlobalLayout} gives the name, so reading or assigning one
+ * from code linked against the layout is two array loads and a volatile
+ * access, without hashing or locking. Each
+ * read, define and assignment is atomic on its own; nothing makes a read
+ * followed by an assignment atomic, except {@link #increment}.
+ *
+ * <p>Only giving a name its first binding takes the lock, which is also
+ * what grows the table.
+ */
 class Environment {
-    private final Map<String, Object> values = new HashMap<>();
-    final Environment enclosing;
+    // Stands for nil, where null means there is no binding.
+    static final Object NIL = new Object();
+
+    private static final VarHandle CELLS = MethodHandles.arrayElementVarHandle(Cell[].class);
+    private static final VarHandle VALUE;
+
+    static {
+        try {
+            VALUE = MethodHandles.lookup().findVarHandle(Cell.class, "value", Object.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // One binding. Cells are never replaced, so a reader holding a table
+    // from before it grew still sees every later assignment.
+    private static final class Cell {
+        volatile Object value;
+
+        Cell(Object value) {
+            this.value = value;
+        }
+    }
+
+    final GlobalLayout layout;
+    // Cells by index, published with release stores.
+    private volatile Cell[] cells;
+    private final ReentrantLock lock = new ReentrantLock();
+    // Values forked from a GlobalsSnapshot, by index: shared with
+    // every other fork and never written. A name gets a cell of its own
+    // the first time it is defined or assigned, which hides the shared
+    // value.
+    private final Object[] shared;
 
     Environment() {
-        enclosing = null;
+        this(new GlobalLayout(), new Object[0]);
     }
 
-    Environment(Environment enclosing) {
-        this.enclosing = enclosing;
+    Environment(GlobalLayout layout, Object[] shared) {
+        this.layout = layout;
+        this.shared = shared;
+        this.cells = new Cell[Math.max(shared.length, 64)];
     }
 
     Object get(Token name) {
-        if (values.containsKey(name.lexeme)) {
-            return values.get(name.lexeme);
+        int index = layout.find(name.lexeme);
+        if (index < 0) {
+            throw undefined(name.lexeme, name);
         }
+        return get(index, name);
+    }
 
-        if (enclosing != null) return enclosing.get(name);
-
-        throw new RuntimeError(name,
-                "Undefined variable '" + name.lexeme + "'.");
+    // index is where the layout put name.
+    Object get(int index, Token name) {
+        Object value = value(index);
+        if (value == null) {
+            throw undefined(name.lexeme, name);
+        }
+        return value == NIL ? null : value;
     }
 
     void define(String name, Object value) {
-        values.put(name, value);
+        Object stored = value == null ? NIL : value;
+        int index = layout.index(name);
+        Cell cell = cell(index);
+        if (cell != null) {
+            cell.value = stored;
+        } else {
+            bind(index, stored);
+        }
     }
 
     void assign(Token name, Object value) {
-        if (values.containsKey(name.lexeme)) {
-            values.put(name.lexeme, value);
-            return;
+        int index = layout.find(name.lexeme);
+        if (index < 0) {
+            throw undefined(name.lexeme, name);
         }
+        assign(index, name, value);
+    }
 
-        if (enclosing != null) {
-            enclosing.assign(name, value);
-            return;
+    void assign(int index, Token name, Object value) {
+        Object stored = value == null ? NIL : value;
+        Cell cell = cell(index);
+        if (cell != null) {
+            cell.value = stored;
+        } else if (shared(index) != null) {
+            bind(index, stored);
+        } else {
+            throw undefined(name.lexeme, name);
         }
-
-        throw new RuntimeError(name,
-                "Undefined variable '" + name.lexeme + "'.");
     }
 
-    Object getAt(int distance, String name) {
-        return ancestor(distance).values.get(name);
+    // Adds one to the number a global holds, atomically even while other
+    // tasks do the same, and returns the new value.
+    Object increment(String name) {
+        int index = layout.find(name);
+        Cell cell = index >= 0 ? cell(index) : null;
+        if (cell == null) {
+            Object value = index >= 0 ? shared(index) : null;
+            if (value == null) {
+                throw undefined(name, null);
+            }
+            cell = bindIfAbsent(index, value);
+        }
+        while (true) {
+            Object value = cell.value;
+            if (!Numbers.isNumber(value)) {
+                throw new NativeError("Operand must be a number.");
+            }
+            Object incremented = Numbers.add(value, 1L);
+            if (VALUE.compareAndSet(cell, value, incremented)) return incremented;
+        }
     }
 
-    Environment ancestor(int distance) {
-        Environment environment = this;
-        for (int i = 0; i < distance; i++) {
-            environment = environment.enclosing;
+    // Every binding, with nil as NIL, for a snapshot.
+    Map<String, Object> bindings() {
+        Map<String, Object> bindings = new HashMap<>();
+        Cell[] table = cells;
+        for (int i = 0; i < Math.max(table.length, shared.length); i++) {
+            Object value = value(i);
+            if (value != null) bindings.put(layout.name(i), value);
         }
+        return bindings;
+    }
 
-        return environment;
+    // The raw value of a binding, NIL for nil, or null if there is none.
+    private Object value(int index) {
+        Cell cell = cell(index);
+        return cell != null ? cell.value : shared(index);
+    }
+
+    private Cell cell(int index) {
+        Cell[] table = cells;
+        return index < table.length ? (Cell) CELLS.getAcquire(table, index) : null;
+    }
+
+    private Object shared(int index) {
+        return index < shared.length ? shared[index] : null;
+    }
+
+    private void bind(int index, Object value) {
+        Cell cell = bindIfAbsent(index, value);
+        cell.value = value;
+    }
+
+    // A task may have bound the name since the caller looked.
+    private Cell bindIfAbsent(int index, Object value) {
+        lock.lock();
+        try {
+            Cell[] table = cells;
+            if (index >= table.length) {
+                table = Arrays.copyOf(table, Math.max(index + 1, table.length * 2));
+            }
+            Cell cell = table[index];
+            if (cell == null) {
+                cell = new Cell(value);
+                CELLS.setRelease(table, index, cell);
+            }
+            cells = table;
+            return cell;
+        } finally {
+            lock.unlock();
+        }
     }
 
-    void assignAt(int distance, Token name, Object value) {
-        ancestor(distance).values.put(name.lexeme, value);
+    private static RuntimeException undefined(String name, Token token) {
+        String message = "Undefined variable '" + name + "'.";
+        return token != null ? new RuntimeError(token, message) : new NativeError(message);
     }
 }
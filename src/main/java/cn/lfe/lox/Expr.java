@@ -6,9 +6,15 @@ public abstract class Expr {
     R visitAssignExpr(Assign expr);
     R visitBinaryExpr(Binary expr);
     R visitCallExpr(Call expr);
+    R visitGetExpr(Get expr);
     R visitGroupingExpr(Grouping expr);
+    R visitIndexExpr(Index expr);
     R visitLiteralExpr(Literal expr);
     R visitLogicalExpr(Logical expr);
+    R visitSetExpr(Set expr);
+    R visitSetIndexExpr(SetIndex expr);
+    R visitSuperExpr(Super expr);
+    R visitThisExpr(This expr);
     R visitUnaryExpr(Unary expr);
     R visitVariableExpr(Variable expr);
   }
@@ -26,6 +32,9 @@ public abstract class Expr {
 
     public final Token name;
     public final Expr value;
+    public VarRef ref;
+    public int global = -1;
+    public Superinstruction fused;
   }
 
   public static class Binary extends Expr {
@@ -43,6 +52,9 @@ public abstract class Expr {
     public final Expr left;
     public final Token operator;
     public final Expr right;
+    public ValueType operands;
+    public BinaryNode node = BinaryNode.UNINITIALIZED;
+    public Superinstruction fused;
   }
 
   public static class Call extends Expr {
@@ -62,6 +74,22 @@ public abstract class Expr {
     public final List<Expr> arguments;
   }
 
+  public static class Get extends Expr {
+    public Get(Expr object, Token name) {
+      this.object = object;
+      this.name = name;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitGetExpr(this);
+    }
+
+    public final Expr object;
+    public final Token name;
+    public InlineCache cache;
+  }
+
   public static class Grouping extends Expr {
     public Grouping(Expr expression) {
       this.expression = expression;
@@ -75,6 +103,23 @@ public abstract class Expr {
     public final Expr expression;
   }
 
+  public static class Index extends Expr {
+    public Index(Expr object, Token bracket, Expr index) {
+      this.object = object;
+      this.bracket = bracket;
+      this.index = index;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitIndexExpr(this);
+    }
+
+    public final Expr object;
+    public final Token bracket;
+    public final Expr index;
+  }
+
   public static class Literal extends Expr {
     public Literal(Object value) {
       this.value = value;
@@ -103,6 +148,75 @@ public abstract class Expr {
     public final Expr left;
     public final Token operator;
     public final Expr right;
+    public LogicalNode node = LogicalNode.UNINITIALIZED;
+  }
+
+  public static class Set extends Expr {
+    public Set(Expr object, Token name, Expr value) {
+      this.object = object;
+      this.name = name;
+      this.value = value;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitSetExpr(this);
+    }
+
+    public final Expr object;
+    public final Token name;
+    public final Expr value;
+    public InlineCache cache;
+  }
+
+  public static class SetIndex extends Expr {
+    public SetIndex(Expr object, Token bracket, Expr index, Expr value) {
+      this.object = object;
+      this.bracket = bracket;
+      this.index = index;
+      this.value = value;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitSetIndexExpr(this);
+    }
+
+    public final Expr object;
+    public final Token bracket;
+    public final Expr index;
+    public final Expr value;
+  }
+
+  public static class Super extends Expr {
+    public Super(Token keyword, Token method) {
+      this.keyword = keyword;
+      this.method = method;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitSuperExpr(this);
+    }
+
+    public final Token keyword;
+    public final Token method;
+    public VarRef ref;
+    public VarRef receiver;
+  }
+
+  public static class This extends Expr {
+    public This(Token keyword) {
+      this.keyword = keyword;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitThisExpr(this);
+    }
+
+    public final Token keyword;
+    public VarRef ref;
   }
 
   public static class Unary extends Expr {
@@ -118,6 +232,8 @@ public abstract class Expr {
 
     public final Token operator;
     public final Expr right;
+    public ValueType operand;
+    public UnaryNode node = UnaryNode.UNINITIALIZED;
   }
 
   public static class Variable extends Expr {
@@ -131,6 +247,8 @@ public abstract class Expr {
     }
 
     public final Token name;
+    public VarRef ref;
+    public int global = -1;
   }
 
   abstract <R> R accept(Visitor<R> visitor);
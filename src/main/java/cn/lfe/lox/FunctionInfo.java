@@ -0,0 +1,29 @@
+package cn.lfe.lox;
+
+import java.util.List;
+
+/**
+ * Frame layout of a function computed by the {@link Resolver}: how many
+ * slots a call needs, which locals hold the receiver and the parameters,
+ * and how to build the closure's upvalues from the enclosing frame when
+ * the declaration runs.
+ */
+class FunctionInfo {
+    final int slotCount;
+    // The local bound to 'this' in methods, null in plain functions.
+    final Local receiver;
+    final List<Local> params;
+    // For each upvalue: true to capture a slot of the enclosing frame,
+    // false to reuse one of the enclosing closure's upvalues.
+    final boolean[] upvalueIsLocal;
+    final int[] upvalueIndex;
+
+    FunctionInfo(int slotCount, Local receiver, List<Local> params,
+                 boolean[] upvalueIsLocal, int[] upvalueIndex) {
+        this.slotCount = slotCount;
+        this.receiver = receiver;
+        this.params = params;
+        this.upvalueIsLocal = upvalueIsLocal;
+        this.upvalueIndex = upvalueIndex;
+    }
+}
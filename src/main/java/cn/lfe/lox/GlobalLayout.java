@@ -0,0 +1,110 @@
+package cn.lfe.lox;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Where the globals of one context live: the index of each name's slot in
+ * its {@link Environment}. A name gets its index when it is first defined
+ * or a program using it is linked, never by looking it up, and keeps it as
+ * long as the layout lives, so the functions a program defined go on
+ * finding their globals.
+ *
+ * <p>Each context has a layout of its own. One started from a
+ * {@link GlobalsSnapshot} extends the snapshot's frozen copy, so it agrees
+ * with the snapshot's functions, while the names it adds stay its own.
+ */
+final class GlobalLayout {
+    // Frozen; its names keep their indices and come first.
+    private final GlobalLayout base;
+    private final int baseSize;
+    private final Map<String, Integer> indices = new ConcurrentHashMap<>();
+    // Handing out indices takes the lock; looking names up doesn't.
+    private final ReentrantLock lock = new ReentrantLock();
+    private String[] names = new String[16];
+    private int count = 0;
+
+    GlobalLayout() {
+        this(null);
+    }
+
+    GlobalLayout(GlobalLayout base) {
+        this.base = base;
+        this.baseSize = base != null ? base.size() : 0;
+    }
+
+    int size() {
+        lock.lock();
+        try {
+            return baseSize + count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // The index of name, or -1 if it has none.
+    int find(String name) {
+        if (base != null) {
+            int index = base.find(name);
+            if (index >= 0) return index;
+        }
+        Integer index = indices.get(name);
+        return index != null ? index : -1;
+    }
+
+    // The index of name, which gets one if it has none yet.
+    int index(String name) {
+        int index = find(name);
+        return index >= 0 ? index : add(name);
+    }
+
+    // The indices of a program's globals, in the order it numbered them.
+    int[] link(List<String> globals) {
+        int[] linked = new int[globals.size()];
+        for (int i = 0; i < linked.length; i++) {
+            linked[i] = index(globals.get(i));
+        }
+        return linked;
+    }
+
+    // Only for indices handed out already.
+    String name(int index) {
+        if (index < baseSize) return base.name(index);
+        lock.lock();
+        try {
+            return names[index - baseSize];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // A copy that nothing adds to, for a snapshot.
+    GlobalLayout frozen() {
+        GlobalLayout copy = new GlobalLayout();
+        for (int i = 0, size = size(); i < size; i++) {
+            copy.add(name(i));
+        }
+        return copy;
+    }
+
+    private int add(String name) {
+        lock.lock();
+        try {
+            Integer index = indices.get(name);
+            if (index == null) {
+                if (count == names.length) {
+                    names = Arrays.copyOf(names, count * 2);
+                }
+                index = baseSize + count;
+                names[count++] = name;
+                indices.put(name, index);
+            }
+            return index;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
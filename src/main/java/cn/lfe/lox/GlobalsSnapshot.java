@@ -0,0 +1,54 @@
+package cn.lfe.lox;
+
+import java.util.Map;
+
+/**
+ * The globals of a {@link LoxContext} after it ran some initialization,
+ * such as a prelude of helper functions, frozen so that any number of new
+ * contexts can start from them without running it again. A new context
+ * only points its globals at the snapshot's bindings; whenever it defines
+ * or assigns one of them it gets its own copy of that binding, and every
+ * other context keeps seeing the original.
+ *
+ * <p>Contexts share the values themselves, so a snapshot only takes values
+ * no script can change: nil, booleans, numbers, strings, natives, and
+ * functions and classes that capture no variables.
+ */
+public final class GlobalsSnapshot {
+    // Frozen; every context started from the snapshot extends it, so the
+    // snapshot's functions find their globals in any of them.
+    final GlobalLayout layout;
+    // Values by index in layout, never written once taken; nil is
+    // Environment.NIL.
+    final Object[] values;
+    private final int size;
+
+    // Throws IllegalStateException if a global holds a mutable value.
+    GlobalsSnapshot(Environment globals) {
+        Map<String, Object> bindings = globals.bindings();
+        for (Map.Entry<String, Object> binding : bindings.entrySet()) {
+            if (!isImmutable(binding.getValue())) {
+                throw new IllegalStateException("Can't snapshot global '" + binding.getKey() +
+                        "', scripts sharing its value could change it.");
+            }
+        }
+        this.layout = globals.layout.frozen();
+        this.values = new Object[layout.size()];
+        bindings.forEach((name, value) -> values[layout.find(name)] = value);
+        this.size = bindings.size();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private static boolean isImmutable(Object value) {
+        if (value instanceof LoxFunction function) return !function.capturesVariables();
+        if (value instanceof IrClosure closure) return !closure.capturesVariables();
+        if (value instanceof LoxClass klass) return !klass.capturesVariables();
+        // A bound method holds on to its instance.
+        if (value instanceof BoundMethod) return false;
+        return value == Environment.NIL || value instanceof Boolean || Numbers.isNumber(value)
+                || Rope.isString(value) || value instanceof LoxCallable;
+    }
+}
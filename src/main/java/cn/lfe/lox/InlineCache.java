@@ -0,0 +1,23 @@
+package cn.lfe.lox;
+
+/**
+ * What a property site found the last time it ran, keyed on the receiver's
+ * {@link Shape}: the field index, or the method when the name is not a
+ * field. Set sites that add a field also remember the shape it leads to.
+ * <p>
+ * Entries are immutable and replaced whole on a miss, so a site never
+ * observes a shape paired with another shape's index.
+ */
+final class InlineCache {
+    final Shape shape;
+    final int index;
+    final LoxFunction method;
+    final Shape transition;
+
+    InlineCache(Shape shape, int index, LoxFunction method, Shape transition) {
+        this.shape = shape;
+        this.index = index;
+        this.method = method;
+        this.transition = transition;
+    }
+}
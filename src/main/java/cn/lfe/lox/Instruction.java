@@ -0,0 +1,87 @@
+package cn.lfe.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One IR instruction. Locals and upvalues are addressed by {@code index}
+ * using the slot layout computed by the {@link Resolver}; globals by the
+ * number the Resolver gave their name, linked to where they live when the
+ * program runs, or defined by the name in {@code token}, which is also
+ * what runtime errors report.
+ */
+class Instruction {
+    enum Op {
+        // t = op args[0], args[1]
+        ADD, SUBTRACT, MULTIPLY, DIVIDE,
+        GREATER, GREATER_EQUAL, LESS, LESS_EQUAL, EQUAL, NOT_EQUAL,
+        // t = op args[0]
+        NEGATE, NOT,
+
+        LOAD_LOCAL, STORE_LOCAL,
+        NEW_CELL, LOAD_CELL, STORE_CELL,
+        LOAD_UPVALUE, STORE_UPVALUE,
+        LOAD_GLOBAL, STORE_GLOBAL, DEFINE_GLOBAL,
+
+        CLOSURE, CALL, PRINT,
+        // t = args[0][args[1]], and args[0][args[1]] = args[2]
+        GET_INDEX, SET_INDEX,
+
+        // Terminators, always the last instruction of a block.
+        JUMP, BRANCH, RETURN;
+
+        boolean isTerminator() {
+            return this == JUMP || this == BRANCH || this == RETURN;
+        }
+
+        // Whether dropping the instruction when its result is unused is
+        // safe: it can neither fail nor have a visible effect.
+        boolean isPure() {
+            return switch (this) {
+                case NOT, LOAD_LOCAL, LOAD_CELL, LOAD_UPVALUE, CLOSURE -> true;
+                default -> false;
+            };
+        }
+    }
+
+    final Op op;
+    final int dest;
+    final Operand[] args;
+    final Token token;
+    int index = -1;
+    IrFunction function;
+    BasicBlock target;
+    BasicBlock otherwise;
+
+    Instruction(Op op, int dest, Token token, Operand... args) {
+        this.op = op;
+        this.dest = dest;
+        this.token = token;
+        this.args = args;
+    }
+
+    List<BasicBlock> successors() {
+        List<BasicBlock> successors = new ArrayList<>(2);
+        if (target != null) successors.add(target);
+        if (otherwise != null) successors.add(otherwise);
+        return successors;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        if (dest >= 0) builder.append("t").append(dest).append(" = ");
+        builder.append(op.name().toLowerCase());
+        if (index >= 0) builder.append(" #").append(index);
+        if (op == Op.LOAD_GLOBAL || op == Op.STORE_GLOBAL || op == Op.DEFINE_GLOBAL) {
+            builder.append(" ").append(token.lexeme);
+        }
+        if (function != null) builder.append(" ").append(function.name);
+        for (int i = 0; i < args.length; i++) {
+            builder.append(i == 0 ? " " : ", ").append(args[i]);
+        }
+        if (target != null) builder.append(op == Op.JUMP ? " " : " ? ").append(target);
+        if (otherwise != null) builder.append(" : ").append(otherwise);
+        return builder.toString();
+    }
+}
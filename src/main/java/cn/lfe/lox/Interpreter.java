@@ -1,17 +1,119 @@
 package cn.lfe.lox;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static cn.lfe.lox.TokenType.*;
 
 public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
-    final Environment globals = new Environment();
-    private Environment environment = globals;
-    private final Map<Expr, Integer> locals = new HashMap<>();
+    private static final Object[] NO_SLOTS = new Object[0];
+    private static final Upvalue[] NO_UPVALUES = new Upvalue[0];
+    private static final int[] NO_GLOBALS = new int[0];
+    private static final StackSegment[] NO_SEGMENTS = new StackSegment[0];
+    // Polls between the times the interpreter takes more instructions from
+    // its budget, checks the wall time, and lets others have the carrier
+    // of a virtual thread that has run for a time slice: virtual threads
+    // are never preempted, so a busy task could otherwise starve the
+    // sleeping or waiting ones for good.
+    private static final int POLL_INTERVAL = 8192;
+    // Allocations taken from the budget at a time.
+    private static final int ALLOCATION_CHUNK = 256;
+    private static final long TIME_SLICE_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    // Java frames a stack is let to fill before calls go on to a new one,
+    // and how far it may fill once a call has come back from there; see
+    // onNewStack(). A default-sized stack overflows at some 5,500 of the
+    // interpreter's, and a call takes from a dozen to many dozens of them,
+    // so this leaves room for calls bigger than the ones measured.
+    private static final int STACK_FRAMES = 2_000;
+    private static final int STACK_FRAMES_MAX = 3_000;
+    // Calls deep into a stack at which the interpreter counts its frames,
+    // to see how many calls the rest of it holds.
+    private static final int STACK_PROBE = 32;
+    // Deepest calls can nest, whatever the budget, so runaway recursion
+    // fails with "Stack overflow." long before it fills the heap.
+    static final int MAX_CALL_DEPTH = 10_000;
+    // Calls an error trace shows at most, innermost first; the rest of a
+    // deep trace, such as a stack overflow's, is summed up in one line.
+    private static final int TRACE_LIMIT = 32;
 
+    final Environment globals;
+    final Diagnostics diagnostics;
+    // Wrapped in a LockedSink once the script spawns its first task.
+    private OutputSink output;
+    // Frame of the running function (or top-level script) and the upvalues
+    // of the running closure, both laid out by the Resolver.
+    private Object[] slots = NO_SLOTS;
+    private Upvalue[] upvalues = NO_UPVALUES;
+    private int scriptSlots = 0;
+    // Where the globals of the running code live in globals, by the number
+    // the Resolver gave each name in the code's program; the same for the
+    // top-level code, linked before each run.
+    private int[] globalSlots = NO_GLOBALS;
+    private int[] scriptGlobals = NO_GLOBALS;
+    // Shadow stack of the Lox calls in progress, kept for error traces: the
+    // callee's name and the line it was called from. Calls pop their entry
+    // only on the way out normally, so after a RuntimeError the stack still
+    // shows where it happened when interpret() catches it.
+    private String[] callNames = new String[64];
+    private int[] callLines = new int[64];
+    private int callDepth = 0;
+    // Line of the call about to be made; set once its arguments are done.
+    int callLine = 0;
+    // What traces end in: the script, or the task this interpreter runs,
+    // at the line it was spawned from.
+    private final String root;
+    // Set from another thread to stop the script at its next loop
+    // iteration or call.
+    private volatile boolean cancelled = false;
+    private long sliceStart = System.nanoTime();
+    // Limits for each run, and what is left of them in the current one.
+    // Polls and allocations are counted down locally, from chunks taken
+    // from the allowance, which the tasks of the run share.
+    private Budget budget = Budget.UNLIMITED;
+    private Allowance allowance = new Allowance(Budget.UNLIMITED);
+    private int instructionsLeft = 0;
+    private int allocationsLeft = 0;
+    // The call depth at which enterCall() next has to look closer: where
+    // the shadow stack is full, or the budget's limit if that comes first.
+    private int callLimit = callNames.length;
+    // The call depth at which the current Java stack began, and at which
+    // it is to be measured, or once it has been, counts as full. Its end
+    // is moved out towards its limit while calls stay above stackLow, and
+    // back to where it filled up once they return below that.
+    private int stackStart = 0;
+    private int stackEnd = STACK_PROBE;
+    private int stackFilled = STACK_PROBE;
+    private int stackLimit = STACK_PROBE;
+    private int stackLow = 0;
+    private boolean stackMeasured = false;
+    // Threads whose stacks calls went on to, by how many stacks down they
+    // are, kept until the run or task ends.
+    private StackSegment[] segments = NO_SEGMENTS;
+    private int stackLevel = 0;
+    // Innermost scope the tasks spawned here go into; null until the
+    // first spawn outside any parallel block.
+    private volatile TaskScope scope = null;
 
     Interpreter() {
+        this(new PrintStreamSink());
+    }
+
+    Interpreter(OutputSink output) {
+        this(output, new Diagnostics());
+    }
+
+    Interpreter(OutputSink output, Diagnostics diagnostics) {
+        this.globals = new Environment();
+        this.output = output;
+        this.diagnostics = diagnostics;
+        this.root = "script";
         globals.define("clock", new LoxCallable() {
             @Override
             public int arity() { return 0; }
@@ -25,71 +127,468 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
             @Override
             public String toString() { return "<native fn>"; }
         });
+        globals.define("sleep", new NativeFunction(1) {
+            @Override
+            public Object call1(Interpreter interpreter, Object millis) {
+                interpreter.sleep(millis);
+                return null;
+            }
+        });
+        ListNatives.define(globals);
+        MapNatives.define(globals);
+        TaskNatives.define(globals);
+        ChannelNatives.define(globals);
+    }
+
+    // Starts from the globals of a snapshot, which has the natives too.
+    Interpreter(OutputSink output, Diagnostics diagnostics, GlobalsSnapshot snapshot) {
+        this.globals = new Environment(new GlobalLayout(snapshot.layout), snapshot.values);
+        this.output = output;
+        this.diagnostics = diagnostics;
+        this.root = "script";
+    }
+
+    // Runs a task spawned by parent: the same globals, output and
+    // diagnostics, but a stack of its own.
+    private Interpreter(Interpreter parent) {
+        this.globals = parent.globals;
+        this.output = parent.output;
+        this.diagnostics = parent.diagnostics;
+        this.callLine = parent.callLine;
+        this.root = "task";
+        this.budget = parent.budget;
+        this.allowance = parent.allowance;
+        this.callLimit = nextCallLimit();
     }
 
     void interpret(List<Stmt> statements) {
+        beginRun();
+        slots = scriptSlots == 0 ? NO_SLOTS : new Object[scriptSlots];
+        globalSlots = scriptGlobals;
         try {
             for (Stmt statement : statements) {
                 execute(statement);
             }
+            joinTasks();
+        } catch (RuntimeError error) {
+            runtimeError(error);
+        } catch (StackOverflowError overflow) {
+            runtimeError(stackOverflow());
+        } finally {
+            endRun();
+        }
+    }
+
+    // Waits for the tasks spawned outside any parallel block.
+    void joinTasks() {
+        TaskScope tasks = scope;
+        if (tasks != null) {
+            tasks.join();
+            scope = null;
+            checkCancelled();
+        }
+    }
+
+    // Applies from the next run on.
+    void setBudget(Budget budget) {
+        this.budget = budget;
+    }
+
+    // Every run starts with all of its budget, and measures its stack
+    // afresh, as it may not be on the same thread as the last one.
+    void beginRun() {
+        allowance = new Allowance(budget);
+        instructionsLeft = 0;
+        allocationsLeft = 0;
+        stackStart = 0;
+        stackEnd = STACK_PROBE;
+        stackFilled = STACK_PROBE;
+        stackLimit = STACK_PROBE;
+        stackLow = 0;
+        stackMeasured = false;
+        stackLevel = 0;
+        callLimit = nextCallLimit();
+    }
+
+    void endRun() {
+        stopTasks();
+        closeSegments();
+        callDepth = 0;
+        output.flush();
+    }
+
+    // Stops the tasks a failed or cancelled run leaves behind, so none of
+    // them outlives it.
+    private void stopTasks() {
+        TaskScope tasks = scope;
+        if (tasks != null) {
+            tasks.cancel();
+            tasks.await();
+            scope = null;
+        }
+    }
+
+    // The Java stack ran out under Lox calls nested too deeply for it.
+    // Those calls have unwound by the time the overflow is caught, which
+    // leaves room to report it like any other error, at the innermost call
+    // the shadow stack still shows.
+    RuntimeError stackOverflow() {
+        return new RuntimeError(new Token(EOF, "", null, callLine), "Stack overflow.");
+    }
+
+    // Reports an error that unwound the whole program, along with the
+    // calls it unwound. An error from a task already has the task's trace.
+    void runtimeError(RuntimeError error) {
+        if (error.trace.isEmpty()) {
+            error.trace = stackTrace(error.getToken().line);
+        }
+        output.flush();
+        diagnostics.runtimeError(error);
+    }
+
+    void cancel() {
+        cancelled = true;
+        for (TaskScope tasks = scope; tasks != null; tasks = tasks.enclosing) {
+            tasks.cancel();
+        }
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    // Polled at loop back-edges and function entries, where it costs a
+    // decrement and a compare; everything else happens once per chunk of
+    // instructions.
+    void poll() {
+        if (--instructionsLeft < 0) refuel();
+    }
+
+    private void refuel() {
+        checkCancelled();
+        // This poll takes the first of the new chunk.
+        instructionsLeft = allowance.takeInstructions(POLL_INTERVAL) - 1;
+        if (instructionsLeft < 0) {
+            throw new BudgetExceeded(budget, Budget.Kind.INSTRUCTIONS);
+        }
+        if (Thread.currentThread().isVirtual()) yieldCarrier();
+    }
+
+    // Checked right away wherever a script waits or hands over to a task,
+    // and otherwise once per chunk of polls.
+    void checkCancelled() {
+        if (cancelled) {
+            throw new ScriptCancelled();
+        }
+        if (allowance.expired()) {
+            throw new BudgetExceeded(budget, Budget.Kind.WALL_TIME);
+        }
+    }
+
+    // Counts an instance, list, map or closure the script creates.
+    void allocate() {
+        if (--allocationsLeft < 0) {
+            allocationsLeft = allowance.takeAllocations(ALLOCATION_CHUNK) - 1;
+            if (allocationsLeft < 0) {
+                throw new BudgetExceeded(budget, Budget.Kind.ALLOCATIONS);
+            }
+        }
+    }
+
+    // Parks rather than calling Thread.yield(), which can put the same
+    // thread straight back on its carrier once the scheduler has added
+    // workers to make up for blocked ones.
+    private void yieldCarrier() {
+        long now = System.nanoTime();
+        if (now - sliceStart >= TIME_SLICE_NANOS) {
+            LockSupport.parkNanos(1);
+            sliceStart = System.nanoTime();
+        }
+    }
+
+    // On a virtual thread this parks without holding on to its carrier.
+    private void sleep(Object millis) {
+        if (!Numbers.isNumber(millis) || !(Numbers.toDouble(millis) >= 0)) {
+            throw new NativeError("Sleep duration must be a non-negative number.");
+        }
+        try {
+            // Wakes up in time to stop at the end of the wall time budget.
+            long nanos = TimeUnit.MILLISECONDS.toNanos((long) Numbers.toDouble(millis));
+            TimeUnit.NANOSECONDS.sleep(Math.min(nanos, allowance.nanosLeft()));
+            checkCancelled();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            checkCancelled();
+            throw new NativeError("Sleep interrupted.");
+        }
+    }
+
+    LoxTask spawn(Object function) {
+        if (!(function instanceof LoxCallable callable) || callable.arity() != 0) {
+            throw new NativeError("Can only spawn functions that take no arguments.");
+        }
+        checkCancelled();
+        if (!(output instanceof LockedSink)) {
+            output = new LockedSink(output);
+        }
+        if (scope == null) {
+            scope = new TaskScope(null);
+        }
+
+        // Captured variables are copied, so the task and its spawner never
+        // write to the same ones.
+        if (callable instanceof LoxFunction loxFunction) {
+            callable = loxFunction.detached();
+        } else if (callable instanceof IrClosure closure) {
+            callable = closure.detached();
+        }
+        LoxTask task = new LoxTask(new Interpreter(this), callable, scope);
+        scope.fork(task);
+        // A cancel() that ran before the fork didn't see the task.
+        if (cancelled) task.cancel();
+        task.start();
+        return task;
+    }
+
+    // The body of a spawned task, run on its own thread by this task's
+    // interpreter.
+    Object runTask(LoxCallable function) {
+        try {
+            Object value = function.call0(this);
+            joinTasks();
+            return value;
         } catch (RuntimeError error) {
-            Lox.runtimeError(error);
+            if (error.trace.isEmpty()) {
+                error.trace = stackTrace(error.getToken().line);
+            }
+            throw error;
+        } catch (StackOverflowError overflow) {
+            RuntimeError error = stackOverflow();
+            error.trace = stackTrace(error.getToken().line);
+            throw error;
+        } finally {
+            stopTasks();
+            closeSegments();
         }
     }
 
+    // Returns true if the body of the call has to run through onNewStack().
+    boolean enterCall(String name) {
+        poll();
+        boolean stackFull = callDepth == callLimit && deepen();
+        callNames[callDepth] = name;
+        callLines[callDepth] = callLine;
+        callDepth++;
+        return stackFull;
+    }
+
+    private boolean deepen() {
+        if (callDepth >= budget.callDepth()) {
+            throw new BudgetExceeded(budget, Budget.Kind.CALL_DEPTH);
+        }
+        if (callDepth >= MAX_CALL_DEPTH) {
+            throw stackOverflow();
+        }
+        if (callDepth == callNames.length) {
+            callNames = Arrays.copyOf(callNames, callDepth * 2);
+            callLines = Arrays.copyOf(callLines, callDepth * 2);
+        }
+        boolean stackFull = callDepth == stackEnd && !measureStack();
+        callLimit = nextCallLimit();
+        return stackFull;
+    }
+
+    // Counts the Java frames on the current stack, the first time its
+    // calls get as deep as STACK_PROBE, and moves its end and limit to
+    // where the calls made so far say it holds STACK_FRAMES and
+    // STACK_FRAMES_MAX of them. Returns false if it is full already.
+    private boolean measureStack() {
+        if (stackMeasured) return false;
+        stackMeasured = true;
+        long frames = StackWalker.getInstance().walk(Stream::count);
+        long perCall = frames / (callDepth - stackStart) + 1;
+        stackEnd = callDepth + callsFitting(STACK_FRAMES - frames, perCall);
+        stackFilled = stackEnd;
+        stackLimit = callDepth + callsFitting(STACK_FRAMES_MAX - frames, perCall);
+        return callDepth < stackEnd;
+    }
+
+    private static int callsFitting(long frames, long perCall) {
+        return (int) Math.min(Math.max(frames, 0) / perCall, MAX_CALL_DEPTH);
+    }
+
+    private int nextCallLimit() {
+        return Math.min(Math.min(callNames.length, budget.callDepth()),
+                Math.min(stackEnd, MAX_CALL_DEPTH));
+    }
+
+    // Runs the body of a call on another thread's stack, which starts out
+    // empty, while this thread waits for it; calls made from there nest on
+    // that stack until it is full in turn. The thread is kept for the rest
+    // of the run, so going back and forth only hands the body over.
+    //
+    // Once the body is back, this stack's end moves out to its limit, so a
+    // call made over and over at the depth where it filled up runs here
+    // from then on rather than paying for the hand-over each time. The end
+    // moves back only once calls return to halfway down the stack, so
+    // going back and forth between stacks takes at least that many calls.
+    Object onNewStack(Supplier<Object> body) {
+        int level = stackLevel;
+        if (level == segments.length) {
+            segments = Arrays.copyOf(segments, level + 1);
+            segments[level] = new StackSegment();
+        }
+        int start = stackStart;
+        int filled = stackFilled;
+        int limit = stackLimit;
+        boolean measured = stackMeasured;
+        // This call is the first on the new stack.
+        stackStart = callDepth - 1;
+        stackEnd = stackStart + STACK_PROBE;
+        stackFilled = stackEnd;
+        stackLimit = stackEnd;
+        stackLow = 0;
+        stackMeasured = false;
+        stackLevel = level + 1;
+        callLimit = nextCallLimit();
+        try {
+            return segments[level].run(body);
+        } finally {
+            stackLevel = level;
+            stackStart = start;
+            stackEnd = limit;
+            stackFilled = filled;
+            stackLimit = limit;
+            stackLow = start + (filled - start) / 2;
+            stackMeasured = measured;
+            callLimit = nextCallLimit();
+        }
+    }
+
+    private void closeSegments() {
+        for (StackSegment segment : segments) {
+            segment.close();
+        }
+        segments = NO_SEGMENTS;
+    }
+
+    void exitCall() {
+        callDepth--;
+        if (callDepth < stackLow) {
+            stackEnd = stackFilled;
+            stackLow = 0;
+            callLimit = nextCallLimit();
+        }
+    }
+
+    // "[line N] in f()" for each active call, innermost first, then the
+    // script or task itself; nothing when the error is in top-level code.
+    private List<String> stackTrace(int line) {
+        if (callDepth == 0) {
+            return List.of();
+        }
+        List<String> trace = new ArrayList<>(Math.min(callDepth, TRACE_LIMIT) + 2);
+        for (int i = callDepth - 1; i >= 0; i--) {
+            if (trace.size() == TRACE_LIMIT && i > 0) {
+                // Skips to the outermost call, at the line it made the
+                // next one from.
+                trace.add("[" + i + " more calls]");
+                line = callLines[1];
+                i = 0;
+            }
+            trace.add("[line " + line + "] in " + callNames[i] + "()");
+            line = callLines[i];
+        }
+        trace.add("[line " + line + "] in " + root);
+        return trace;
+    }
+
     private void execute(Stmt stmt) {
         stmt.accept(this);
     }
 
     @Override
     public Object visitBinaryExpr(Expr.Binary expr) {
+        if (expr.fused != null) {
+            return expr.fused.execute(this);
+        }
+
         Object left = evaluate(expr.left),
                 right = evaluate(expr.right);
 
-        switch (expr.operator.type) {
+        // Operand types proven by TypeInference need no runtime checks.
+        if (expr.operands == ValueType.NUMBER) {
+            return numeric(expr.operator, left, right);
+        }
+        if (expr.operands == ValueType.STRING && expr.operator.type == PLUS) {
+            return Rope.concat(left, right);
+        }
+        return expr.node.execute(expr, left, right);
+    }
+
+    private static Object numeric(Token operator, Object left, Object right) {
+        return switch (operator.type) {
+            case GREATER -> Numbers.greater(left, right);
+            case GREATER_EQUAL -> Numbers.greaterEqual(left, right);
+            case LESS -> Numbers.less(left, right);
+            case LESS_EQUAL -> Numbers.lessEqual(left, right);
+            case BANG_EQUAL -> !Numbers.equal(left, right);
+            case EQUAL_EQUAL -> Numbers.equal(left, right);
+            case MINUS -> Numbers.subtract(left, right);
+            case SLASH -> Numbers.divide(left, right);
+            case STAR -> Numbers.multiply(left, right);
+            case PLUS -> Numbers.add(left, right);
+            default -> null;
+        };
+    }
+
+    // Shared with the IR backend and its constant folding, so every
+    // backend agrees on what an operator means.
+    static Object binary(Token operator, Object left, Object right) {
+        switch (operator.type) {
             case GREATER -> {
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left > (double) right;
+                checkNumberOperands(operator, left, right);
+                return Numbers.greater(left, right);
             }
             case GREATER_EQUAL -> {
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left >= (double) right;
+                checkNumberOperands(operator, left, right);
+                return Numbers.greaterEqual(left, right);
             }
             case LESS -> {
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left < (double) right;
+                checkNumberOperands(operator, left, right);
+                return Numbers.less(left, right);
             }
             case LESS_EQUAL -> {
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left <= (double) right;
+                checkNumberOperands(operator, left, right);
+                return Numbers.lessEqual(left, right);
             }
             case BANG_EQUAL -> {
                 return !isEqual(left, right);
             }
             case EQUAL_EQUAL -> {
-                checkNumberOperands(expr.operator, left, right);
+                checkNumberOperands(operator, left, right);
                 return isEqual(left, right);
             }
             case MINUS -> {
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left - (double) right;
+                checkNumberOperands(operator, left, right);
+                return Numbers.subtract(left, right);
             }
             case SLASH -> {
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left / (double) right;
+                checkNumberOperands(operator, left, right);
+                return Numbers.divide(left, right);
             }
             case STAR -> {
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left * (double) right;
+                checkNumberOperands(operator, left, right);
+                return Numbers.multiply(left, right);
             }
             case PLUS -> {
-                if (left instanceof Double && right instanceof Double) {
-                    return (double) left + (double) right;
+                if (Numbers.isNumber(left) && Numbers.isNumber(right)) {
+                    return Numbers.add(left, right);
                 }
-                if (left instanceof String && right instanceof String) {
-                    return left + (String) right;
+                if (Rope.isString(left) && Rope.isString(right)) {
+                    return Rope.concat(left, right);
                 }
-                throw new RuntimeError(expr.operator, "Operands must be two numbers or two strings.");
+                throw new RuntimeError(operator, "Operands must be two numbers or two strings.");
             }
         }
 
@@ -98,23 +597,172 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
 
     @Override
     public Object visitCallExpr(Expr.Call expr) {
-        Object callee = evaluate(expr.callee);
-        List<Object> arguments = new ArrayList<>();
-        for (Expr argument : expr.arguments) {
-            arguments.add(evaluate(argument));
+        // Methods called right away get their receiver bound straight into
+        // the frame, without a BoundMethod in between.
+        if (expr.callee instanceof Expr.Get get) {
+            LoxInstance instance = instance(get.name, evaluate(get.object));
+            InlineCache cache = property(get, instance);
+            if (cache.method != null) {
+                return invoke(expr, instance, cache.method);
+            }
+            return call(expr, instance.fields[cache.index]);
+        }
+        if (expr.callee instanceof Expr.Super sup) {
+            LoxFunction method = superMethod(sup);
+            return invoke(expr, lookUpVariable(sup.keyword, sup.receiver), method);
         }
 
+        return call(expr, evaluate(expr.callee));
+    }
+
+    private Object call(Expr.Call expr, Object callee) {
+        // Arguments are evaluated before the callee is checked, as before.
+        try {
+            return call(expr, callee, expr.arguments);
+        } catch (NativeError error) {
+            throw new RuntimeError(expr.paren, error.getMessage());
+        }
+    }
+
+    private Object invoke(Expr.Call expr, Object receiver, LoxFunction method) {
+        List<Expr> arguments = expr.arguments;
+        if (arguments.size() != method.arity()) {
+            for (Expr argument : arguments) {
+                evaluate(argument);
+            }
+            callable(expr.paren, method, arguments.size());
+        }
+
+        Object[] frame = method.frame(receiver);
+        for (int i = 0; i < arguments.size(); i++) {
+            method.bind(frame, i, evaluate(arguments.get(i)));
+        }
+        callLine = expr.paren.line;
+        return method.invoke(this, frame);
+    }
+
+    private Object call(Expr.Call expr, Object callee, List<Expr> arguments) {
+        switch (arguments.size()) {
+            case 0 -> {
+                return target(expr.paren, callee, 0).call0(this);
+            }
+            case 1 -> {
+                Object a = evaluate(arguments.get(0));
+                return target(expr.paren, callee, 1).call1(this, a);
+            }
+            case 2 -> {
+                Object a = evaluate(arguments.get(0));
+                Object b = evaluate(arguments.get(1));
+                return target(expr.paren, callee, 2).call2(this, a, b);
+            }
+            case 3 -> {
+                Object a = evaluate(arguments.get(0));
+                Object b = evaluate(arguments.get(1));
+                Object c = evaluate(arguments.get(2));
+                return target(expr.paren, callee, 3).call3(this, a, b, c);
+            }
+            case 4 -> {
+                Object a = evaluate(arguments.get(0));
+                Object b = evaluate(arguments.get(1));
+                Object c = evaluate(arguments.get(2));
+                Object d = evaluate(arguments.get(3));
+                return target(expr.paren, callee, 4).call4(this, a, b, c, d);
+            }
+            default -> {
+                Object[] values = new Object[arguments.size()];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = evaluate(arguments.get(i));
+                }
+                return target(expr.paren, callee, values.length).callN(this, values);
+            }
+        }
+    }
+
+    // Lists take integer indexes, maps any key. Shared with the IR backend
+    // and the get native.
+    static Object getIndex(Object object, Object index) {
+        if (object instanceof LoxList list) return list.get(index);
+        if (object instanceof LoxMap map) return map.get(index);
+        throw new NativeError("Only lists and maps can be indexed.");
+    }
+
+    static void setIndex(Object object, Object index, Object value) {
+        if (object instanceof LoxList list) {
+            list.set(index, value);
+        } else if (object instanceof LoxMap map) {
+            map.put(index, value);
+        } else {
+            throw new NativeError("Only lists and maps can be indexed.");
+        }
+    }
+
+    private static LoxInstance instance(Token name, Object object) {
+        if (object instanceof LoxInstance instance) return instance;
+        throw new RuntimeError(name, "Only instances have properties.");
+    }
+
+    // The inline cache entry of a get site for this instance's shape,
+    // looked up and installed on a miss.
+    private static InlineCache property(Expr.Get get, LoxInstance instance) {
+        InlineCache cache = get.cache;
+        if (cache != null && cache.shape == instance.shape) {
+            return cache;
+        }
+
+        Shape shape = instance.shape;
+        int index = shape.indexOf(get.name.lexeme);
+        if (index >= 0) {
+            cache = new InlineCache(shape, index, null, null);
+        } else {
+            LoxFunction method = shape.klass.findMethod(get.name.lexeme);
+            if (method == null) {
+                throw new RuntimeError(get.name,
+                        "Undefined property '" + get.name.lexeme + "'.");
+            }
+            cache = new InlineCache(shape, -1, method, null);
+        }
+        get.cache = cache;
+        return cache;
+    }
+
+    private LoxFunction superMethod(Expr.Super expr) {
+        LoxClass superclass = (LoxClass) lookUpVariable(expr.keyword, expr.ref);
+        LoxFunction method = superclass.findMethod(expr.method.lexeme);
+        if (method == null) {
+            throw new RuntimeError(expr.method,
+                    "Undefined property '" + expr.method.lexeme + "'.");
+        }
+        return method;
+    }
+
+    private LoxCallable target(Token paren, Object callee, int argumentCount) {
+        LoxCallable function = callable(paren, callee, argumentCount);
+        callLine = paren.line;
+        return function;
+    }
+
+    static LoxCallable callable(Token paren, Object callee, int argumentCount) {
         if (!(callee instanceof LoxCallable function)) {
-            throw new RuntimeError(expr.paren,
+            throw new RuntimeError(paren,
                     "Can only call functions and classes.");
         }
 
-        if (arguments.size() != function.arity()) {
-            throw new RuntimeError(expr.paren, "Expected " +
+        if (argumentCount != function.arity()) {
+            throw new RuntimeError(paren, "Expected " +
                     function.arity() + " arguments but got " +
-                    arguments.size() + ".");
+                    argumentCount + ".");
+        }
+        return function;
+    }
+
+    @Override
+    public Object visitGetExpr(Expr.Get expr) {
+        LoxInstance instance = instance(expr.name, evaluate(expr.object));
+        InlineCache cache = property(expr, instance);
+        if (cache.method != null) {
+            return new BoundMethod(instance, cache.method);
         }
-        return function.call(this, arguments);
+        return instance.fields[cache.index];
     }
 
     @Override
@@ -122,6 +770,17 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
         return evaluate(expr.expression);
     }
 
+    @Override
+    public Object visitIndexExpr(Expr.Index expr) {
+        Object object = evaluate(expr.object);
+        Object index = evaluate(expr.index);
+        try {
+            return getIndex(object, index);
+        } catch (NativeError error) {
+            throw new RuntimeError(expr.bracket, error.getMessage());
+        }
+    }
+
     @Override
     public Object visitLiteralExpr(Expr.Literal expr) {
         return expr.value;
@@ -130,26 +789,78 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
     @Override
     public Object visitLogicalExpr(Expr.Logical expr) {
         Object left = evaluate(expr.left);
+        return expr.node.execute(this, expr, left);
+    }
 
-        if (expr.operator.type == TokenType.OR) {
-            if (isTruthy(left)) return left;
-        } else {
-            if (!isTruthy(left)) return left;
+    @Override
+    public Object visitSetExpr(Expr.Set expr) {
+        Object object = evaluate(expr.object);
+        if (!(object instanceof LoxInstance instance)) {
+            throw new RuntimeError(expr.name, "Only instances have fields.");
+        }
+
+        Object value = evaluate(expr.value);
+        InlineCache cache = expr.cache;
+        if (cache == null || cache.shape != instance.shape) {
+            Shape shape = instance.shape;
+            int index = shape.indexOf(expr.name.lexeme);
+            if (index >= 0) {
+                cache = new InlineCache(shape, index, null, null);
+            } else {
+                Shape next = shape.withField(expr.name.lexeme);
+                cache = new InlineCache(shape, next.fieldCount - 1, null, next);
+            }
+            expr.cache = cache;
         }
 
-        return evaluate(expr.right);
+        if (cache.transition != null) {
+            instance.transition(cache.transition);
+        }
+        instance.fields[cache.index] = value;
+        return value;
+    }
+
+    @Override
+    public Object visitSetIndexExpr(Expr.SetIndex expr) {
+        Object object = evaluate(expr.object);
+        Object index = evaluate(expr.index);
+        Object value = evaluate(expr.value);
+        try {
+            setIndex(object, index, value);
+        } catch (NativeError error) {
+            throw new RuntimeError(expr.bracket, error.getMessage());
+        }
+        return value;
+    }
+
+    @Override
+    public Object visitSuperExpr(Expr.Super expr) {
+        LoxFunction method = superMethod(expr);
+        return new BoundMethod(lookUpVariable(expr.keyword, expr.receiver), method);
+    }
+
+    @Override
+    public Object visitThisExpr(Expr.This expr) {
+        return lookUpVariable(expr.keyword, expr.ref);
     }
 
     @Override
     public Object visitUnaryExpr(Expr.Unary expr) {
         Object right = evaluate(expr.right);
-        switch (expr.operator.type) {
+        if (expr.operand == ValueType.NUMBER && expr.operator.type == MINUS) {
+            return Numbers.negate(right);
+        }
+        return expr.node.execute(expr, right);
+    }
+
+    static Object unary(Token operator, Object right) {
+        switch (operator.type) {
             case BANG -> {
                 return !isTruthy(right);
             }
             case MINUS -> {
-                checkNumberOperand(expr.operator, right);
-                return -(double) right;
+                checkNumberOperand(operator, right);
+                return Numbers.negate(right);
             }
             default -> {
                 return null;
@@ -159,12 +870,19 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
 
     @Override
     public Object visitVariableExpr(Expr.Variable expr) {
-        return lookUpVariable(expr.name, expr);
+        if (expr.ref == null) {
+            // Sites the Resolver never saw go by name.
+            if (expr.global < 0) return globals.get(expr.name);
+            return globals.get(globalSlots[expr.global], expr.name);
+        }
+        return lookUpVariable(expr.name, expr.ref);
     }
 
     @Override
     public Void visitBlockStmt(Stmt.Block stmt) {
-        executeBlock(stmt.statements, new Environment(environment));
+        for (Stmt statement : stmt.statements) {
+            execute(statement);
+        }
         return null;
     }
 
@@ -184,17 +902,97 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
         return null;
     }
 
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+        Object superclass = null;
+        if (stmt.superclass != null) {
+            superclass = evaluate(stmt.superclass);
+            if (!(superclass instanceof LoxClass)) {
+                throw new RuntimeError(stmt.superclass.name,
+                        "Superclass must be a class.");
+            }
+        }
+
+        // As with functions, a captured name gets its cell first so the
+        // methods can see the class.
+        Local local = stmt.local;
+        Upvalue cell = null;
+        if (local != null && local.captured) {
+            cell = new Upvalue(null);
+            slots[local.slot] = cell;
+        }
+        if (stmt.superclassLocal != null) {
+            define(stmt.superclassLocal, null, superclass);
+        }
+
+        Map<String, LoxFunction> methods = new HashMap<>();
+        for (Stmt.Function method : stmt.methods) {
+            methods.put(method.name.lexeme, new LoxFunction(method, captureUpvalues(method.info),
+                    globalSlots, method.name.lexeme.equals("init")));
+        }
+        LoxClass klass = new LoxClass(stmt.name.lexeme, (LoxClass) superclass, methods);
+
+        if (cell != null) {
+            cell.value = klass;
+        } else {
+            define(local, stmt.name, klass);
+        }
+        return null;
+    }
+
     @Override
     public Void visitFunctionStmt(Stmt.Function stmt) {
-        LoxFunction function = new LoxFunction(stmt, environment);
-        environment.define(stmt.name.lexeme, function);
+        Local local = stmt.local;
+        allocate();
+        if (local == null) {
+            globals.define(stmt.name.lexeme,
+                    new LoxFunction(stmt, captureUpvalues(stmt.info), globalSlots));
+            return null;
+        }
+
+        // A captured name gets its cell first so the function can see itself.
+        if (local.captured) {
+            Upvalue cell = new Upvalue(null);
+            slots[local.slot] = cell;
+            cell.value = new LoxFunction(stmt, captureUpvalues(stmt.info), globalSlots);
+        } else {
+            slots[local.slot] = new LoxFunction(stmt, captureUpvalues(stmt.info), globalSlots);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitParallelStmt(Stmt.Parallel stmt) {
+        TaskScope tasks = new TaskScope(scope);
+        scope = tasks;
+        try {
+            execute(stmt.body);
+        } catch (Return returnValue) {
+            // Returning out of the block still waits for its tasks.
+            join(tasks);
+            throw returnValue;
+        } catch (RuntimeException | Error error) {
+            // Nothing the block started outlives it.
+            tasks.cancel();
+            tasks.await();
+            throw error;
+        } finally {
+            scope = tasks.enclosing;
+        }
+        join(tasks);
         return null;
     }
 
+    private void join(TaskScope tasks) {
+        tasks.join();
+        checkCancelled();
+    }
+
     @Override
     public Object visitPrintStmt(Stmt.Print stmt) {
-        Object value = evaluate(stmt.expression);
-        System.out.println(stringify(value));
+        Object value = stmt.fused != null
+                ? stmt.fused.execute(this) : evaluate(stmt.expression);
+        print(value);
         return null;
     }
 
@@ -213,7 +1011,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
             value = evaluate(stmt.initializer);
         }
 
-        environment.define(stmt.name.lexeme, value);
+        define(stmt.local, stmt.name, value);
         return null;
     }
 
@@ -221,61 +1019,80 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
     public Void visitWhileStmt(Stmt.While stmt) {
         while (isTruthy(evaluate(stmt.condition))) {
             execute(stmt.body);
+            poll();
         }
         return null;
     }
 
     @Override
     public Object visitAssignExpr(Expr.Assign expr) {
+        if (expr.fused != null) {
+            return expr.fused.execute(this);
+        }
+
         Object value = evaluate(expr.value);
-        Integer distance = locals.get(expr);
-        if (distance != null) {
-            environment.assignAt(distance, expr.name, value);
+        VarRef ref = expr.ref;
+        if (ref == null) {
+            if (expr.global < 0) {
+                globals.assign(expr.name, value);
+            } else {
+                globals.assign(globalSlots[expr.global], expr.name, value);
+            }
+        } else if (ref.local == null) {
+            upvalues[ref.upvalue].value = value;
+        } else if (ref.local.captured) {
+            ((Upvalue) slots[ref.local.slot]).value = value;
         } else {
-            globals.assign(expr.name, value);
+            slots[ref.local.slot] = value;
         }
         return value;
     }
 
-    private void checkNumberOperands(Token operator, Object left, Object right) {
-        if (left instanceof Double && right instanceof Double) {
+    private static void checkNumberOperands(Token operator, Object left, Object right) {
+        if (Numbers.isNumber(left) && Numbers.isNumber(right)) {
             return;
         }
         throw new RuntimeError(operator, "Operands must be numbers.");
     }
 
-    private void checkNumberOperand(Token operator, Object operand) {
-        if (operand instanceof Double) {
+    private static void checkNumberOperand(Token operator, Object operand) {
+        if (Numbers.isNumber(operand)) {
             return;
         }
         throw new RuntimeError(operator, "Operand must be a number.");
     }
 
-    private boolean isEqual(Object a, Object b) {
+    private static boolean isEqual(Object a, Object b) {
         if (a == null && b == null) {
             return true;
         }
         if (a == null) {
             return false;
         }
+        // A string may be a Rope on either side; compare the characters.
+        if (a instanceof Rope) a = a.toString();
+        if (b instanceof Rope) b = b.toString();
+        // 1 and 1.0 are the same number in either representation.
+        if (Numbers.isNumber(a) && Numbers.isNumber(b)) {
+            return Numbers.equal(a, b);
+        }
         return a.equals(b);
     }
 
-    private String stringify(Object object) {
+    static String stringify(Object object) {
         if (object == null) {
             return "nil";
         }
-        if (object instanceof Double) {
-            String text = object.toString();
-            if (text.endsWith(".0")) {
-                text = text.substring(0, text.length() - 2);
-            }
-            return text;
+        if (object instanceof Double number) {
+            return NumberFormatter.format(number);
+        }
+        if (object instanceof Long number) {
+            return NumberFormatter.format(number);
         }
         return object.toString();
     }
 
-    private boolean isTruthy(Object object) {
+    static boolean isTruthy(Object object) {
         if (object == null) {
             return false;
         }
@@ -285,33 +1102,84 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
         return true;
     }
 
-    private Object evaluate(Expr expr) {
+    Object evaluate(Expr expr) {
         return expr.accept(this);
     }
 
-    void executeBlock(List<Stmt> statements, Environment environment) {
-        Environment previous = this.environment;
+    void executeCall(List<Stmt> body, Object[] frame, Upvalue[] closure, int[] globalSlots) {
+        Object[] previousSlots = this.slots;
+        Upvalue[] previousUpvalues = this.upvalues;
+        int[] previousGlobals = this.globalSlots;
         try {
-            this.environment = environment;
+            this.slots = frame;
+            this.upvalues = closure;
+            this.globalSlots = globalSlots;
 
-            for (Stmt statement : statements) {
+            for (Stmt statement : body) {
                 execute(statement);
             }
         } finally {
-            this.environment = previous;
+            this.slots = previousSlots;
+            this.upvalues = previousUpvalues;
+            this.globalSlots = previousGlobals;
+        }
+    }
+
+    void print(Object value) {
+        if (value instanceof Double number) {
+            output.println((double) number);
+        } else if (value instanceof Long number) {
+            output.println((long) number);
+        } else {
+            output.println(stringify(value));
         }
     }
 
-    void resolve(Expr expr, int depth) {
-        locals.put(expr, depth);
+    Object[] frame() {
+        return slots;
+    }
+
+    // Readies the next run for a program with this many top-level slots,
+    // referring to these globals.
+    void resolveScript(int slotCount, List<String> globalNames) {
+        scriptSlots = slotCount;
+        scriptGlobals = globals.layout.link(globalNames);
+    }
+
+    int[] scriptGlobals() {
+        return scriptGlobals;
     }
 
-    private Object lookUpVariable(Token name, Expr expr) {
-        Integer distance = locals.get(expr);
-        if (distance != null) {
-            return environment.getAt(distance, name.lexeme);
+    private void define(Local local, Token name, Object value) {
+        if (local == null) {
+            globals.define(name.lexeme, value);
         } else {
+            slots[local.slot] = local.captured ? new Upvalue(value) : value;
+        }
+    }
+
+    private Upvalue[] captureUpvalues(FunctionInfo info) {
+        if (info == null || info.upvalueIndex.length == 0) {
+            return NO_UPVALUES;
+        }
+
+        Upvalue[] captured = new Upvalue[info.upvalueIndex.length];
+        for (int i = 0; i < captured.length; i++) {
+            int index = info.upvalueIndex[i];
+            captured[i] = info.upvalueIsLocal[i] ? (Upvalue) slots[index] : upvalues[index];
+        }
+        return captured;
+    }
+
+    private Object lookUpVariable(Token name, VarRef ref) {
+        if (ref == null) {
             return globals.get(name);
         }
+        if (ref.local == null) {
+            return upvalues[ref.upvalue].value;
+        }
+
+        Object value = slots[ref.local.slot];
+        return ref.local.captured ? ((Upvalue) value).value : value;
     }
 }
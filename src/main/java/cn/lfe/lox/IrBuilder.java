@@ -0,0 +1,357 @@
+package cn.lfe.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static cn.lfe.lox.Instruction.Op;
+
+/**
+ * Lowers a resolved AST to {@link IrFunction}s. Locals keep the slots the
+ * {@link Resolver} gave them; expression results become temporaries, and
+ * values that have to flow between blocks (the result of {@code and} /
+ * {@code or}) go through hidden locals appended after the resolved ones.
+ * Classes are not lowered yet and are reported as compile errors.
+ */
+class IrBuilder implements Expr.Visitor<Operand>, Stmt.Visitor<Void> {
+    private final Diagnostics diagnostics;
+    private IrFunction function;
+    private BasicBlock block;
+
+    IrBuilder() {
+        this(new Diagnostics());
+    }
+
+    IrBuilder(Diagnostics diagnostics) {
+        this.diagnostics = diagnostics;
+    }
+
+    IrFunction lower(List<Stmt> statements) {
+        function = new IrFunction("script", 0, Resolver.scriptSlots(statements),
+                new boolean[0], new int[0]);
+        block = function.newBlock();
+        lowerBody(statements);
+        return function;
+    }
+
+    private IrFunction lowerFunction(Stmt.Function stmt) {
+        IrFunction enclosing = function;
+        BasicBlock enclosingBlock = block;
+        FunctionInfo info = stmt.info;
+
+        function = new IrFunction(stmt.name.lexeme, stmt.params.size(), info.slotCount,
+                info.upvalueIsLocal, info.upvalueIndex);
+        block = function.newBlock();
+
+        // Arguments arrive as plain values; captured ones move into cells.
+        for (Local param : info.params) {
+            if (param.captured) {
+                Operand value = emit(Op.LOAD_LOCAL, null, param.slot);
+                emitVoid(Op.NEW_CELL, null, param.slot, value);
+            }
+        }
+        lowerBody(stmt.body);
+
+        IrFunction lowered = function;
+        function = enclosing;
+        block = enclosingBlock;
+        return lowered;
+    }
+
+    private void lowerBody(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            statement.accept(this);
+        }
+        if (!block.isTerminated()) {
+            emitVoid(Op.RETURN, null, -1, Operand.NIL);
+        }
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        for (Stmt statement : stmt.statements) {
+            statement.accept(this);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        stmt.expression.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+        unsupported(stmt.name);
+        return null;
+    }
+
+    @Override
+    public Void visitParallelStmt(Stmt.Parallel stmt) {
+        diagnostics.error(stmt.keyword, "Parallel blocks are not supported by the IR backend.");
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        IrFunction lowered = lowerFunction(stmt);
+        Local local = stmt.local;
+
+        // A captured name gets its cell first so the closure can see itself.
+        if (local != null && local.captured) {
+            emitVoid(Op.NEW_CELL, null, local.slot, Operand.NIL);
+            Operand closure = closure(lowered);
+            emitVoid(Op.STORE_CELL, null, local.slot, closure);
+        } else {
+            define(local, stmt.name, closure(lowered));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        Operand condition = stmt.condition.accept(this);
+        BasicBlock thenBlock = function.newBlock();
+        BasicBlock elseBlock = stmt.elseBranch != null ? function.newBlock() : null;
+        BasicBlock merge = function.newBlock();
+        branch(condition, thenBlock, elseBlock != null ? elseBlock : merge);
+
+        block = thenBlock;
+        stmt.thenBranch.accept(this);
+        jump(merge);
+
+        if (elseBlock != null) {
+            block = elseBlock;
+            stmt.elseBranch.accept(this);
+            jump(merge);
+        }
+
+        block = merge;
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        emitVoid(Op.PRINT, null, -1, stmt.expression.accept(this));
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        Operand value = stmt.value != null ? stmt.value.accept(this) : Operand.NIL;
+        emitVoid(Op.RETURN, stmt.keyword, -1, value);
+        // Whatever follows the return is unreachable; give it its own block.
+        block = function.newBlock();
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        Operand value = stmt.initializer != null ? stmt.initializer.accept(this) : Operand.NIL;
+        define(stmt.local, stmt.name, value);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        BasicBlock header = function.newBlock();
+        BasicBlock body = function.newBlock();
+        BasicBlock exit = function.newBlock();
+        jump(header);
+
+        block = header;
+        branch(stmt.condition.accept(this), body, exit);
+
+        block = body;
+        stmt.body.accept(this);
+        jump(header);
+
+        block = exit;
+        return null;
+    }
+
+    @Override
+    public Operand visitAssignExpr(Expr.Assign expr) {
+        Operand value = expr.value.accept(this);
+        VarRef ref = expr.ref;
+        if (ref == null) {
+            emitVoid(Op.STORE_GLOBAL, expr.name, expr.global, value);
+        } else if (ref.local == null) {
+            emitVoid(Op.STORE_UPVALUE, expr.name, ref.upvalue, value);
+        } else if (ref.local.captured) {
+            emitVoid(Op.STORE_CELL, expr.name, ref.local.slot, value);
+        } else {
+            emitVoid(Op.STORE_LOCAL, expr.name, ref.local.slot, value);
+        }
+        return value;
+    }
+
+    @Override
+    public Operand visitBinaryExpr(Expr.Binary expr) {
+        Operand left = expr.left.accept(this);
+        Operand right = expr.right.accept(this);
+        Op op = switch (expr.operator.type) {
+            case PLUS -> Op.ADD;
+            case MINUS -> Op.SUBTRACT;
+            case STAR -> Op.MULTIPLY;
+            case SLASH -> Op.DIVIDE;
+            case GREATER -> Op.GREATER;
+            case GREATER_EQUAL -> Op.GREATER_EQUAL;
+            case LESS -> Op.LESS;
+            case LESS_EQUAL -> Op.LESS_EQUAL;
+            case EQUAL_EQUAL -> Op.EQUAL;
+            case BANG_EQUAL -> Op.NOT_EQUAL;
+            default -> throw new IllegalStateException("Unexpected operator " + expr.operator);
+        };
+        return emit(op, expr.operator, -1, left, right);
+    }
+
+    @Override
+    public Operand visitCallExpr(Expr.Call expr) {
+        List<Operand> args = new ArrayList<>();
+        args.add(expr.callee.accept(this));
+        for (Expr argument : expr.arguments) {
+            args.add(argument.accept(this));
+        }
+        return emit(Op.CALL, expr.paren, -1, args.toArray(new Operand[0]));
+    }
+
+    @Override
+    public Operand visitGetExpr(Expr.Get expr) {
+        return unsupported(expr.name);
+    }
+
+    @Override
+    public Operand visitGroupingExpr(Expr.Grouping expr) {
+        return expr.expression.accept(this);
+    }
+
+    @Override
+    public Operand visitIndexExpr(Expr.Index expr) {
+        Operand object = expr.object.accept(this);
+        Operand index = expr.index.accept(this);
+        return emit(Op.GET_INDEX, expr.bracket, -1, object, index);
+    }
+
+    @Override
+    public Operand visitLiteralExpr(Expr.Literal expr) {
+        return Operand.constant(expr.value);
+    }
+
+    @Override
+    public Operand visitLogicalExpr(Expr.Logical expr) {
+        int result = function.slotCount++;
+        BasicBlock right = function.newBlock();
+        BasicBlock merge = function.newBlock();
+
+        Operand left = expr.left.accept(this);
+        emitVoid(Op.STORE_LOCAL, null, result, left);
+        if (expr.operator.type == TokenType.OR) {
+            branch(left, merge, right);
+        } else {
+            branch(left, right, merge);
+        }
+
+        block = right;
+        emitVoid(Op.STORE_LOCAL, null, result, expr.right.accept(this));
+        jump(merge);
+
+        block = merge;
+        return emit(Op.LOAD_LOCAL, null, result);
+    }
+
+    @Override
+    public Operand visitSetExpr(Expr.Set expr) {
+        return unsupported(expr.name);
+    }
+
+    @Override
+    public Operand visitSuperExpr(Expr.Super expr) {
+        return unsupported(expr.keyword);
+    }
+
+    @Override
+    public Operand visitThisExpr(Expr.This expr) {
+        return unsupported(expr.keyword);
+    }
+
+    @Override
+    public Operand visitSetIndexExpr(Expr.SetIndex expr) {
+        Operand object = expr.object.accept(this);
+        Operand index = expr.index.accept(this);
+        Operand value = expr.value.accept(this);
+        emitVoid(Op.SET_INDEX, expr.bracket, -1, object, index, value);
+        return value;
+    }
+
+    @Override
+    public Operand visitUnaryExpr(Expr.Unary expr) {
+        Operand right = expr.right.accept(this);
+        Op op = expr.operator.type == TokenType.BANG ? Op.NOT : Op.NEGATE;
+        return emit(op, expr.operator, -1, right);
+    }
+
+    @Override
+    public Operand visitVariableExpr(Expr.Variable expr) {
+        VarRef ref = expr.ref;
+        if (ref == null) {
+            return emit(Op.LOAD_GLOBAL, expr.name, expr.global);
+        } else if (ref.local == null) {
+            return emit(Op.LOAD_UPVALUE, expr.name, ref.upvalue);
+        } else if (ref.local.captured) {
+            return emit(Op.LOAD_CELL, expr.name, ref.local.slot);
+        }
+        return emit(Op.LOAD_LOCAL, expr.name, ref.local.slot);
+    }
+
+    private void define(Local local, Token name, Operand value) {
+        if (local == null) {
+            emitVoid(Op.DEFINE_GLOBAL, name, -1, value);
+        } else if (local.captured) {
+            emitVoid(Op.NEW_CELL, name, local.slot, value);
+        } else {
+            emitVoid(Op.STORE_LOCAL, name, local.slot, value);
+        }
+    }
+
+    private Operand unsupported(Token token) {
+        diagnostics.error(token, "Classes are not supported by the IR backend.");
+        return Operand.NIL;
+    }
+
+    private Operand closure(IrFunction lowered) {
+        int dest = function.newTemp();
+        Instruction instruction = new Instruction(Op.CLOSURE, dest, null);
+        instruction.function = lowered;
+        block.instructions.add(instruction);
+        return Operand.temp(dest);
+    }
+
+    private void jump(BasicBlock target) {
+        if (block.isTerminated()) return;
+        Instruction instruction = new Instruction(Op.JUMP, -1, null);
+        instruction.target = target;
+        block.instructions.add(instruction);
+    }
+
+    private void branch(Operand condition, BasicBlock then, BasicBlock otherwise) {
+        Instruction instruction = new Instruction(Op.BRANCH, -1, null, condition);
+        instruction.target = then;
+        instruction.otherwise = otherwise;
+        block.instructions.add(instruction);
+    }
+
+    private Operand emit(Op op, Token token, int index, Operand... args) {
+        int dest = function.newTemp();
+        Instruction instruction = new Instruction(op, dest, token, args);
+        instruction.index = index;
+        block.instructions.add(instruction);
+        return Operand.temp(dest);
+    }
+
+    private void emitVoid(Op op, Token token, int index, Operand... args) {
+        Instruction instruction = new Instruction(op, -1, token, args);
+        instruction.index = index;
+        block.instructions.add(instruction);
+    }
+}
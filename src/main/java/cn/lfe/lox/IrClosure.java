@@ -0,0 +1,109 @@
+package cn.lfe.lox;
+
+import java.util.List;
+
+/**
+ * A function value created by the IR backend.
+ */
+class IrClosure implements LoxCallable {
+    private final IrFunction function;
+    private final Upvalue[] upvalues;
+    // The globals of the program that defined it, as linked in the context
+    // that ran it.
+    private final int[] globalSlots;
+    private final IrInterpreter backend;
+
+    IrClosure(IrFunction function, Upvalue[] upvalues, int[] globalSlots, IrInterpreter backend) {
+        this.function = function;
+        this.upvalues = upvalues;
+        this.globalSlots = globalSlots;
+        this.backend = backend;
+    }
+
+    @Override
+    public int arity() {
+        return function.arity;
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        return callN(interpreter, arguments.toArray());
+    }
+
+    // Parameters occupy the first slots of the frame.
+
+    @Override
+    public Object call0(Interpreter interpreter) {
+        return backend(interpreter).invoke(function, new Object[function.slotCount], upvalues,
+                globalSlots);
+    }
+
+    @Override
+    public Object call1(Interpreter interpreter, Object a) {
+        Object[] frame = new Object[function.slotCount];
+        frame[0] = a;
+        return backend(interpreter).invoke(function, frame, upvalues, globalSlots);
+    }
+
+    @Override
+    public Object call2(Interpreter interpreter, Object a, Object b) {
+        Object[] frame = new Object[function.slotCount];
+        frame[0] = a;
+        frame[1] = b;
+        return backend(interpreter).invoke(function, frame, upvalues, globalSlots);
+    }
+
+    @Override
+    public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+        Object[] frame = new Object[function.slotCount];
+        frame[0] = a;
+        frame[1] = b;
+        frame[2] = c;
+        return backend(interpreter).invoke(function, frame, upvalues, globalSlots);
+    }
+
+    @Override
+    public Object call4(Interpreter interpreter, Object a, Object b, Object c, Object d) {
+        Object[] frame = new Object[function.slotCount];
+        frame[0] = a;
+        frame[1] = b;
+        frame[2] = c;
+        frame[3] = d;
+        return backend(interpreter).invoke(function, frame, upvalues, globalSlots);
+    }
+
+    @Override
+    public Object callN(Interpreter interpreter, Object... arguments) {
+        Object[] frame = new Object[function.slotCount];
+        System.arraycopy(arguments, 0, frame, 0, arguments.length);
+        return backend(interpreter).invoke(function, frame, upvalues, globalSlots);
+    }
+
+    boolean capturesVariables() {
+        return upvalues.length > 0;
+    }
+
+    // A copy whose captured variables are copies too, for a spawned task.
+    IrClosure detached() {
+        if (upvalues.length == 0) return this;
+        Upvalue[] copies = new Upvalue[upvalues.length];
+        IrClosure copy = new IrClosure(function, copies, globalSlots, backend);
+        for (int i = 0; i < copies.length; i++) {
+            Object value = upvalues[i].value;
+            // A closure that captured itself should call its copy.
+            copies[i] = new Upvalue(value == this ? copy : value);
+        }
+        return copy;
+    }
+
+    // Calls run on the interpreter making them, which differs from the
+    // one this closure was created by when it is called from a task.
+    private IrInterpreter backend(Interpreter interpreter) {
+        return interpreter == backend.interpreter ? backend : new IrInterpreter(interpreter);
+    }
+
+    @Override
+    public String toString() {
+        return "<fn " + function.name + ">";
+    }
+}
@@ -0,0 +1,75 @@
+package cn.lfe.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A function (or the top-level script) lowered to basic blocks. The first
+ * block is the entry. {@code slotCount} covers the Resolver's locals plus
+ * the hidden locals the lowering adds to carry values across blocks.
+ */
+class IrFunction {
+    final String name;
+    final int arity;
+    final boolean[] upvalueIsLocal;
+    final int[] upvalueIndex;
+    final List<BasicBlock> blocks = new ArrayList<>();
+    int slotCount;
+    int tempCount = 0;
+    int blockCount = 0;
+
+    IrFunction(String name, int arity, int slotCount,
+               boolean[] upvalueIsLocal, int[] upvalueIndex) {
+        this.name = name;
+        this.arity = arity;
+        this.slotCount = slotCount;
+        this.upvalueIsLocal = upvalueIsLocal;
+        this.upvalueIndex = upvalueIndex;
+    }
+
+    BasicBlock newBlock() {
+        BasicBlock block = new BasicBlock(blockCount++);
+        blocks.add(block);
+        return block;
+    }
+
+    int newTemp() {
+        return tempCount++;
+    }
+
+    // This function followed by every function nested in it.
+    List<IrFunction> withNested() {
+        List<IrFunction> functions = new ArrayList<>();
+        functions.add(this);
+        for (int i = 0; i < functions.size(); i++) {
+            for (BasicBlock block : functions.get(i).blocks) {
+                for (Instruction instruction : block.instructions) {
+                    if (instruction.function != null) {
+                        functions.add(instruction.function);
+                    }
+                }
+            }
+        }
+        return functions;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (IrFunction function : withNested()) {
+            builder.append("fn ").append(function.name)
+                    .append(" (arity=").append(function.arity)
+                    .append(", slots=").append(function.slotCount)
+                    .append(", temps=").append(function.tempCount)
+                    .append(", upvalues=").append(function.upvalueIndex.length)
+                    .append(")\n");
+            for (BasicBlock block : function.blocks) {
+                builder.append(block).append(":\n");
+                for (Instruction instruction : block.instructions) {
+                    builder.append("  ").append(instruction).append("\n");
+                }
+            }
+        }
+        return builder.toString();
+    }
+}
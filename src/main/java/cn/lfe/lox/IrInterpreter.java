@@ -0,0 +1,174 @@
+package cn.lfe.lox;
+
+import java.util.List;
+
+/**
+ * Executes lowered, optimized {@link IrFunction}s directly. Globals and
+ * natives are shared with the tree-walking {@link Interpreter}, which is
+ * also what native functions receive as their interpreter.
+ */
+class IrInterpreter {
+    private static final Upvalue[] NO_UPVALUES = new Upvalue[0];
+
+    final Interpreter interpreter;
+
+    IrInterpreter(Interpreter interpreter) {
+        this.interpreter = interpreter;
+    }
+
+    void interpret(IrFunction script) {
+        interpreter.beginRun();
+        try {
+            execute(script, new Object[script.slotCount], NO_UPVALUES, interpreter.scriptGlobals());
+            interpreter.joinTasks();
+        } catch (RuntimeError error) {
+            interpreter.runtimeError(error);
+        } catch (StackOverflowError overflow) {
+            interpreter.runtimeError(interpreter.stackOverflow());
+        } finally {
+            interpreter.endRun();
+        }
+    }
+
+    // Runs a closure's function as a Lox call.
+    Object invoke(IrFunction function, Object[] slots, Upvalue[] upvalues, int[] globalSlots) {
+        if (interpreter.enterCall(function.name)) {
+            return interpreter.onNewStack(() -> run(function, slots, upvalues, globalSlots));
+        }
+        return run(function, slots, upvalues, globalSlots);
+    }
+
+    private Object run(IrFunction function, Object[] slots, Upvalue[] upvalues, int[] globalSlots) {
+        Object result = execute(function, slots, upvalues, globalSlots);
+        interpreter.exitCall();
+        return result;
+    }
+
+    // Globals are at globalSlots[index] of their instruction, the index
+    // the Resolver numbered their name with.
+    Object execute(IrFunction function, Object[] slots, Upvalue[] upvalues, int[] globalSlots) {
+        Object[] temps = new Object[function.tempCount];
+        BasicBlock block = function.blocks.get(0);
+
+        run:
+        while (true) {
+            List<Instruction> instructions = block.instructions;
+            for (int i = 0, n = instructions.size(); i < n; i++) {
+                Instruction instruction = instructions.get(i);
+                Operand[] args = instruction.args;
+                switch (instruction.op) {
+                    case ADD, SUBTRACT, MULTIPLY, DIVIDE,
+                         GREATER, GREATER_EQUAL, LESS, LESS_EQUAL, EQUAL, NOT_EQUAL ->
+                            temps[instruction.dest] = Interpreter.binary(instruction.token,
+                                    value(temps, args[0]), value(temps, args[1]));
+                    case NEGATE, NOT ->
+                            temps[instruction.dest] = Interpreter.unary(instruction.token,
+                                    value(temps, args[0]));
+                    case LOAD_LOCAL -> temps[instruction.dest] = slots[instruction.index];
+                    case STORE_LOCAL -> slots[instruction.index] = value(temps, args[0]);
+                    case NEW_CELL -> slots[instruction.index] = new Upvalue(value(temps, args[0]));
+                    case LOAD_CELL ->
+                            temps[instruction.dest] = ((Upvalue) slots[instruction.index]).value;
+                    case STORE_CELL ->
+                            ((Upvalue) slots[instruction.index]).value = value(temps, args[0]);
+                    case LOAD_UPVALUE -> temps[instruction.dest] = upvalues[instruction.index].value;
+                    case STORE_UPVALUE -> upvalues[instruction.index].value = value(temps, args[0]);
+                    case LOAD_GLOBAL -> temps[instruction.dest] = interpreter.globals.get(
+                            globalSlots[instruction.index], instruction.token);
+                    case STORE_GLOBAL -> interpreter.globals.assign(globalSlots[instruction.index],
+                            instruction.token, value(temps, args[0]));
+                    case DEFINE_GLOBAL ->
+                            interpreter.globals.define(instruction.token.lexeme, value(temps, args[0]));
+                    case CLOSURE ->
+                            temps[instruction.dest] =
+                            closure(instruction.function, slots, upvalues, globalSlots);
+                    case CALL -> temps[instruction.dest] = call(instruction, temps);
+                    case PRINT -> interpreter.print(value(temps, args[0]));
+                    case GET_INDEX -> temps[instruction.dest] = index(instruction, temps);
+                    case SET_INDEX -> setIndex(instruction, temps);
+                    case JUMP -> {
+                        interpreter.poll();
+                        block = instruction.target;
+                        continue run;
+                    }
+                    case BRANCH -> {
+                        block = Interpreter.isTruthy(value(temps, args[0]))
+                                ? instruction.target : instruction.otherwise;
+                        continue run;
+                    }
+                    case RETURN -> {
+                        return value(temps, args[0]);
+                    }
+                }
+            }
+            throw new IllegalStateException("Block " + block + " of " + function.name +
+                    " has no terminator.");
+        }
+    }
+
+    private IrClosure closure(IrFunction function, Object[] slots, Upvalue[] upvalues,
+                              int[] globalSlots) {
+        Upvalue[] captured = new Upvalue[function.upvalueIndex.length];
+        for (int i = 0; i < captured.length; i++) {
+            int index = function.upvalueIndex[i];
+            captured[i] = function.upvalueIsLocal[i] ? (Upvalue) slots[index] : upvalues[index];
+        }
+        interpreter.allocate();
+        return new IrClosure(function, captured, globalSlots, this);
+    }
+
+    private Object call(Instruction instruction, Object[] temps) {
+        Operand[] args = instruction.args;
+        LoxCallable function = Interpreter.callable(
+                instruction.token, value(temps, args[0]), args.length - 1);
+        interpreter.callLine = instruction.token.line;
+        try {
+            return call(function, args, temps);
+        } catch (NativeError error) {
+            throw new RuntimeError(instruction.token, error.getMessage());
+        }
+    }
+
+    private Object call(LoxCallable function, Operand[] args, Object[] temps) {
+        return switch (args.length - 1) {
+            case 0 -> function.call0(interpreter);
+            case 1 -> function.call1(interpreter, value(temps, args[1]));
+            case 2 -> function.call2(interpreter,
+                    value(temps, args[1]), value(temps, args[2]));
+            case 3 -> function.call3(interpreter,
+                    value(temps, args[1]), value(temps, args[2]), value(temps, args[3]));
+            case 4 -> function.call4(interpreter, value(temps, args[1]),
+                    value(temps, args[2]), value(temps, args[3]), value(temps, args[4]));
+            default -> {
+                Object[] arguments = new Object[args.length - 1];
+                for (int i = 1; i < args.length; i++) {
+                    arguments[i - 1] = value(temps, args[i]);
+                }
+                yield function.callN(interpreter, arguments);
+            }
+        };
+    }
+
+    private static Object index(Instruction instruction, Object[] temps) {
+        Operand[] args = instruction.args;
+        try {
+            return Interpreter.getIndex(value(temps, args[0]), value(temps, args[1]));
+        } catch (NativeError error) {
+            throw new RuntimeError(instruction.token, error.getMessage());
+        }
+    }
+
+    private static void setIndex(Instruction instruction, Object[] temps) {
+        Operand[] args = instruction.args;
+        try {
+            Interpreter.setIndex(value(temps, args[0]),
+                    value(temps, args[1]), value(temps, args[2]));
+        } catch (NativeError error) {
+            throw new RuntimeError(instruction.token, error.getMessage());
+        }
+    }
+
+    private static Object value(Object[] temps, Operand operand) {
+        return operand.isConstant() ? operand.value : temps[operand.temp];
+    }
+}
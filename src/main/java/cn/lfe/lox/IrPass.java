@@ -0,0 +1,11 @@
+package cn.lfe.lox;
+
+/**
+ * A transformation over one lowered function. The {@link PassManager} runs
+ * each pass over the script and every function nested in it.
+ */
+interface IrPass {
+    String name();
+
+    void run(IrFunction function);
+}
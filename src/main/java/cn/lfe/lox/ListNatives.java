@@ -0,0 +1,69 @@
+package cn.lfe.lox;
+
+/**
+ * Native functions over {@link LoxList}:
+ * <pre>
+ * list()                 a new, empty list
+ * get(list, i)           the element at i; also reads maps, see MapNatives
+ * set(list, i, value)    replaces the element at i, returns value
+ * push(list, value)      appends value
+ * length(list)           the number of elements
+ * slice(list, from, to)  a new list of the elements in [from, to)
+ * sort(list)             sorts numbers or strings in place
+ * </pre>
+ */
+final class ListNatives {
+    private ListNatives() {
+    }
+
+    static void define(Environment globals) {
+        globals.define("list", new NativeFunction(0) {
+            @Override
+            public Object call0(Interpreter interpreter) {
+                interpreter.allocate();
+                return new LoxList();
+            }
+        });
+        globals.define("get", new NativeFunction(2) {
+            @Override
+            public Object call2(Interpreter interpreter, Object collection, Object index) {
+                return Interpreter.getIndex(collection, index);
+            }
+        });
+        globals.define("set", new NativeFunction(3) {
+            @Override
+            public Object call3(Interpreter interpreter, Object list, Object index, Object value) {
+                LoxList.cast(list).set(index, value);
+                return value;
+            }
+        });
+        globals.define("push", new NativeFunction(2) {
+            @Override
+            public Object call2(Interpreter interpreter, Object list, Object value) {
+                LoxList.cast(list).push(value);
+                return null;
+            }
+        });
+        globals.define("length", new NativeFunction(1) {
+            @Override
+            public Object call1(Interpreter interpreter, Object list) {
+                return (long) LoxList.cast(list).size();
+            }
+        });
+        globals.define("slice", new NativeFunction(3) {
+            @Override
+            public Object call3(Interpreter interpreter, Object list, Object from, Object to) {
+                LoxList slice = LoxList.cast(list).slice(from, to);
+                interpreter.allocate();
+                return slice;
+            }
+        });
+        globals.define("sort", new NativeFunction(1) {
+            @Override
+            public Object call1(Interpreter interpreter, Object list) {
+                LoxList.cast(list).sort();
+                return null;
+            }
+        });
+    }
+}
@@ -0,0 +1,16 @@
+package cn.lfe.lox;
+
+/**
+ * A local variable declared inside a function (or a block of the top-level
+ * script), as laid out by the {@link Resolver}. The value lives in
+ * {@code slot} of the function's frame; once some closure captures the
+ * variable the slot holds an {@link Upvalue} cell instead of the value.
+ */
+class Local {
+    final int slot;
+    boolean captured = false;
+
+    Local(int slot) {
+        this.slot = slot;
+    }
+}
@@ -0,0 +1,57 @@
+package cn.lfe.lox;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Lets the tasks of one script print through the same sink at once, a
+ * whole line at a time. Uses a lock rather than synchronized, which would
+ * pin the virtual threads the tasks run on.
+ */
+class LockedSink implements OutputSink {
+    private final OutputSink sink;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    LockedSink(OutputSink sink) {
+        this.sink = sink;
+    }
+
+    @Override
+    public void println(CharSequence text) {
+        lock.lock();
+        try {
+            sink.println(text);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void println(double number) {
+        lock.lock();
+        try {
+            sink.println(number);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void println(long number) {
+        lock.lock();
+        try {
+            sink.println(number);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void flush() {
+        lock.lock();
+        try {
+            sink.flush();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
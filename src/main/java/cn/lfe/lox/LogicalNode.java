@@ -0,0 +1,38 @@
+package cn.lfe.lox;
+
+/**
+ * Self-specializing execution of an {@link Expr.Logical} site, see
+ * {@link BinaryNode}. The left operand decides whether the right one is
+ * evaluated; when it has always been a boolean the site tests it directly
+ * instead of going through Lox truthiness.
+ */
+enum LogicalNode {
+    UNINITIALIZED {
+        @Override
+        Object execute(Interpreter interpreter, Expr.Logical expr, Object left) {
+            LogicalNode node = left instanceof Boolean ? BOOLEAN : GENERIC;
+            expr.node = node;
+            return node.execute(interpreter, expr, left);
+        }
+    },
+    BOOLEAN {
+        @Override
+        Object execute(Interpreter interpreter, Expr.Logical expr, Object left) {
+            if (!(left instanceof Boolean value)) {
+                expr.node = GENERIC;
+                return GENERIC.execute(interpreter, expr, left);
+            }
+            boolean or = expr.operator.type == TokenType.OR;
+            return value == or ? left : interpreter.evaluate(expr.right);
+        }
+    },
+    GENERIC {
+        @Override
+        Object execute(Interpreter interpreter, Expr.Logical expr, Object left) {
+            boolean or = expr.operator.type == TokenType.OR;
+            return Interpreter.isTruthy(left) == or ? left : interpreter.evaluate(expr.right);
+        }
+    };
+
+    abstract Object execute(Interpreter interpreter, Expr.Logical expr, Object left);
+}
@@ -6,93 +6,171 @@ import java.io.InputStreamReader;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * @author chen yue
  * @date 2025-06-29 19:43:19
  */
 public class Lox {
-    private static final Interpreter interpreter = new Interpreter();
-    static boolean hadError = false;
+    private static final String USAGE =
+            "Usage: jlox [--backend=ast|ir] [--passes=p1,p2,...] [--dump-ir=<pass>]" +
+                    " [--no-fuse=all|increment,accumulate,compare,print] [--unbuffered]" +
+                    " [--box-stats] [script | --batch <dir|glob> [--jobs N] | --project <dir|glob> [--jobs N]]";
 
     public static void main(String[] args) throws IOException {
-        if (args.length > 1) {
-            System.out.println("Usage: jlox [script]");
-            System.exit(64);
-        } else if (args.length == 1) {
-            runFile(args[0]);
-        } else {
-            runPrompt();
+        List<String> scripts = new ArrayList<>();
+        boolean irBackendRequested = false;
+        List<String> passes = PassManager.DEFAULT_PASSES;
+        String dumpIr = null;
+        boolean unbuffered = false;
+        String batch = null;
+        String project = null;
+        int jobs = Runtime.getRuntime().availableProcessors();
+        Set<Superinstruction.Kind> fused = EnumSet.allOf(Superinstruction.Kind.class);
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--batch") && i + 1 < args.length) {
+                batch = args[++i];
+            } else if (arg.equals("--project") && i + 1 < args.length) {
+                project = args[++i];
+            } else if (arg.equals("--jobs") && i + 1 < args.length) {
+                try {
+                    jobs = Integer.parseInt(args[++i]);
+                } catch (NumberFormatException e) {
+                    usage();
+                }
+                if (jobs < 1) usage();
+            } else if (arg.equals("--backend=ir")) {
+                irBackendRequested = true;
+            } else if (arg.equals("--backend=ast")) {
+                irBackendRequested = false;
+            } else if (arg.startsWith("--passes=")) {
+                String names = arg.substring("--passes=".length());
+                passes = names.isEmpty() ? List.of() : Arrays.asList(names.split(","));
+            } else if (arg.startsWith("--dump-ir=")) {
+                dumpIr = arg.substring("--dump-ir=".length());
+            } else if (arg.equals("--unbuffered")) {
+                unbuffered = true;
+            } else if (arg.equals("--box-stats")) {
+                // A constant, so this does not load Numbers yet.
+                System.setProperty(Numbers.BOX_STATS_PROPERTY, "true");
+            } else if (arg.startsWith("--no-fuse=")) {
+                for (String kind : arg.substring("--no-fuse=".length()).split(",")) {
+                    if (kind.equals("all")) {
+                        fused.clear();
+                        continue;
+                    }
+                    try {
+                        fused.remove(Superinstruction.Kind.valueOf(kind.toUpperCase()));
+                    } catch (IllegalArgumentException e) {
+                        usage();
+                    }
+                }
+            } else if (arg.startsWith("--")) {
+                usage();
+            } else {
+                scripts.add(arg);
+            }
         }
-    }
 
-    private static void runFile(String path) throws IOException {
-        byte[]  bytes = Files.readAllBytes(Paths.get(path));
-        run(new String(bytes, Charset.defaultCharset()));
-        if (hadError) {
-            System.exit(65);
+        if (scripts.size() > 1 || (batch != null && (!scripts.isEmpty() || dumpIr != null))
+                || (project != null && (!scripts.isEmpty() || batch != null || dumpIr != null))) {
+            usage();
         }
-    }
 
-    private static void runPrompt() throws IOException {
-        InputStreamReader input = new InputStreamReader(System.in);
-        BufferedReader reader = new BufferedReader(input);
-
-        for (;;) {
-            System.out.print("> ");
-            String line = reader.readLine();
-            if (line == null) {
-                break;
+        // Scripts batch their output; the prompt prints every line at once.
+        boolean interactive = (scripts.isEmpty() && project == null) || unbuffered;
+        OutputSink output = interactive ? new PrintStreamSink() : ChannelSink.stdout();
+
+        PassManager passManager = null;
+        if (irBackendRequested || dumpIr != null) {
+            try {
+                passManager = new PassManager(passes, dumpIr, System.err);
+            } catch (IllegalArgumentException e) {
+                System.err.println(e.getMessage());
+                usage();
             }
-            run(line);
-            hadError = false;
         }
-    }
 
-    private static void run(String source) {
-        // get tokens
-        Scanner scanner = new Scanner(source);
-        List<Token> tokens = scanner.scanTokens();
+        if (Numbers.COUNT_BOXES) {
+            Runtime.getRuntime().addShutdownHook(
+                    new Thread(() -> System.err.println(Numbers.boxStats())));
+        }
 
-        // get expression
-        Parser parser = new Parser(tokens);
-        List<Stmt> statements = parser.parse();
+        if (batch != null) {
+            // Every script gets its own pass instances; this one only
+            // checked the pass list.
+            runBatch(new BatchRunner(jobs, fused, passManager != null ? passes : null,
+                    irBackendRequested), batch);
+            return;
+        }
 
-        // Stop if there was a syntax error.
-        if (hadError) return;
+        LoxContext context = new LoxContext(output, new Diagnostics(), fused,
+                passManager, irBackendRequested);
 
-        Resolver resolver = new Resolver(interpreter);
-        resolver.resolve(statements);
+        if (project != null) {
+            runProject(context, Project.compile(BatchRunner.scripts(project), jobs, fused));
+            return;
+        }
 
-        // Stop if there was a resolution error.
-        if (hadError) return;
+        if (scripts.size() == 1) {
+            runFile(context, scripts.get(0));
+        } else {
+            runPrompt(context);
+        }
+    }
 
-        // evaluate expression
-        interpreter.interpret(statements);
+    private static void usage() {
+        System.out.println(USAGE);
+        System.exit(64);
     }
 
-    static void error(int line, String message) {
-        report(line, "", message);
+    private static void runFile(LoxContext context, String path) throws IOException {
+        byte[]  bytes = Files.readAllBytes(Paths.get(path));
+        if (!context.run(new String(bytes, Charset.defaultCharset()))) {
+            System.exit(65);
+        }
     }
 
-    private static void report(int line, String where, String message) {
-        System.err.println(
-                "[line " + line + "] Error" + where + ": " + message);
-        hadError = true;
+    private static void runBatch(BatchRunner runner, String pattern) throws IOException {
+        long start = System.nanoTime();
+        List<BatchRunner.Entry> entries = runner.run(BatchRunner.scripts(pattern));
+        BatchRunner.report(entries, Duration.ofNanos(System.nanoTime() - start), System.out);
+        for (BatchRunner.Entry entry : entries) {
+            if (entry.exitStatus != BatchRunner.EXIT_OK) {
+                System.exit(65);
+            }
+        }
     }
 
-    static void error(Token token, String message) {
-        if (token.type == TokenType.EOF) {
-            report(token.line, " at end", message);
-        } else {
-            report(token.line, " at '" + token.lexeme + "'", message);
+    private static void runProject(LoxContext context, Project project) {
+        if (project.hadError()) {
+            project.reportErrors(System.err);
+            System.exit(65);
+        }
+        if (!project.run(context)) {
+            System.exit(65);
         }
     }
 
-    static void runtimeError(RuntimeError error) {
-        System.err.println(error.getMessage() +
-                "\n[line " + error.getToken().line + "]");
-        hadError = true;
+    private static void runPrompt(LoxContext context) throws IOException {
+        InputStreamReader input = new InputStreamReader(System.in);
+        BufferedReader reader = new BufferedReader(input);
+
+        for (;;) {
+            System.out.print("> ");
+            String line = reader.readLine();
+            if (line == null) {
+                break;
+            }
+            context.run(line);
+            context.clearErrors();
+        }
     }
 }
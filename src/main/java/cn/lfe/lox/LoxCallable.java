@@ -1,8 +1,38 @@
 package cn.lfe.lox;
 
+import java.util.Arrays;
 import java.util.List;
 
 public interface LoxCallable {
     int arity();
     Object call(Interpreter interpreter, List<Object> arguments);
+
+    // Fixed-arity entry points used by call sites so that no argument list
+    // is built per call. Callables that only implement call(List) are
+    // adapted here; hot ones override them.
+
+    default Object call0(Interpreter interpreter) {
+        return callN(interpreter);
+    }
+
+    default Object call1(Interpreter interpreter, Object a) {
+        return callN(interpreter, a);
+    }
+
+    default Object call2(Interpreter interpreter, Object a, Object b) {
+        return callN(interpreter, a, b);
+    }
+
+    default Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+        return callN(interpreter, a, b, c);
+    }
+
+    default Object call4(Interpreter interpreter, Object a, Object b, Object c, Object d) {
+        return callN(interpreter, a, b, c, d);
+    }
+
+    default Object callN(Interpreter interpreter, Object... arguments) {
+        // Arrays.asList, unlike List.of, accepts nil arguments.
+        return call(interpreter, Arrays.asList(arguments));
+    }
 }
@@ -0,0 +1,237 @@
+package cn.lfe.lox;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded first-in first-out channel for handing values between tasks,
+ * any number of which may send and receive at once.
+ *
+ * <p>Values go through a lock-free ring buffer: each slot carries a
+ * sequence number that says whether it is ready to be written or read at
+ * a given position, and senders and receivers claim positions with a
+ * compare-and-set. Only a sender finding the channel full, or a receiver
+ * finding it empty, takes the lock, to wait; the other side signals it
+ * only when it knows someone is waiting.
+ */
+final class LoxChannel {
+    // Returned by poll() when there is nothing to take.
+    private static final Object EMPTY = new Object();
+    // Stands for nil in the buffer, where null means an empty slot.
+    private static final Object NIL = new Object();
+    // How long a blocked operation waits before checking for cancellation,
+    // which doesn't always come with an interrupt.
+    private static final long POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final int capacity;
+    // The sequence numbers need at least two slots to tell a slot that is
+    // ready to read from one ready to write, so a channel of one has two
+    // and checks its bound itself.
+    private final int slots;
+    private final AtomicReferenceArray<Object> items;
+    private final AtomicLongArray sequences;
+    private final AtomicLong sendPosition = new AtomicLong();
+    private final AtomicLong receivePosition = new AtomicLong();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    // Counted under the lock; read by the other side without it.
+    private volatile int waitingReceivers = 0;
+    private volatile int waitingSenders = 0;
+    private volatile boolean closed = false;
+
+    LoxChannel(int capacity) {
+        this.capacity = capacity;
+        this.slots = Math.max(capacity, 2);
+        this.items = new AtomicReferenceArray<>(slots);
+        this.sequences = new AtomicLongArray(slots);
+        for (int i = 0; i < slots; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    static LoxChannel cast(Object value) {
+        if (value instanceof LoxChannel channel) return channel;
+        throw new NativeError("Operand must be a channel.");
+    }
+
+    // Blocks while the channel is full.
+    void send(Interpreter interpreter, Object value) {
+        Object item = value == null ? NIL : value;
+        while (true) {
+            if (closed) {
+                throw new NativeError("Can't send on a closed channel.");
+            }
+            if (offer(item)) break;
+            awaitSpace(interpreter);
+        }
+        if (waitingReceivers > 0) signal(notEmpty);
+    }
+
+    // Blocks while the channel is empty. A closed channel gives nil once
+    // everything sent before it was closed has been received.
+    Object receive(Interpreter interpreter) {
+        Object item;
+        while ((item = poll()) == EMPTY) {
+            if (closed && (item = poll()) == EMPTY) return null;
+            if (item != EMPTY) break;
+            awaitItem(interpreter);
+        }
+        if (waitingSenders > 0) signal(notFull);
+        return item == NIL ? null : item;
+    }
+
+    // Up to max values in one go, blocking only until there is at least
+    // one; an empty list once the channel is closed and drained.
+    LoxList receiveMany(Interpreter interpreter, int max) {
+        interpreter.allocate();
+        LoxList values = new LoxList();
+        Object item;
+        while ((item = poll()) == EMPTY) {
+            if (closed && (item = poll()) == EMPTY) return values;
+            if (item != EMPTY) break;
+            awaitItem(interpreter);
+        }
+        do {
+            values.push(item == NIL ? null : item);
+        } while (values.size() < max && (item = poll()) != EMPTY);
+        if (waitingSenders > 0) signalAll(notFull);
+        return values;
+    }
+
+    // Wakes every waiting task: senders fail and receivers drain what is
+    // left. Closing twice does nothing.
+    void close() {
+        closed = true;
+        signalAll(notEmpty);
+        signalAll(notFull);
+    }
+
+    private boolean offer(Object item) {
+        long position = sendPosition.get();
+        int index;
+        while (true) {
+            index = (int) (position % slots);
+            long difference = sequences.get(index) - position;
+            if (slots != capacity && position - receivePosition.get() >= capacity) {
+                return false;
+            }
+            if (difference == 0) {
+                if (sendPosition.compareAndSet(position, position + 1)) break;
+                position = sendPosition.get();
+            } else if (difference < 0) {
+                // The slot still holds the value sent a lap ago.
+                return false;
+            } else {
+                position = sendPosition.get();
+            }
+        }
+        items.set(index, item);
+        sequences.set(index, position + 1);
+        return true;
+    }
+
+    private Object poll() {
+        long position = receivePosition.get();
+        int index;
+        while (true) {
+            index = (int) (position % slots);
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (receivePosition.compareAndSet(position, position + 1)) break;
+                position = receivePosition.get();
+            } else if (difference < 0) {
+                // Nothing has been sent to this position yet.
+                return EMPTY;
+            } else {
+                position = receivePosition.get();
+            }
+        }
+        Object item = items.get(index);
+        items.set(index, null);
+        sequences.set(index, position + slots);
+        return item;
+    }
+
+    private boolean isFull() {
+        return sendPosition.get() - receivePosition.get() >= capacity;
+    }
+
+    private boolean isEmpty() {
+        return sendPosition.get() == receivePosition.get();
+    }
+
+    // Registering as a waiter before checking again means a sender either
+    // sees the waiter and signals, or sent before the check and is seen.
+    private void awaitItem(Interpreter interpreter) {
+        lock.lock();
+        try {
+            waitingReceivers++;
+            try {
+                if (isEmpty() && !closed) {
+                    notEmpty.awaitNanos(POLL_NANOS);
+                }
+            } finally {
+                waitingReceivers--;
+            }
+        } catch (InterruptedException e) {
+            interrupted(interpreter);
+        } finally {
+            lock.unlock();
+        }
+        interpreter.checkCancelled();
+    }
+
+    private void awaitSpace(Interpreter interpreter) {
+        lock.lock();
+        try {
+            waitingSenders++;
+            try {
+                if (isFull() && !closed) {
+                    notFull.awaitNanos(POLL_NANOS);
+                }
+            } finally {
+                waitingSenders--;
+            }
+        } catch (InterruptedException e) {
+            interrupted(interpreter);
+        } finally {
+            lock.unlock();
+        }
+        interpreter.checkCancelled();
+    }
+
+    private void signal(Condition condition) {
+        lock.lock();
+        try {
+            condition.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void signalAll(Condition condition) {
+        lock.lock();
+        try {
+            condition.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void interrupted(Interpreter interpreter) {
+        Thread.currentThread().interrupt();
+        interpreter.checkCancelled();
+        throw new NativeError("Channel operation interrupted.");
+    }
+
+    @Override
+    public String toString() {
+        return "<channel>";
+    }
+}
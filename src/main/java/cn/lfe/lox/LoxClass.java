@@ -0,0 +1,75 @@
+package cn.lfe.lox;
+
+import java.util.List;
+import java.util.Map;
+
+public class LoxClass implements LoxCallable {
+    final String name;
+    final LoxClass superclass;
+    private final Map<String, LoxFunction> methods;
+    private final LoxFunction initializer;
+    // Every instance starts out with this shape; since shapes belong to one
+    // class, a cached shape also pins down where methods come from.
+    final Shape shape = new Shape(this);
+    // How many fields instances have ended up with, so new ones are
+    // allocated at that size instead of growing field by field.
+    int expectedFields = 0;
+
+    LoxClass(String name, LoxClass superclass, Map<String, LoxFunction> methods) {
+        this.name = name;
+        this.superclass = superclass;
+        this.methods = methods;
+        this.initializer = findMethod("init");
+    }
+
+    LoxFunction findMethod(String name) {
+        LoxFunction method = methods.get(name);
+        if (method != null) {
+            return method;
+        }
+
+        if (superclass != null) {
+            return superclass.findMethod(name);
+        }
+
+        return null;
+    }
+
+    @Override
+    public int arity() {
+        return initializer != null ? initializer.arity() : 0;
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        return callN(interpreter, arguments.toArray());
+    }
+
+    @Override
+    public Object callN(Interpreter interpreter, Object... arguments) {
+        interpreter.allocate();
+        LoxInstance instance = new LoxInstance(this);
+        if (initializer != null) {
+            Object[] frame = initializer.frame(instance);
+            for (int i = 0; i < arguments.length; i++) {
+                initializer.bind(frame, i, arguments[i]);
+            }
+            initializer.invoke(interpreter, frame);
+        }
+        return instance;
+    }
+
+    // Whether any method, inherited ones included, captured variables of
+    // the code the class was declared in.
+    boolean capturesVariables() {
+        for (LoxFunction method : methods.values()) {
+            if (method.capturesVariables()) return true;
+        }
+        return superclass != null && superclass.capturesVariables();
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,156 @@
+package cn.lfe.lox;
+
+import java.io.PrintStream;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * One isolated Lox runtime for embedding: an interpreter with its own
+ * globals, output, diagnostics and backend configuration. Contexts share no
+ * mutable state, so any number of them can run scripts in parallel, each on
+ * its own thread; a single context is not thread-safe.
+ */
+public class LoxContext {
+    private final Diagnostics diagnostics;
+    private final Interpreter interpreter;
+    private final Set<Superinstruction.Kind> fused;
+    // Set when the IR pipeline is requested.
+    private final PassManager passManager;
+    private final IrInterpreter irBackend;
+    // What stopped the last run, if it went over its budget.
+    private Budget.Kind exceeded = null;
+
+    // Prints to whatever System.out and System.err are at the time.
+    public LoxContext() {
+        this(new PrintStreamSink(), new Diagnostics());
+    }
+
+    public LoxContext(PrintStream out, PrintStream err) {
+        this(new PrintStreamSink(out), new Diagnostics(err));
+    }
+
+    LoxContext(OutputSink output, Diagnostics diagnostics) {
+        this(output, diagnostics, EnumSet.allOf(Superinstruction.Kind.class), null, false);
+    }
+
+    // Starts from the globals of snapshot instead of running whatever
+    // defined them again.
+    public LoxContext(GlobalsSnapshot snapshot, PrintStream out, PrintStream err) {
+        this(new PrintStreamSink(out), new Diagnostics(err), snapshot);
+    }
+
+    LoxContext(OutputSink output, Diagnostics diagnostics, GlobalsSnapshot snapshot) {
+        this(new Interpreter(output, diagnostics, snapshot), diagnostics,
+                EnumSet.allOf(Superinstruction.Kind.class), null, false);
+    }
+
+    LoxContext(OutputSink output, Diagnostics diagnostics, Set<Superinstruction.Kind> fused,
+               PassManager passManager, boolean irBackend) {
+        this(new Interpreter(output, diagnostics), diagnostics, fused, passManager, irBackend);
+    }
+
+    private LoxContext(Interpreter interpreter, Diagnostics diagnostics,
+                       Set<Superinstruction.Kind> fused, PassManager passManager, boolean irBackend) {
+        this.diagnostics = diagnostics;
+        this.interpreter = interpreter;
+        this.fused = fused;
+        this.passManager = passManager;
+        this.irBackend = irBackend ? new IrInterpreter(interpreter) : null;
+    }
+
+    // Compiles and runs source in this context's globals. Returns false if
+    // it had a compile or runtime error or went over its budget, which has
+    // been reported already, or was cancelled.
+    public boolean run(String source) {
+        CompiledProgram program = compile(source);
+        return program != null && run(program);
+    }
+
+    // Returns null if source has errors, after reporting them.
+    public CompiledProgram compile(String source) {
+        return CompiledProgram.compile(source, diagnostics, fused);
+    }
+
+    public boolean run(CompiledProgram program) {
+        exceeded = null;
+        try {
+            interpreter.resolveScript(program.slotCount, program.globals);
+            if (passManager != null) {
+                IrFunction lowered = new IrBuilder(diagnostics).lower(program.statements);
+                // Stop if the program uses something the IR can't express.
+                if (diagnostics.hadError()) return false;
+
+                IrFunction script = passManager.run(lowered);
+                if (irBackend != null) {
+                    irBackend.interpret(script);
+                    return !diagnostics.hadError();
+                }
+            }
+
+            // evaluate expression
+            interpreter.interpret(program.statements);
+            return !diagnostics.hadError();
+        } catch (ScriptCancelled cancelled) {
+            return false;
+        } catch (BudgetExceeded budgetExceeded) {
+            exceeded = budgetExceeded.kind;
+            diagnostics.budgetExceeded(budgetExceeded);
+            return false;
+        }
+    }
+
+    // Limits every run from the next one on; Budget.UNLIMITED by default.
+    public void setBudget(Budget budget) {
+        interpreter.setBudget(budget);
+    }
+
+    // The limit the last run went over, or null if it didn't.
+    public Budget.Kind exceededBudget() {
+        return exceeded;
+    }
+
+    // Stops a running script at its next loop iteration or call, from any
+    // thread. The context stays cancelled.
+    public void cancel() {
+        interpreter.cancel();
+    }
+
+    public boolean isCancelled() {
+        return interpreter.isCancelled();
+    }
+
+    // Makes a value, such as a native function, visible to scripts.
+    public void define(String name, Object value) {
+        interpreter.globals.define(name, value);
+    }
+
+    // Freezes the globals as they are now, for new contexts to start from.
+    // Throws IllegalStateException if one of them holds a value, such as a
+    // list or an instance, that those contexts could change under each
+    // other.
+    public GlobalsSnapshot snapshot() {
+        return new GlobalsSnapshot(interpreter.globals);
+    }
+
+    public boolean hadError() {
+        return diagnostics.hadError();
+    }
+
+    public boolean hadRuntimeError() {
+        return diagnostics.hadRuntimeError();
+    }
+
+    // Forgets earlier errors, so the next run starts clean; globals stay.
+    public void clearErrors() {
+        diagnostics.reset();
+    }
+
+    Diagnostics diagnostics() {
+        return diagnostics;
+    }
+
+    Interpreter interpreter() {
+        return interpreter;
+    }
+}
@@ -1,15 +1,29 @@
 package cn.lfe.lox;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public class LoxFunction implements LoxCallable {
 
     private final Stmt.Function declaration;
-    private final Environment closure;
+    private final FunctionInfo info;
+    private final Upvalue[] upvalues;
+    // The globals of the program that defined it, as linked in the context
+    // that ran it.
+    private final int[] globalSlots;
+    private final boolean isInitializer;
 
-    LoxFunction(Stmt.Function declaration, Environment closure) {
-        this.closure = closure;
+    LoxFunction(Stmt.Function declaration, Upvalue[] upvalues, int[] globalSlots) {
+        this(declaration, upvalues, globalSlots, false);
+    }
+
+    LoxFunction(Stmt.Function declaration, Upvalue[] upvalues, int[] globalSlots,
+                boolean isInitializer) {
         this.declaration = declaration;
+        this.info = declaration.info != null ? declaration.info : unresolved(declaration);
+        this.upvalues = upvalues;
+        this.globalSlots = globalSlots;
+        this.isInitializer = isInitializer;
     }
 
     @Override
@@ -19,21 +33,129 @@ public class LoxFunction implements LoxCallable {
 
     @Override
     public Object call(Interpreter interpreter, List<Object> arguments) {
-        Environment environment = new Environment(closure);
-        for (int i = 0; i < declaration.params.size(); i++) {
-            environment.define(declaration.params.get(i).lexeme, arguments.get(i));
+        return callN(interpreter, arguments.toArray());
+    }
+
+    // Each entry point binds its arguments straight into a fresh frame.
+
+    @Override
+    public Object call0(Interpreter interpreter) {
+        return invoke(interpreter, new Object[info.slotCount]);
+    }
+
+    @Override
+    public Object call1(Interpreter interpreter, Object a) {
+        Object[] frame = new Object[info.slotCount];
+        bind(frame, 0, a);
+        return invoke(interpreter, frame);
+    }
+
+    @Override
+    public Object call2(Interpreter interpreter, Object a, Object b) {
+        Object[] frame = new Object[info.slotCount];
+        bind(frame, 0, a);
+        bind(frame, 1, b);
+        return invoke(interpreter, frame);
+    }
+
+    @Override
+    public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+        Object[] frame = new Object[info.slotCount];
+        bind(frame, 0, a);
+        bind(frame, 1, b);
+        bind(frame, 2, c);
+        return invoke(interpreter, frame);
+    }
+
+    @Override
+    public Object call4(Interpreter interpreter, Object a, Object b, Object c, Object d) {
+        Object[] frame = new Object[info.slotCount];
+        bind(frame, 0, a);
+        bind(frame, 1, b);
+        bind(frame, 2, c);
+        bind(frame, 3, d);
+        return invoke(interpreter, frame);
+    }
+
+    @Override
+    public Object callN(Interpreter interpreter, Object... arguments) {
+        Object[] frame = new Object[info.slotCount];
+        for (int i = 0; i < arguments.length; i++) {
+            bind(frame, i, arguments[i]);
+        }
+        return invoke(interpreter, frame);
+    }
+
+    // A fresh frame for calling this function as a method of receiver.
+    Object[] frame(Object receiver) {
+        Object[] frame = new Object[info.slotCount];
+        Local local = info.receiver;
+        if (local != null) {
+            frame[local.slot] = local.captured ? new Upvalue(receiver) : receiver;
         }
+        return frame;
+    }
 
+    void bind(Object[] frame, int index, Object argument) {
+        Local param = info.params.get(index);
+        frame[param.slot] = param.captured ? new Upvalue(argument) : argument;
+    }
+
+    Object invoke(Interpreter interpreter, Object[] frame) {
+        if (interpreter.enterCall(declaration.name.lexeme)) {
+            return interpreter.onNewStack(() -> run(interpreter, frame));
+        }
+        return run(interpreter, frame);
+    }
+
+    private Object run(Interpreter interpreter, Object[] frame) {
         try {
-            interpreter.executeBlock(declaration.body, environment);
+            interpreter.executeCall(declaration.body, frame, upvalues, globalSlots);
         } catch (Return returnValue) {
+            interpreter.exitCall();
+            if (isInitializer) return receiver(frame);
             return returnValue.value;
         }
+        interpreter.exitCall();
+        if (isInitializer) return receiver(frame);
         return null;
     }
 
+    // A copy whose captured variables are copies too, taken now, so a task
+    // spawned with it neither sees nor makes changes to the spawner's.
+    boolean capturesVariables() {
+        return upvalues.length > 0;
+    }
+
+    LoxFunction detached() {
+        if (upvalues.length == 0) return this;
+        Upvalue[] copies = new Upvalue[upvalues.length];
+        LoxFunction copy = new LoxFunction(declaration, copies, globalSlots, isInitializer);
+        for (int i = 0; i < copies.length; i++) {
+            Object value = upvalues[i].value;
+            // A local function that captured itself should call its copy.
+            copies[i] = new Upvalue(value == this ? copy : value);
+        }
+        return copy;
+    }
+
+    private Object receiver(Object[] frame) {
+        Object value = frame[info.receiver.slot];
+        return info.receiver.captured ? ((Upvalue) value).value : value;
+    }
+
     @Override
     public String toString() {
         return "<fn " + declaration.name.lexeme + ">";
     }
+
+    // Declarations that never went through the Resolver still get a frame
+    // for their parameters; everything they reference is looked up globally.
+    private static FunctionInfo unresolved(Stmt.Function declaration) {
+        List<Local> params = new ArrayList<>();
+        for (int i = 0; i < declaration.params.size(); i++) {
+            params.add(new Local(i));
+        }
+        return new FunctionInfo(params.size(), null, params, new boolean[0], new int[0]);
+    }
 }
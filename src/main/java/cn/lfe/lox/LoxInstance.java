@@ -0,0 +1,37 @@
+package cn.lfe.lox;
+
+import java.util.Arrays;
+
+/**
+ * An instance of a {@link LoxClass}. Fields are stored in an array laid
+ * out by the instance's {@link Shape} rather than in a map; property sites
+ * cache the shape and index so they can skip the lookup entirely.
+ */
+public class LoxInstance {
+    private static final Object[] NO_FIELDS = new Object[0];
+
+    Shape shape;
+    Object[] fields;
+
+    LoxInstance(LoxClass klass) {
+        this.shape = klass.shape;
+        this.fields = klass.expectedFields == 0 ? NO_FIELDS : new Object[klass.expectedFields];
+    }
+
+    // Moves to a shape with one more field, making room for it.
+    void transition(Shape next) {
+        if (fields.length < next.fieldCount) {
+            fields = Arrays.copyOf(fields, Math.max(next.fieldCount, fields.length * 2));
+            LoxClass klass = shape.klass;
+            if (klass.expectedFields < next.fieldCount) {
+                klass.expectedFields = next.fieldCount;
+            }
+        }
+        shape = next;
+    }
+
+    @Override
+    public String toString() {
+        return shape.klass.name + " instance";
+    }
+}
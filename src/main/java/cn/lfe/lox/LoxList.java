@@ -0,0 +1,195 @@
+package cn.lfe.lox;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Lox's built-in list. Elements are kept unboxed in a {@code double[]} for
+ * as long as every element is a number and move to an {@code Object[]}
+ * the first time anything else is stored.
+ */
+class LoxList {
+    private static final int INITIAL_CAPACITY = 8;
+
+    // Exactly one of the two is in use: numbers while specialized.
+    private double[] numbers;
+    private Object[] objects;
+    private int size;
+
+    LoxList() {
+        this(INITIAL_CAPACITY);
+    }
+
+    LoxList(int capacity) {
+        numbers = new double[Math.max(capacity, INITIAL_CAPACITY)];
+    }
+
+    private LoxList(double[] numbers, Object[] objects, int size) {
+        this.numbers = numbers;
+        this.objects = objects;
+        this.size = size;
+    }
+
+    static LoxList cast(Object value) {
+        if (value instanceof LoxList list) return list;
+        throw new NativeError("Operand must be a list.");
+    }
+
+    int size() {
+        return size;
+    }
+
+    // Whether the elements are stored unboxed.
+    boolean isNumeric() {
+        return numbers != null;
+    }
+
+    Object get(Object index) {
+        int i = checkIndex(index);
+        return numbers != null ? Numbers.fromDouble(numbers[i]) : objects[i];
+    }
+
+    void set(Object index, Object value) {
+        int i = checkIndex(index);
+        if (numbers != null) {
+            if (Numbers.isNumber(value)) {
+                numbers[i] = Numbers.toDouble(value);
+                return;
+            }
+            generalize();
+        }
+        objects[i] = value;
+    }
+
+    void push(Object value) {
+        if (numbers != null) {
+            if (Numbers.isNumber(value)) {
+                if (size == numbers.length) {
+                    numbers = Arrays.copyOf(numbers, size * 2);
+                }
+                numbers[size++] = Numbers.toDouble(value);
+                return;
+            }
+            generalize();
+        }
+        if (size == objects.length) {
+            objects = Arrays.copyOf(objects, size * 2);
+        }
+        objects[size++] = value;
+    }
+
+    LoxList slice(Object from, Object to) {
+        int start = checkBound(from);
+        int end = checkBound(to);
+        if (start > end) {
+            throw new NativeError("Slice start must not be after its end.");
+        }
+        int capacity = Math.max(end - start, INITIAL_CAPACITY);
+        if (numbers != null) {
+            double[] copy = new double[capacity];
+            System.arraycopy(numbers, start, copy, 0, end - start);
+            return new LoxList(copy, null, end - start);
+        }
+        Object[] copy = new Object[capacity];
+        System.arraycopy(objects, start, copy, 0, end - start);
+        return new LoxList(null, copy, end - start);
+    }
+
+    // Numbers sort in parallel on the unboxed array; generalized lists may
+    // still sort if they hold only numbers or only strings.
+    void sort() {
+        if (numbers != null) {
+            Arrays.parallelSort(numbers, 0, size);
+            return;
+        }
+        boolean allNumbers = true;
+        boolean allStrings = true;
+        for (int i = 0; i < size; i++) {
+            allNumbers &= Numbers.isNumber(objects[i]);
+            allStrings &= Rope.isString(objects[i]);
+        }
+        if (allNumbers) {
+            Arrays.parallelSort(objects, 0, size,
+                    (a, b) -> Double.compare(Numbers.toDouble(a), Numbers.toDouble(b)));
+        } else if (allStrings) {
+            Arrays.parallelSort(objects, 0, size,
+                    (a, b) -> a.toString().compareTo(b.toString()));
+        } else {
+            throw new NativeError("Can only sort lists of numbers or lists of strings.");
+        }
+    }
+
+    private void generalize() {
+        objects = new Object[numbers.length];
+        for (int i = 0; i < size; i++) {
+            objects[i] = Numbers.fromDouble(numbers[i]);
+        }
+        numbers = null;
+    }
+
+    private int checkIndex(Object index) {
+        int i = toInt(index);
+        if (i < 0 || i >= size) {
+            throw new NativeError("List index out of range.");
+        }
+        return i;
+    }
+
+    private int checkBound(Object bound) {
+        int i = toInt(bound);
+        if (i < 0 || i > size) {
+            throw new NativeError("List index out of range.");
+        }
+        return i;
+    }
+
+    private static int toInt(Object index) {
+        if (index instanceof Long number) {
+            int i = (int) (long) number;
+            if (i == number) return i;
+        } else if (index instanceof Double number) {
+            int i = (int) (double) number;
+            if (i == number) return i;
+        }
+        throw new NativeError("List index must be an integer.");
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        appendTo(builder, Collections.newSetFromMap(new IdentityHashMap<>()));
+        return builder.toString();
+    }
+
+    // Printing holds the lists and maps being printed further out, so one
+    // that contains itself, however indirectly, prints as [...] or {...}.
+    void appendTo(StringBuilder builder, Set<Object> printing) {
+        if (!printing.add(this)) {
+            builder.append("[...]");
+            return;
+        }
+        builder.append("[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) builder.append(", ");
+            if (numbers != null) {
+                builder.append(NumberFormatter.format(numbers[i]));
+            } else {
+                append(builder, objects[i], printing);
+            }
+        }
+        builder.append("]");
+        printing.remove(this);
+    }
+
+    static void append(StringBuilder builder, Object value, Set<Object> printing) {
+        if (value instanceof LoxList list) {
+            list.appendTo(builder, printing);
+        } else if (value instanceof LoxMap map) {
+            map.appendTo(builder, printing);
+        } else {
+            builder.append(Interpreter.stringify(value));
+        }
+    }
+}
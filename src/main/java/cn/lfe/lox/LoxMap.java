@@ -0,0 +1,297 @@
+package cn.lfe.lox;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Lox's built-in hash map. Keys compare like Lox's {@code ==}: numbers and
+ * strings by value, everything else by identity.
+ * <p>
+ * Number keys live in their own open-addressing table keyed by the raw
+ * bits of the double, so they are never boxed. Other keys go to a second
+ * table that caches each key's hash next to it, which makes probing and
+ * resizing cheap for strings. Both tables use linear probing with
+ * backward-shift deletion, so there are no tombstones.
+ */
+class LoxMap {
+    private static final int INITIAL_CAPACITY = 16;
+    // Never produced by Double.doubleToLongBits(), which collapses NaNs.
+    private static final long EMPTY = 0x7ff0000000000001L;
+
+    private long[] numberKeys;
+    private Object[] numberValues;
+    private int numberCount;
+
+    // Flattened strings, booleans and objects; null marks a free slot.
+    private Object[] keys;
+    private int[] hashes;
+    private Object[] values;
+    private int objectCount;
+
+    private boolean hasNilKey;
+    private Object nilValue;
+
+    LoxMap() {
+        numberKeys = new long[INITIAL_CAPACITY];
+        Arrays.fill(numberKeys, EMPTY);
+        numberValues = new Object[INITIAL_CAPACITY];
+        keys = new Object[INITIAL_CAPACITY];
+        hashes = new int[INITIAL_CAPACITY];
+        values = new Object[INITIAL_CAPACITY];
+    }
+
+    static LoxMap cast(Object value) {
+        if (value instanceof LoxMap map) return map;
+        throw new NativeError("Operand must be a map.");
+    }
+
+    int size() {
+        return numberCount + objectCount + (hasNilKey ? 1 : 0);
+    }
+
+    // Missing keys read as nil.
+    Object get(Object key) {
+        if (Numbers.isNumber(key)) {
+            int slot = findNumber(Double.doubleToLongBits(Numbers.toDouble(key)));
+            return slot >= 0 ? numberValues[slot] : null;
+        }
+        if (key == null) return nilValue;
+        key = normalize(key);
+        int slot = findObject(key, hash(key));
+        return slot >= 0 ? values[slot] : null;
+    }
+
+    boolean has(Object key) {
+        if (Numbers.isNumber(key)) {
+            return findNumber(Double.doubleToLongBits(Numbers.toDouble(key))) >= 0;
+        }
+        if (key == null) return hasNilKey;
+        key = normalize(key);
+        return findObject(key, hash(key)) >= 0;
+    }
+
+    void put(Object key, Object value) {
+        if (Numbers.isNumber(key)) {
+            putNumber(Double.doubleToLongBits(Numbers.toDouble(key)), value);
+        } else if (key == null) {
+            hasNilKey = true;
+            nilValue = value;
+        } else {
+            key = normalize(key);
+            putObject(key, hash(key), value);
+        }
+    }
+
+    // Returns the value that was removed, or nil.
+    Object remove(Object key) {
+        if (Numbers.isNumber(key)) {
+            int slot = findNumber(Double.doubleToLongBits(Numbers.toDouble(key)));
+            if (slot < 0) return null;
+            Object value = numberValues[slot];
+            removeNumberAt(slot);
+            return value;
+        }
+        if (key == null) {
+            Object value = nilValue;
+            hasNilKey = false;
+            nilValue = null;
+            return value;
+        }
+        key = normalize(key);
+        int slot = findObject(key, hash(key));
+        if (slot < 0) return null;
+        Object value = values[slot];
+        removeObjectAt(slot);
+        return value;
+    }
+
+    // The keys in no particular order. Walks the tables directly; number
+    // keys stay unboxed in the returned list as long as they are all
+    // there is.
+    LoxList keys() {
+        LoxList list = new LoxList(size());
+        for (long bits : numberKeys) {
+            if (bits != EMPTY) list.push(Double.longBitsToDouble(bits));
+        }
+        if (hasNilKey) list.push(null);
+        for (Object key : keys) {
+            if (key != null) list.push(key);
+        }
+        return list;
+    }
+
+    private int findNumber(long bits) {
+        int mask = numberKeys.length - 1;
+        for (int i = mix(bits) & mask; ; i = (i + 1) & mask) {
+            long candidate = numberKeys[i];
+            if (candidate == bits) return i;
+            if (candidate == EMPTY) return -1;
+        }
+    }
+
+    private void putNumber(long bits, Object value) {
+        int mask = numberKeys.length - 1;
+        int i = mix(bits) & mask;
+        while (numberKeys[i] != EMPTY) {
+            if (numberKeys[i] == bits) {
+                numberValues[i] = value;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        numberKeys[i] = bits;
+        numberValues[i] = value;
+        if (++numberCount * 4 > numberKeys.length * 3) {
+            resizeNumbers();
+        }
+    }
+
+    private void removeNumberAt(int hole) {
+        int mask = numberKeys.length - 1;
+        for (int i = (hole + 1) & mask; numberKeys[i] != EMPTY; i = (i + 1) & mask) {
+            // Pull the entry back if the hole is on its probe path.
+            int ideal = mix(numberKeys[i]) & mask;
+            if (((i - ideal) & mask) >= ((i - hole) & mask)) {
+                numberKeys[hole] = numberKeys[i];
+                numberValues[hole] = numberValues[i];
+                hole = i;
+            }
+        }
+        numberKeys[hole] = EMPTY;
+        numberValues[hole] = null;
+        numberCount--;
+    }
+
+    private void resizeNumbers() {
+        long[] oldKeys = numberKeys;
+        Object[] oldValues = numberValues;
+        numberKeys = new long[oldKeys.length * 2];
+        Arrays.fill(numberKeys, EMPTY);
+        numberValues = new Object[oldKeys.length * 2];
+        int mask = numberKeys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            long bits = oldKeys[j];
+            if (bits == EMPTY) continue;
+            int i = mix(bits) & mask;
+            while (numberKeys[i] != EMPTY) {
+                i = (i + 1) & mask;
+            }
+            numberKeys[i] = bits;
+            numberValues[i] = oldValues[j];
+        }
+    }
+
+    private int findObject(Object key, int hash) {
+        int mask = keys.length - 1;
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            Object candidate = keys[i];
+            if (candidate == null) return -1;
+            if (hashes[i] == hash && (candidate == key || candidate.equals(key))) return i;
+        }
+    }
+
+    private void putObject(Object key, int hash, Object value) {
+        int mask = keys.length - 1;
+        int i = hash & mask;
+        while (keys[i] != null) {
+            if (hashes[i] == hash && (keys[i] == key || keys[i].equals(key))) {
+                values[i] = value;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        hashes[i] = hash;
+        values[i] = value;
+        if (++objectCount * 4 > keys.length * 3) {
+            resizeObjects();
+        }
+    }
+
+    private void removeObjectAt(int hole) {
+        int mask = keys.length - 1;
+        for (int i = (hole + 1) & mask; keys[i] != null; i = (i + 1) & mask) {
+            int ideal = hashes[i] & mask;
+            if (((i - ideal) & mask) >= ((i - hole) & mask)) {
+                keys[hole] = keys[i];
+                hashes[hole] = hashes[i];
+                values[hole] = values[i];
+                hole = i;
+            }
+        }
+        keys[hole] = null;
+        values[hole] = null;
+        objectCount--;
+    }
+
+    // Cached hashes mean keys are never rehashed when the table grows.
+    private void resizeObjects() {
+        Object[] oldKeys = keys;
+        int[] oldHashes = hashes;
+        Object[] oldValues = values;
+        keys = new Object[oldKeys.length * 2];
+        hashes = new int[oldKeys.length * 2];
+        values = new Object[oldKeys.length * 2];
+        int mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] == null) continue;
+            int i = oldHashes[j] & mask;
+            while (keys[i] != null) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = oldKeys[j];
+            hashes[i] = oldHashes[j];
+            values[i] = oldValues[j];
+        }
+    }
+
+    // Ropes are flattened so that equal strings are equal keys.
+    private static Object normalize(Object key) {
+        return key instanceof Rope ? key.toString() : key;
+    }
+
+    private static int hash(Object key) {
+        // String caches its own hash code; spread it for the low-bit mask.
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    // The low bits of doubles holding small integers are all zero, so the
+    // bits are mixed thoroughly (MurmurHash3's finalizer) before masking.
+    private static int mix(long bits) {
+        bits ^= bits >>> 33;
+        bits *= 0xff51afd7ed558ccdL;
+        bits ^= bits >>> 33;
+        bits *= 0xc4ceb9fe1a85ec53L;
+        bits ^= bits >>> 33;
+        return (int) bits;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        appendTo(builder, Collections.newSetFromMap(new IdentityHashMap<>()));
+        return builder.toString();
+    }
+
+    // Like LoxList.appendTo, with {...} for a map printed further out.
+    void appendTo(StringBuilder builder, Set<Object> printing) {
+        if (!printing.add(this)) {
+            builder.append("{...}");
+            return;
+        }
+        builder.append("{");
+        LoxList keys = keys();
+        for (int i = 0; i < keys.size(); i++) {
+            Object key = keys.get((double) i);
+            if (i > 0) builder.append(", ");
+            LoxList.append(builder, key, printing);
+            builder.append(": ");
+            LoxList.append(builder, get(key), printing);
+        }
+        builder.append("}");
+        printing.remove(this);
+    }
+}
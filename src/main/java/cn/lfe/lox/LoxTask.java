@@ -0,0 +1,84 @@
+package cn.lfe.lox;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * A function running on its own virtual thread with its own interpreter
+ * stack, as returned by the spawn native. Its result, or the error it
+ * failed with, is what joining it gives back.
+ */
+final class LoxTask {
+    private final Interpreter interpreter;
+    private final TaskScope scope;
+    private final Thread thread;
+    private final CompletableFuture<Object> result = new CompletableFuture<>();
+
+    LoxTask(Interpreter interpreter, LoxCallable function, TaskScope scope) {
+        this.interpreter = interpreter;
+        this.scope = scope;
+        this.thread = Thread.ofVirtual().name("lox-task").unstarted(() -> run(function));
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    // Leaves the scope before completing the result, so whoever joins the
+    // task finds the scope holding only the tasks still running.
+    private void run(LoxCallable function) {
+        Object value = null;
+        Throwable error = null;
+        try {
+            value = interpreter.runTask(function);
+        } catch (ScriptCancelled cancelled) {
+            error = cancelled;
+        } catch (Throwable failure) {
+            error = failure;
+            scope.failed(failure);
+        }
+        scope.finished(this);
+        if (error != null) {
+            result.completeExceptionally(error);
+        } else {
+            result.complete(value);
+        }
+    }
+
+    // Stops the task at its next loop iteration or call, and wakes it up
+    // if it is sleeping.
+    void cancel() {
+        interpreter.cancel();
+        thread.interrupt();
+    }
+
+    // The task's result. Rethrows the error the task failed with, which
+    // already carries the task's own trace.
+    Object join(Interpreter joiner) {
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ScriptCancelled) {
+                joiner.checkCancelled();
+                throw new NativeError("Joined task was cancelled.");
+            }
+            if (cause instanceof RuntimeException exception) throw exception;
+            if (cause instanceof Error fatal) throw fatal;
+            throw e;
+        }
+    }
+
+    void await() {
+        try {
+            result.join();
+        } catch (CompletionException ignored) {
+            // How the task ended is the business of whoever joins it.
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "<task>";
+    }
+}
@@ -0,0 +1,61 @@
+package cn.lfe.lox;
+
+/**
+ * Native functions over {@link LoxMap}:
+ * <pre>
+ * map()                  a new, empty map
+ * get(map, key)          the value for key, or nil (defined with the lists)
+ * put(map, key, value)   maps key to value
+ * has(map, key)          whether key is present
+ * remove(map, key)       removes key, returns its value or nil
+ * size(map)              the number of keys
+ * keys(map)              a new list of the keys, in no particular order
+ * </pre>
+ */
+final class MapNatives {
+    private MapNatives() {
+    }
+
+    static void define(Environment globals) {
+        globals.define("map", new NativeFunction(0) {
+            @Override
+            public Object call0(Interpreter interpreter) {
+                interpreter.allocate();
+                return new LoxMap();
+            }
+        });
+        globals.define("put", new NativeFunction(3) {
+            @Override
+            public Object call3(Interpreter interpreter, Object map, Object key, Object value) {
+                LoxMap.cast(map).put(key, value);
+                return null;
+            }
+        });
+        globals.define("has", new NativeFunction(2) {
+            @Override
+            public Object call2(Interpreter interpreter, Object map, Object key) {
+                return LoxMap.cast(map).has(key);
+            }
+        });
+        globals.define("remove", new NativeFunction(2) {
+            @Override
+            public Object call2(Interpreter interpreter, Object map, Object key) {
+                return LoxMap.cast(map).remove(key);
+            }
+        });
+        globals.define("size", new NativeFunction(1) {
+            @Override
+            public Object call1(Interpreter interpreter, Object map) {
+                return (long) LoxMap.cast(map).size();
+            }
+        });
+        globals.define("keys", new NativeFunction(1) {
+            @Override
+            public Object call1(Interpreter interpreter, Object map) {
+                LoxList keys = LoxMap.cast(map).keys();
+                interpreter.allocate();
+                return keys;
+            }
+        });
+    }
+}
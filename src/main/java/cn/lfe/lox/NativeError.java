@@ -0,0 +1,13 @@
+package cn.lfe.lox;
+
+/**
+ * Thrown by natives and built-in values, which have no token to blame.
+ * Call and index sites turn it into a {@link RuntimeError} at their own
+ * token.
+ */
+class NativeError extends RuntimeException {
+    NativeError(String message) {
+        // Reported to the user as a Lox error; the Java stack is never shown.
+        super(message, null, false, false);
+    }
+}
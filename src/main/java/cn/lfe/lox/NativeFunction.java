@@ -0,0 +1,37 @@
+package cn.lfe.lox;
+
+import java.util.List;
+
+/**
+ * Base for built-in functions. Subclasses override the fixed-arity entry
+ * point that matches their arity; {@link #call(Interpreter, List)} routes
+ * list-based calls there.
+ */
+abstract class NativeFunction implements LoxCallable {
+    private final int arity;
+
+    NativeFunction(int arity) {
+        this.arity = arity;
+    }
+
+    @Override
+    public int arity() {
+        return arity;
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        return switch (arguments.size()) {
+            case 0 -> call0(interpreter);
+            case 1 -> call1(interpreter, arguments.get(0));
+            case 2 -> call2(interpreter, arguments.get(0), arguments.get(1));
+            case 3 -> call3(interpreter, arguments.get(0), arguments.get(1), arguments.get(2));
+            default -> throw new IllegalStateException("Unsupported native arity " + arity);
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "<native fn>";
+    }
+}
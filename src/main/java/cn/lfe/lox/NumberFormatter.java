@@ -0,0 +1,136 @@
+package cn.lfe.lox;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Formats Lox numbers exactly like {@code Double.toString} with a trailing
+ * ".0" removed, but writes ASCII digits straight into a caller's buffer.
+ *
+ * <p>Integral values below 1e7 (the range {@code Double.toString} prints
+ * without an exponent) take a digit loop. Fractional values in the same
+ * range take the shortest number of fractional digits that parses back to
+ * the same double, which is the decimal {@code Double.toString} picks too;
+ * candidates that would need more than 15 significant digits, and values
+ * printed in scientific notation, go through {@code Double.toString}.
+ */
+final class NumberFormatter {
+    // Longest output of Double.toString, e.g. "-2.2250738585072014E-308".
+    static final int MAX_LENGTH = 32;
+
+    private static final double PLAIN_LOWER = 1e-3;
+    private static final double PLAIN_UPPER = 1e7;
+    // 10^15: candidates from here up have more than 15 digits. Below it,
+    // they and the powers of ten they are divided by are exact doubles.
+    private static final long MAX_EXACT_DIGITS = (long) 1e15;
+    private static final long[] LONG_POWERS = new long[16];
+    private static final double[] DOUBLE_POWERS = new double[16];
+
+    static {
+        long power = 1;
+        for (int i = 0; i < LONG_POWERS.length; i++) {
+            LONG_POWERS[i] = power;
+            DOUBLE_POWERS[i] = power;
+            power *= 10;
+        }
+    }
+
+    private NumberFormatter() {
+    }
+
+    static String format(double value) {
+        byte[] buffer = new byte[MAX_LENGTH];
+        int length = format(value, buffer, 0);
+        return new String(buffer, 0, length, StandardCharsets.ISO_8859_1);
+    }
+
+    // Integer-valued numbers print without ".0" until the exponent form.
+    static String format(long value) {
+        if (value > -PLAIN_UPPER && value < PLAIN_UPPER) {
+            return Long.toString(value);
+        }
+        return format((double) value);
+    }
+
+    // Like format(double, byte[], int), for an integer number.
+    static int format(long value, byte[] buffer, int offset) {
+        if (value > -PLAIN_UPPER && value < PLAIN_UPPER) {
+            if (value < 0) {
+                buffer[offset++] = '-';
+                value = -value;
+            }
+            return writeDigits(value, buffer, offset);
+        }
+        return format((double) value, buffer, offset);
+    }
+
+    // Writes the number at offset, which needs MAX_LENGTH bytes of room, and
+    // returns the offset just past it.
+    static int format(double value, byte[] buffer, int offset) {
+        double magnitude = Math.abs(value);
+        if (magnitude < PLAIN_UPPER && magnitude == Math.rint(magnitude)) {
+            if (value < 0 || (value == 0 && 1 / value < 0)) {
+                buffer[offset++] = '-';
+            }
+            return writeDigits((long) magnitude, buffer, offset);
+        }
+
+        if (magnitude >= PLAIN_LOWER && magnitude < PLAIN_UPPER) {
+            for (int digits = 1; digits < LONG_POWERS.length; digits++) {
+                long scaled = Math.round(magnitude * DOUBLE_POWERS[digits]);
+                if (scaled >= MAX_EXACT_DIGITS) break;
+                // Both operands are exact, so the division rounds the decimal
+                // scaled / 10^digits to its nearest double, like parsing does.
+                if (scaled / DOUBLE_POWERS[digits] == magnitude) {
+                    if (value < 0) buffer[offset++] = '-';
+                    return writeFixed(scaled, digits, buffer, offset);
+                }
+            }
+        }
+
+        return writeFallback(value, buffer, offset);
+    }
+
+    private static int writeDigits(long value, byte[] buffer, int offset) {
+        int end = offset + digitCount(value);
+        int position = end;
+        do {
+            buffer[--position] = (byte) ('0' + (value % 10));
+            value /= 10;
+        } while (value != 0);
+        return end;
+    }
+
+    private static int writeFixed(long scaled, int fractionDigits, byte[] buffer, int offset) {
+        long power = LONG_POWERS[fractionDigits];
+        offset = writeDigits(scaled / power, buffer, offset);
+        buffer[offset++] = '.';
+
+        long fraction = scaled % power;
+        int end = offset + fractionDigits;
+        for (int position = end - 1; position >= offset; position--) {
+            buffer[position] = (byte) ('0' + (fraction % 10));
+            fraction /= 10;
+        }
+        return end;
+    }
+
+    private static int writeFallback(double value, byte[] buffer, int offset) {
+        String text = Double.toString(value);
+        int length = text.length();
+        if (text.endsWith(".0")) {
+            length -= 2;
+        }
+        for (int i = 0; i < length; i++) {
+            buffer[offset++] = (byte) text.charAt(i);
+        }
+        return offset;
+    }
+
+    private static int digitCount(long value) {
+        int count = 1;
+        while (count < LONG_POWERS.length && value >= LONG_POWERS[count]) {
+            count++;
+        }
+        return count;
+    }
+}
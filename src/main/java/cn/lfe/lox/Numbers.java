@@ -0,0 +1,198 @@
+package cn.lfe.lox;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Arithmetic on Lox numbers. A number is a {@code Long} when it came from
+ * an integer literal or from integer arithmetic, and a {@code Double}
+ * otherwise; both stand for the same double value and behave exactly like
+ * it.
+ *
+ * <p>A {@code Long} never exceeds 2^53 in magnitude, where every integer is
+ * also a double. Sums, differences, small products and exact quotients of
+ * two of them are computed in long arithmetic, which gives the very value
+ * double arithmetic would; results that leave that range, are fractional
+ * or are -0.0 become {@code Double}s. Arithmetic never turns a
+ * {@code Double} back into a {@code Long}; only literals and numbers read
+ * back from unboxed storage, which keeps nothing but the double, are
+ * represented by what their value is.
+ *
+ * <p>Results are boxed through {@link #box(long)} and {@link #box(double)},
+ * which hand out shared instances for the small integers loops and indices
+ * are made of instead of allocating a new box per operation. Comparisons
+ * need nothing extra: autoboxing already shares the two {@code Boolean}s.
+ */
+final class Numbers {
+    static final long MAX_EXACT = 1L << 53;
+
+    // Covers the -1000..1000 that short-lived loop values mostly fall in.
+    static final int CACHE_LOW = -1024;
+    static final int CACHE_HIGH = 1024;
+    private static final Long[] LONGS = new Long[CACHE_HIGH - CACHE_LOW + 1];
+    private static final Double[] DOUBLES = new Double[CACHE_HIGH - CACHE_LOW + 1];
+
+    // Set before this class loads, by -Dlox.boxStats=true or --box-stats.
+    // Being final, it is a constant to the JIT, which drops the counting
+    // from box() entirely when it is off.
+    static final String BOX_STATS_PROPERTY = "lox.boxStats";
+    static final boolean COUNT_BOXES = Boolean.getBoolean(BOX_STATS_PROPERTY);
+    private static final LongAdder hits = new LongAdder();
+    private static final LongAdder misses = new LongAdder();
+
+    static {
+        for (int i = 0; i < LONGS.length; i++) {
+            LONGS[i] = (long) (i + CACHE_LOW);
+            DOUBLES[i] = (double) (i + CACHE_LOW);
+        }
+    }
+
+    private Numbers() {
+    }
+
+    static Object box(long value) {
+        if (value >= CACHE_LOW && value <= CACHE_HIGH) {
+            if (COUNT_BOXES) hits.increment();
+            return LONGS[(int) value - CACHE_LOW];
+        }
+        if (COUNT_BOXES) misses.increment();
+        return value;
+    }
+
+    static Object box(double value) {
+        int i = (int) value;
+        // Excludes -0.0, which must keep its own sign.
+        if (i == value && i >= CACHE_LOW && i <= CACHE_HIGH
+                && (i != 0 || Double.doubleToRawLongBits(value) == 0)) {
+            if (COUNT_BOXES) hits.increment();
+            return DOUBLES[i - CACHE_LOW];
+        }
+        if (COUNT_BOXES) misses.increment();
+        return value;
+    }
+
+    // E.g. "box cache: 950 hits, 50 misses (95.0% hit rate)".
+    static String boxStats() {
+        long hit = hits.sum(), miss = misses.sum();
+        double rate = hit + miss == 0 ? 0 : 100.0 * hit / (hit + miss);
+        return String.format("box cache: %d hits, %d misses (%.1f%% hit rate)", hit, miss, rate);
+    }
+
+    static boolean isNumber(Object value) {
+        return value instanceof Long || value instanceof Double;
+    }
+
+    static double toDouble(Object number) {
+        if (number instanceof Long value) {
+            return value;
+        }
+        return (Double) number;
+    }
+
+    // The representation of a literal: integral values in range become
+    // Longs, everything else stays as scanned.
+    static Object literal(Object value) {
+        if (value instanceof Double number) {
+            return fromDouble(number);
+        }
+        return value;
+    }
+
+    // The representation of a bare double value, e.g. one kept unboxed in
+    // a list: a Long if it is integral and in range, a Double otherwise.
+    static Object fromDouble(double value) {
+        if (value == Math.rint(value) && Math.abs(value) <= MAX_EXACT
+                && !(value == 0 && 1 / value < 0)) {
+            return box((long) value);
+        }
+        return box(value);
+    }
+
+    static Object add(Object left, Object right) {
+        if (left instanceof Long a && right instanceof Long b) {
+            return exact(a + b);
+        }
+        return box(toDouble(left) + toDouble(right));
+    }
+
+    static Object subtract(Object left, Object right) {
+        if (left instanceof Long a && right instanceof Long b) {
+            return exact(a - b);
+        }
+        return box(toDouble(left) - toDouble(right));
+    }
+
+    static Object multiply(Object left, Object right) {
+        if (left instanceof Long a && right instanceof Long b) {
+            long x = a, y = b;
+            // Factors below 2^31 can't overflow the long product.
+            if (x == (int) x && y == (int) y) {
+                long product = x * y;
+                if (product == 0 && (x | y) < 0) {
+                    return -0.0;
+                }
+                return exact(product);
+            }
+        }
+        return box(toDouble(left) * toDouble(right));
+    }
+
+    static Object divide(Object left, Object right) {
+        if (left instanceof Long a && right instanceof Long b) {
+            long x = a, y = b;
+            // A zero dividend is left to doubles, which know the sign of 0/-1.
+            if (x != 0 && y != 0) {
+                long quotient = x / y;
+                if (quotient * y == x) {
+                    return box(quotient);
+                }
+            }
+        }
+        return box(toDouble(left) / toDouble(right));
+    }
+
+    static Object negate(Object operand) {
+        if (operand instanceof Long value) {
+            long x = value;
+            return x == 0 ? (Object) (-0.0) : box(-x);
+        }
+        return box(-(Double) operand);
+    }
+
+    static boolean less(Object left, Object right) {
+        if (left instanceof Long a && right instanceof Long b) {
+            return a < b;
+        }
+        return toDouble(left) < toDouble(right);
+    }
+
+    static boolean lessEqual(Object left, Object right) {
+        if (left instanceof Long a && right instanceof Long b) {
+            return a <= b;
+        }
+        return toDouble(left) <= toDouble(right);
+    }
+
+    static boolean greater(Object left, Object right) {
+        return less(right, left);
+    }
+
+    static boolean greaterEqual(Object left, Object right) {
+        return lessEqual(right, left);
+    }
+
+    // Same as Double.equals() on the double values: NaN equals itself and
+    // 0.0 differs from -0.0, which isEqual() has always relied on.
+    static boolean equal(Object left, Object right) {
+        if (left instanceof Long a && right instanceof Long b) {
+            return a.longValue() == b.longValue();
+        }
+        return Double.compare(toDouble(left), toDouble(right)) == 0;
+    }
+
+    private static Object exact(long value) {
+        if (value >= -MAX_EXACT && value <= MAX_EXACT) {
+            return box(value);
+        }
+        return (double) value;
+    }
+}
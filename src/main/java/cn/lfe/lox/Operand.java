@@ -0,0 +1,36 @@
+package cn.lfe.lox;
+
+/**
+ * An IR instruction input: either a constant or a temporary. Temporaries
+ * are SSA-style, each one is written by exactly one instruction.
+ */
+class Operand {
+    static final Operand NIL = new Operand(-1, null);
+
+    final int temp;
+    final Object value;
+
+    private Operand(int temp, Object value) {
+        this.temp = temp;
+        this.value = value;
+    }
+
+    static Operand temp(int temp) {
+        return new Operand(temp, null);
+    }
+
+    static Operand constant(Object value) {
+        return value == null ? NIL : new Operand(-1, value);
+    }
+
+    boolean isConstant() {
+        return temp < 0;
+    }
+
+    @Override
+    public String toString() {
+        if (!isConstant()) return "t" + temp;
+        if (Rope.isString(value)) return "\"" + value + "\"";
+        return Interpreter.stringify(value);
+    }
+}
@@ -0,0 +1,17 @@
+package cn.lfe.lox;
+
+/**
+ * Where {@code print} statements write. Numbers get their own entry point
+ * so sinks can format them without building a string first.
+ */
+interface OutputSink {
+    void println(CharSequence text);
+
+    void println(double number);
+
+    void println(long number);
+
+    // Pushes out anything buffered. Called at the end of every run and
+    // before a runtime error is reported.
+    void flush();
+}
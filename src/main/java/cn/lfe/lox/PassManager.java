@@ -0,0 +1,65 @@
+package cn.lfe.lox;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Runs an ordered list of {@link IrPass}es over a lowered script and,
+ * when asked, dumps the IR after one of them ("lower" dumps the IR as
+ * built, "all" dumps it after every stage).
+ */
+class PassManager {
+    static final Map<String, Supplier<IrPass>> PASSES = new LinkedHashMap<>();
+    static final List<String> DEFAULT_PASSES = List.of("fold", "simplify-cfg", "dce");
+
+    static {
+        PASSES.put("fold", ConstantFoldingPass::new);
+        PASSES.put("simplify-cfg", SimplifyCfgPass::new);
+        PASSES.put("dce", DeadCodePass::new);
+    }
+
+    private final List<IrPass> passes = new ArrayList<>();
+    private final String dumpAfter;
+    private final PrintStream dump;
+
+    PassManager(List<String> names, String dumpAfter, PrintStream dump) {
+        for (String name : names) {
+            Supplier<IrPass> pass = PASSES.get(name);
+            if (pass == null) {
+                throw new IllegalArgumentException("Unknown pass '" + name +
+                        "'. Available passes: " + String.join(", ", PASSES.keySet()) + ".");
+            }
+            passes.add(pass.get());
+        }
+        if (dumpAfter != null && !dumpAfter.equals("lower") && !dumpAfter.equals("all")
+                && !names.contains(dumpAfter)) {
+            throw new IllegalArgumentException("Cannot dump IR after '" + dumpAfter +
+                    "', it is not in the pass list.");
+        }
+        this.dumpAfter = dumpAfter;
+        this.dump = dump;
+    }
+
+    IrFunction run(IrFunction script) {
+        dump("lower", script);
+        for (IrPass pass : passes) {
+            for (IrFunction function : script.withNested()) {
+                pass.run(function);
+            }
+            dump(pass.name(), script);
+        }
+        return script;
+    }
+
+    private void dump(String stage, IrFunction script) {
+        if (dumpAfter == null) return;
+        if (dumpAfter.equals(stage) || dumpAfter.equals("all")) {
+            dump.println("; IR after " + stage);
+            dump.print(script);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package cn.lfe.lox;
+
+import java.io.PrintStream;
+
+/**
+ * Unbuffered sink that prints through a {@link PrintStream}, line by line,
+ * for interactive use. Without a stream it uses whatever
+ * {@code System.out} is at the time of each print.
+ */
+class PrintStreamSink implements OutputSink {
+    private final PrintStream stream;
+
+    PrintStreamSink() {
+        this(null);
+    }
+
+    PrintStreamSink(PrintStream stream) {
+        this.stream = stream;
+    }
+
+    @Override
+    public void println(CharSequence text) {
+        out().println(text.toString());
+    }
+
+    @Override
+    public void println(double number) {
+        out().println(NumberFormatter.format(number));
+    }
+
+    @Override
+    public void println(long number) {
+        out().println(NumberFormatter.format(number));
+    }
+
+    @Override
+    public void flush() {
+        out().flush();
+    }
+
+    private PrintStream out() {
+        return stream != null ? stream : System.out;
+    }
+}
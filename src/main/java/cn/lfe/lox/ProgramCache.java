@@ -0,0 +1,118 @@
+package cn.lfe.lox;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.EnumSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Compiled programs by the SHA-256 of their source, keeping the most
+ * recently used ones, so scripts that run over and over are only compiled
+ * the first time. Safe to share between threads; sources that fail to
+ * compile are not kept.
+ */
+public class ProgramCache {
+    private final int capacity;
+    // A lock rather than synchronized, which would pin virtual threads.
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, CompiledProgram> programs;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public ProgramCache(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive.");
+        }
+        this.capacity = capacity;
+        this.programs = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CompiledProgram> eldest) {
+                return size() > ProgramCache.this.capacity;
+            }
+        };
+    }
+
+    // Throws IllegalArgumentException with the errors if source doesn't
+    // compile.
+    public CompiledProgram get(String source) {
+        String key = sha256(source);
+        CompiledProgram program = lookUp(key);
+        if (program == null) {
+            program = store(key, CompiledProgram.compile(source));
+        }
+        return program;
+    }
+
+    // Returns null if source has errors, after reporting them.
+    CompiledProgram get(String source, Diagnostics diagnostics) {
+        String key = sha256(source);
+        CompiledProgram program = lookUp(key);
+        if (program == null) {
+            program = CompiledProgram.compile(source, diagnostics,
+                    EnumSet.allOf(Superinstruction.Kind.class));
+            if (program != null) program = store(key, program);
+        }
+        return program;
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return programs.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private CompiledProgram lookUp(String key) {
+        CompiledProgram program;
+        lock.lock();
+        try {
+            program = programs.get(key);
+        } finally {
+            lock.unlock();
+        }
+        if (program == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return program;
+    }
+
+    // Compiling happens outside the lock, so two threads missing on the
+    // same source may both compile it; the first one stored wins.
+    private CompiledProgram store(String key, CompiledProgram program) {
+        lock.lock();
+        try {
+            CompiledProgram existing = programs.putIfAbsent(key, program);
+            return existing != null ? existing : program;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(
+                    digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+}
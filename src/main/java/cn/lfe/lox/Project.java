@@ -0,0 +1,201 @@
+package cn.lfe.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * A program split over many files that share their globals. The files are
+ * scanned, parsed and resolved on a work-stealing pool, each on its own:
+ * resolving a file needs nothing from the others, since every name that
+ * isn't local to it is a global. They are then put in the order they run
+ * in, where a file comes after the files defining the globals it uses.
+ *
+ * <p>Errors are collected per file and reported in the order of the paths,
+ * each line prefixed with its file, so they come out the same however the
+ * work was split.
+ */
+final class Project {
+    /**
+     * One file of the project.
+     */
+    static final class Unit {
+        final Path path;
+        // Null if the file didn't compile.
+        final CompiledProgram program;
+        // Formatted like on the command line, one per line.
+        final String errors;
+
+        Unit(Path path, CompiledProgram program, String errors) {
+            this.path = path;
+            this.program = program;
+            this.errors = errors;
+        }
+    }
+
+    // In the order they run in.
+    private final List<Unit> units;
+    private final boolean hadError;
+
+    private Project(List<Unit> units, boolean hadError) {
+        this.units = units;
+        this.hadError = hadError;
+    }
+
+    static Project compile(List<Path> files, int jobs) {
+        return compile(files, jobs, EnumSet.allOf(Superinstruction.Kind.class));
+    }
+
+    static Project compile(List<Path> files, int jobs, Set<Superinstruction.Kind> fused) {
+        if (jobs < 1) {
+            throw new IllegalArgumentException("Jobs must be positive.");
+        }
+        List<Path> sorted = files.stream().sorted().toList();
+        List<Unit> units = new ArrayList<>(sorted.size());
+        ForkJoinPool pool = new ForkJoinPool(jobs);
+        try {
+            List<ForkJoinTask<Unit>> tasks = new ArrayList<>(sorted.size());
+            for (Path file : sorted) {
+                tasks.add(pool.submit(() -> compile(file, fused)));
+            }
+            for (ForkJoinTask<Unit> task : tasks) {
+                units.add(task.join());
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        boolean hadError = units.stream().anyMatch(unit -> unit.program == null);
+        return new Project(hadError ? units : runOrder(units), hadError);
+    }
+
+    private static Unit compile(Path file, Set<Superinstruction.Kind> fused) {
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        Diagnostics diagnostics = new Diagnostics(new PrintStream(errors, true, StandardCharsets.UTF_8));
+        CompiledProgram program = null;
+        try {
+            String source = new String(Files.readAllBytes(file), Charset.defaultCharset());
+            program = CompiledProgram.compile(source, diagnostics, fused);
+        } catch (IOException e) {
+            diagnostics.error(0, "Could not read file: " + e.getMessage());
+        }
+        return new Unit(file, program, errors.toString(StandardCharsets.UTF_8));
+    }
+
+    // Each file runs after the files defining the globals it uses, and
+    // otherwise in the order of their paths. Files that use each other's
+    // globals, which is fine as long as only functions do, run in the
+    // order of their paths too.
+    private static List<Unit> runOrder(List<Unit> units) {
+        Map<String, Integer> definedIn = new HashMap<>();
+        for (int i = 0; i < units.size(); i++) {
+            for (String name : definedGlobals(units.get(i).program)) {
+                definedIn.putIfAbsent(name, i);
+            }
+        }
+
+        List<List<Integer>> dependents = new ArrayList<>(units.size());
+        int[] waitingFor = new int[units.size()];
+        for (int i = 0; i < units.size(); i++) {
+            dependents.add(new ArrayList<>());
+        }
+        for (int i = 0; i < units.size(); i++) {
+            for (int dependency : dependencies(units.get(i).program, definedIn, i)) {
+                dependents.get(dependency).add(i);
+                waitingFor[i]++;
+            }
+        }
+
+        PriorityQueue<Integer> ready = new PriorityQueue<>();
+        for (int i = 0; i < units.size(); i++) {
+            if (waitingFor[i] == 0) ready.add(i);
+        }
+        boolean[] placed = new boolean[units.size()];
+        List<Unit> order = new ArrayList<>(units.size());
+        while (order.size() < units.size()) {
+            Integer next = ready.poll();
+            if (next == null) {
+                // Only cycles are left: take the first file still waiting.
+                next = 0;
+                while (placed[next]) next++;
+            }
+            placed[next] = true;
+            order.add(units.get(next));
+            for (int dependent : dependents.get(next)) {
+                if (!placed[dependent] && --waitingFor[dependent] == 0) ready.add(dependent);
+            }
+        }
+        return order;
+    }
+
+    private static Set<Integer> dependencies(CompiledProgram program, Map<String, Integer> definedIn,
+                                             int self) {
+        Set<Integer> dependencies = new TreeSet<>();
+        for (String name : program.globals) {
+            Integer file = definedIn.get(name);
+            if (file != null && file != self) dependencies.add(file);
+        }
+        return dependencies;
+    }
+
+    private static List<String> definedGlobals(CompiledProgram program) {
+        List<String> names = new ArrayList<>();
+        for (Stmt statement : program.statements) {
+            if (statement instanceof Stmt.Var var && var.local == null) {
+                names.add(var.name.lexeme);
+            } else if (statement instanceof Stmt.Function function && function.local == null) {
+                names.add(function.name.lexeme);
+            } else if (statement instanceof Stmt.Class klass && klass.local == null) {
+                names.add(klass.name.lexeme);
+            }
+        }
+        return names;
+    }
+
+    boolean hadError() {
+        return hadError;
+    }
+
+    // In the order they run in, or of their paths if some had errors.
+    List<Unit> units() {
+        return units;
+    }
+
+    // Every file's errors, files in the order of their paths.
+    void reportErrors(PrintStream err) {
+        units.stream()
+                .filter(unit -> !unit.errors.isEmpty())
+                .sorted((a, b) -> a.path.compareTo(b.path))
+                .forEach(unit -> {
+                    for (String line : unit.errors.strip().split("\n")) {
+                        err.println(unit.path + ": " + line);
+                    }
+                });
+    }
+
+    // Runs the files one after another in context, stopping at the first
+    // that fails. Returns false if one did.
+    boolean run(LoxContext context) {
+        if (hadError) {
+            throw new IllegalStateException("The project has compile errors.");
+        }
+        for (Unit unit : units) {
+            if (!context.run(unit.program)) return false;
+        }
+        return true;
+    }
+}
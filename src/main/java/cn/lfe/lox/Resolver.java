@@ -4,11 +4,32 @@ import java.util.*;
 
 public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
+    private final Diagnostics diagnostics;
+    // Told how many slots top-level code needs, when resolving straight
+    // for one interpreter rather than into a CompiledProgram.
     private final Interpreter interpreter;
-    private final Stack<Map<String, Boolean>> scopes = new Stack<>();
+    private final Stack<Map<String, Binding>> scopes = new Stack<>();
     private FunctionType currentFunction = FunctionType.NONE;
+    private ClassType currentClass = ClassType.NONE;
+    // Frame layout of the function being resolved; the outermost one holds
+    // the locals of blocks in top-level code.
+    private FrameLayout frame = new FrameLayout(null);
+    // Every name the code refers to that isn't a local: a global, defined
+    // by this code, another file of the project, or a native. Each gets a
+    // number, in the order they turn up, which its sites keep and which
+    // the interpreter links to where the global lives.
+    private final Map<String, Integer> globals = new LinkedHashMap<>();
 
     public Resolver(Interpreter interpreter) {
+        this(interpreter.diagnostics, interpreter);
+    }
+
+    Resolver(Diagnostics diagnostics) {
+        this(diagnostics, null);
+    }
+
+    private Resolver(Diagnostics diagnostics, Interpreter interpreter) {
+        this.diagnostics = diagnostics;
         this.interpreter = interpreter;
     }
 
@@ -16,6 +37,15 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         for (Stmt statement : statements) {
             resolve(statement);
         }
+
+        if (scopes.isEmpty() && interpreter != null) {
+            interpreter.resolveScript(frame.maxSlots, globals());
+        }
+    }
+
+    // By their number.
+    List<String> globals() {
+        return new ArrayList<>(globals.keySet());
     }
 
     @Override
@@ -28,7 +58,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitVarStmt(Stmt.Var stmt) {
-        declare(stmt.name);
+        stmt.local = declare(stmt.name);
         if (stmt.initializer != null) {
             resolve(stmt.initializer);
         }
@@ -38,24 +68,29 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitVariableExpr(Expr.Variable expr) {
-        if (!scopes.isEmpty() && scopes.peek().get(expr.name.lexeme) == Boolean.FALSE) {
-            Lox.error(expr.name, "Can't read local variable in its own initializer.");
+        if (!scopes.isEmpty()) {
+            Binding binding = scopes.peek().get(expr.name.lexeme);
+            if (binding != null && !binding.defined) {
+                diagnostics.error(expr.name, "Can't read local variable in its own initializer.");
+            }
         }
 
-        resolveLocal(expr, expr.name);
+        expr.ref = resolveLocal(expr.name);
+        if (expr.ref == null) expr.global = globals.get(expr.name.lexeme);
         return null;
     }
 
     @Override
     public Void visitAssignExpr(Expr.Assign expr) {
         resolve(expr.value);
-        resolveLocal(expr, expr.name);
+        expr.ref = resolveLocal(expr.name);
+        if (expr.ref == null) expr.global = globals.get(expr.name.lexeme);
         return null;
     }
 
     @Override
     public Void visitFunctionStmt(Stmt.Function stmt) {
-        declare(stmt.name);
+        stmt.local = declare(stmt.name);
         define(stmt.name);
 
         resolveFunction(stmt, FunctionType.FUNCTION);
@@ -63,6 +98,41 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         return null;
     }
 
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+        ClassType enclosingClass = currentClass;
+        currentClass = ClassType.CLASS;
+
+        stmt.local = declare(stmt.name);
+        define(stmt.name);
+
+        if (stmt.superclass != null) {
+            if (stmt.name.lexeme.equals(stmt.superclass.name.lexeme)) {
+                diagnostics.error(stmt.superclass.name, "A class can't inherit from itself.");
+            }
+            currentClass = ClassType.SUBCLASS;
+            resolve(stmt.superclass);
+
+            // 'super' is a hidden local around the methods, which capture
+            // it like any other variable.
+            beginScope();
+            Token keyword = new Token(TokenType.SUPER, "super", null, stmt.name.line);
+            stmt.superclassLocal = declare(keyword);
+            define(keyword);
+        }
+
+        for (Stmt.Function method : stmt.methods) {
+            FunctionType type = method.name.lexeme.equals("init")
+                    ? FunctionType.INITIALIZER : FunctionType.METHOD;
+            resolveFunction(method, type);
+        }
+
+        if (stmt.superclass != null) endScope();
+
+        currentClass = enclosingClass;
+        return null;
+    }
+
     @Override
     public Void visitExpressionStmt(Stmt.Expression stmt) {
         resolve(stmt.expression);
@@ -86,16 +156,25 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     @Override
     public Void visitReturnStmt(Stmt.Return stmt) {
         if (currentFunction == FunctionType.NONE) {
-            Lox.error(stmt.keyword, "Can't return from top-level code.");
+            diagnostics.error(stmt.keyword, "Can't return from top-level code.");
         }
 
         if (stmt.value != null) {
+            if (currentFunction == FunctionType.INITIALIZER) {
+                diagnostics.error(stmt.keyword, "Can't return a value from an initializer.");
+            }
             resolve(stmt.value);
         }
 
         return null;
     }
 
+    @Override
+    public Void visitParallelStmt(Stmt.Parallel stmt) {
+        resolve(stmt.body);
+        return null;
+    }
+
     @Override
     public Void visitWhileStmt(Stmt.While stmt) {
         resolve(stmt.condition);
@@ -121,12 +200,25 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         return null;
     }
 
+    @Override
+    public Void visitGetExpr(Expr.Get expr) {
+        resolve(expr.object);
+        return null;
+    }
+
     @Override
     public Void visitGroupingExpr(Expr.Grouping expr) {
         resolve(expr.expression);
         return null;
     }
 
+    @Override
+    public Void visitIndexExpr(Expr.Index expr) {
+        resolve(expr.object);
+        resolve(expr.index);
+        return null;
+    }
+
     @Override
     public Void visitLiteralExpr(Expr.Literal expr) {
         return null;
@@ -139,12 +231,83 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         return null;
     }
 
+    @Override
+    public Void visitSetExpr(Expr.Set expr) {
+        resolve(expr.value);
+        resolve(expr.object);
+        return null;
+    }
+
+    @Override
+    public Void visitSuperExpr(Expr.Super expr) {
+        if (currentClass == ClassType.NONE) {
+            diagnostics.error(expr.keyword, "Can't use 'super' outside of a class.");
+        } else if (currentClass != ClassType.SUBCLASS) {
+            diagnostics.error(expr.keyword, "Can't use 'super' in a class with no superclass.");
+        }
+
+        expr.ref = resolveLocal(expr.keyword);
+        expr.receiver = resolveLocal(thisToken(expr.keyword));
+        return null;
+    }
+
+    @Override
+    public Void visitThisExpr(Expr.This expr) {
+        if (currentClass == ClassType.NONE) {
+            diagnostics.error(expr.keyword, "Can't use 'this' outside of a class.");
+            return null;
+        }
+
+        expr.ref = resolveLocal(expr.keyword);
+        return null;
+    }
+
+    @Override
+    public Void visitSetIndexExpr(Expr.SetIndex expr) {
+        resolve(expr.object);
+        resolve(expr.index);
+        resolve(expr.value);
+        return null;
+    }
+
     @Override
     public Void visitUnaryExpr(Expr.Unary expr) {
         resolve(expr.right);
         return null;
     }
 
+    // Frame size needed by the locals of top-level blocks in statements
+    // that were already resolved, for passes that run after the Resolver.
+    static int scriptSlots(List<Stmt> statements) {
+        int slots = 0;
+        for (Stmt statement : statements) {
+            if (statement instanceof Stmt.Var var && var.local != null) {
+                slots = Math.max(slots, var.local.slot + 1);
+            } else if (statement instanceof Stmt.Function fun && fun.local != null) {
+                slots = Math.max(slots, fun.local.slot + 1);
+            } else if (statement instanceof Stmt.Class klass) {
+                if (klass.local != null) {
+                    slots = Math.max(slots, klass.local.slot + 1);
+                }
+                if (klass.superclassLocal != null) {
+                    slots = Math.max(slots, klass.superclassLocal.slot + 1);
+                }
+            } else if (statement instanceof Stmt.Block block) {
+                slots = Math.max(slots, scriptSlots(block.statements));
+            } else if (statement instanceof Stmt.If stmt) {
+                slots = Math.max(slots, scriptSlots(List.of(stmt.thenBranch)));
+                if (stmt.elseBranch != null) {
+                    slots = Math.max(slots, scriptSlots(List.of(stmt.elseBranch)));
+                }
+            } else if (statement instanceof Stmt.While stmt) {
+                slots = Math.max(slots, scriptSlots(List.of(stmt.body)));
+            } else if (statement instanceof Stmt.Parallel stmt) {
+                slots = Math.max(slots, scriptSlots(stmt.body.statements));
+            }
+        }
+        return slots;
+    }
+
     private void resolve(Stmt stmt) {
         stmt.accept(this);
     }
@@ -152,40 +315,71 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     private void resolveFunction(Stmt.Function function, FunctionType type) {
         FunctionType enclosingFunction = currentFunction;
         currentFunction = type;
+        frame = new FrameLayout(frame);
 
         beginScope();
+        // Methods take their receiver in the first slot.
+        Local receiver = null;
+        if (type == FunctionType.METHOD || type == FunctionType.INITIALIZER) {
+            Token keyword = thisToken(function.name);
+            receiver = declare(keyword);
+            define(keyword);
+        }
+        List<Local> params = new ArrayList<>();
         for (Token param : function.params) {
-            declare(param);
+            params.add(declare(param));
             define(param);
         }
         resolve(function.body);
         endScope();
+
+        function.info = frame.toFunctionInfo(receiver, params);
+        frame = frame.enclosing;
         currentFunction = enclosingFunction;
     }
 
-    private void resolveLocal(Expr expr, Token name) {
+    private VarRef resolveLocal(Token name) {
         for (int i = scopes.size() - 1; i >= 0; i--) {
-            if (scopes.get(i).containsKey(name.lexeme)) {
-                interpreter.resolve(expr, scopes.size() - 1 - i);
-                return;
+            Binding binding = scopes.get(i).get(name.lexeme);
+            if (binding != null) {
+                if (binding.frame == frame) {
+                    return binding.ref;
+                }
+                return new VarRef(resolveUpvalue(frame, binding));
             }
         }
+
+        // Not found. Assume it is global.
+        globals.putIfAbsent(name.lexeme, globals.size());
+        return null;
     }
 
-    private void declare(Token name) {
-        if (scopes.isEmpty()) return;
+    private int resolveUpvalue(FrameLayout layout, Binding binding) {
+        if (layout.enclosing == binding.frame) {
+            binding.ref.local.captured = true;
+            return layout.addUpvalue(true, binding.ref.local.slot);
+        }
+
+        int index = resolveUpvalue(layout.enclosing, binding);
+        return layout.addUpvalue(false, index);
+    }
 
-        Map<String, Boolean> scope = scopes.peek();
+    private Local declare(Token name) {
+        if (scopes.isEmpty()) return null;
+
+        Map<String, Binding> scope = scopes.peek();
         if (scope.containsKey(name.lexeme)) {
-            Lox.error(name,
+            diagnostics.error(name,
                     "Already a variable with this name in this scope.");
         }
-        scope.put(name.lexeme, false);
+        Local local = new Local(frame.allocate());
+        scope.put(name.lexeme, new Binding(new VarRef(local), frame));
+        return local;
     }
 
     private void define(Token name) {
         if (scopes.isEmpty()) return;
-        scopes.peek().put(name.lexeme, true);
+        scopes.peek().get(name.lexeme).defined = true;
     }
 
     private void beginScope() {
@@ -193,15 +387,80 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     }
 
     private void endScope() {
-        scopes.pop();
+        // Slots of the block's locals can be reused by the next sibling
+        // block; captured ones live on in their upvalue cells.
+        frame.slotCount -= scopes.pop().size();
     }
 
     private void resolve(Expr expr) {
         expr.accept(this);
     }
 
+    private static Token thisToken(Token near) {
+        return new Token(TokenType.THIS, "this", null, near.line);
+    }
+
     private enum FunctionType {
         NONE,
-        FUNCTION
+        FUNCTION,
+        INITIALIZER,
+        METHOD
+    }
+
+    private enum ClassType {
+        NONE,
+        CLASS,
+        SUBCLASS
+    }
+
+    private static class Binding {
+        final VarRef ref;
+        final FrameLayout frame;
+        boolean defined = false;
+
+        Binding(VarRef ref, FrameLayout frame) {
+            this.ref = ref;
+            this.frame = frame;
+        }
+    }
+
+    private static class FrameLayout {
+        final FrameLayout enclosing;
+        int slotCount = 0;
+        int maxSlots = 0;
+        final List<Boolean> upvalueIsLocal = new ArrayList<>();
+        final List<Integer> upvalueIndex = new ArrayList<>();
+
+        FrameLayout(FrameLayout enclosing) {
+            this.enclosing = enclosing;
+        }
+
+        int allocate() {
+            int slot = slotCount++;
+            maxSlots = Math.max(maxSlots, slotCount);
+            return slot;
+        }
+
+        int addUpvalue(boolean isLocal, int index) {
+            for (int i = 0; i < upvalueIndex.size(); i++) {
+                if (upvalueIsLocal.get(i) == isLocal && upvalueIndex.get(i) == index) {
+                    return i;
+                }
+            }
+
+            upvalueIsLocal.add(isLocal);
+            upvalueIndex.add(index);
+            return upvalueIndex.size() - 1;
+        }
+
+        FunctionInfo toFunctionInfo(Local receiver, List<Local> params) {
+            boolean[] isLocal = new boolean[upvalueIndex.size()];
+            int[] index = new int[upvalueIndex.size()];
+            for (int i = 0; i < index.length; i++) {
+                isLocal[i] = upvalueIsLocal.get(i);
+                index[i] = upvalueIndex.get(i);
+            }
+            return new FunctionInfo(maxSlots, receiver, params, isLocal, index);
+        }
     }
 }
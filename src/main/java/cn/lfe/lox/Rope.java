@@ -0,0 +1,117 @@
+package cn.lfe.lox;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A Lox string built by concatenation. Concatenating is O(1): the rope just
+ * remembers both halves, and the characters are copied once, when the
+ * string is first printed, compared or otherwise needs to be flat. Short
+ * results are plain {@link String}s, since copying them is cheaper than
+ * the extra node.
+ *
+ * <p>Lox string values are therefore either a {@code String} or a
+ * {@code Rope}; use {@link #isString} to test for one.
+ */
+final class Rope implements CharSequence {
+    private static final int FLAT_LIMIT = 64;
+
+    private final int length;
+    // Both halves until the rope is flattened, then null so the pieces
+    // can be collected.
+    private CharSequence left;
+    private CharSequence right;
+    private volatile String flat;
+
+    private Rope(CharSequence left, CharSequence right) {
+        this.left = left;
+        this.right = right;
+        this.length = left.length() + right.length();
+    }
+
+    static boolean isString(Object value) {
+        return value instanceof String || value instanceof Rope;
+    }
+
+    // Both arguments must satisfy isString().
+    static Object concat(Object left, Object right) {
+        CharSequence a = (CharSequence) left;
+        CharSequence b = (CharSequence) right;
+        if (a.length() == 0) return b;
+        if (b.length() == 0) return a;
+        if (a.length() + b.length() <= FLAT_LIMIT) {
+            return a.toString().concat(b.toString());
+        }
+        return new Rope(a, b);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return toString().charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        String result = flat;
+        return result != null ? result : flatten();
+    }
+
+    private synchronized String flatten() {
+        if (flat != null) return flat;
+
+        // Fill from the end, right halves first, with an explicit stack so
+        // ropes built by long loops don't overflow the Java stack.
+        char[] chars = new char[length];
+        int position = length;
+        Deque<CharSequence> pending = new ArrayDeque<>();
+        pending.push(this);
+        while (!pending.isEmpty()) {
+            CharSequence piece = pending.pop();
+            if (piece instanceof Rope rope && rope != this && rope.flat == null) {
+                synchronized (rope) {
+                    if (rope.flat == null) {
+                        pending.push(rope.left);
+                        pending.push(rope.right);
+                        continue;
+                    }
+                }
+            }
+            if (piece == this) {
+                pending.push(left);
+                pending.push(right);
+                continue;
+            }
+
+            String text = piece.toString();
+            position -= text.length();
+            text.getChars(0, text.length(), chars, position);
+        }
+
+        flat = new String(chars);
+        left = null;
+        right = null;
+        return flat;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) return true;
+        if (!(other instanceof Rope rope) || rope.length != length) return false;
+        return toString().equals(rope.toString());
+    }
+
+    @Override
+    public int hashCode() {
+        return toString().hashCode();
+    }
+}
@@ -2,11 +2,18 @@ package cn.lfe.lox;
 
 import lombok.Getter;
 
+import java.util.List;
+
 public class RuntimeError extends RuntimeException {
     @Getter
     private final Token token;
+    // The Lox calls the error unwound, innermost first; filled in by the
+    // interpreter that catches it.
+    List<String> trace = List.of();
+
     public RuntimeError(Token token, String message) {
-        super(message);
+        // Script authors get the Lox trace; the Java one is never filled in.
+        super(message, null, false, false);
         this.token = token;
     }
 }
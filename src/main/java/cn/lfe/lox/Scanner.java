@@ -13,6 +13,7 @@ import static cn.lfe.lox.TokenType.*;
  */
 public class Scanner {
     private final String source;
+    private final Diagnostics diagnostics;
     private final List<Token> tokens = new ArrayList<>();
     private int start = 0;
     private int current = 0;
@@ -30,6 +31,7 @@ public class Scanner {
         STRING_TOKEN_TYPE_MAP.put("if",     IF);
         STRING_TOKEN_TYPE_MAP.put("nil",    NIL);
         STRING_TOKEN_TYPE_MAP.put("or",     OR);
+        STRING_TOKEN_TYPE_MAP.put("parallel", PARALLEL);
         STRING_TOKEN_TYPE_MAP.put("print",  PRINT);
         STRING_TOKEN_TYPE_MAP.put("return", RETURN);
         STRING_TOKEN_TYPE_MAP.put("super",  SUPER);
@@ -39,7 +41,12 @@ public class Scanner {
         STRING_TOKEN_TYPE_MAP.put("while",  WHILE);
     }
     public Scanner(String source) {
+        this(source, new Diagnostics());
+    }
+
+    Scanner(String source, Diagnostics diagnostics) {
         this.source = source;
+        this.diagnostics = diagnostics;
     }
 
     public List<Token> scanTokens() {
@@ -60,6 +67,8 @@ public class Scanner {
             case ')': addToken(RIGHT_PAREN); break;
             case '{': addToken(LEFT_BRACE); break;
             case '}': addToken(RIGHT_BRACE); break;
+            case '[': addToken(LEFT_BRACKET); break;
+            case ']': addToken(RIGHT_BRACKET); break;
             case ',': addToken(COMMA); break;
             case '.': addToken(DOT); break;
             case '-': addToken(MINUS); break;
@@ -103,7 +112,7 @@ public class Scanner {
                 } else if (isAlpha(c)) {
                     identifier();
                 } else {
-                    Lox.error(line, "Unexpected character.");
+                    diagnostics.error(line, "Unexpected character.");
                 }
                 break;
         }
@@ -184,7 +193,7 @@ public class Scanner {
         }
 
         if (isAtEnd()) {
-            Lox.error(line, "Unterminated string.");
+            diagnostics.error(line, "Unterminated string.");
             return;
         }
 
@@ -0,0 +1,12 @@
+package cn.lfe.lox;
+
+/**
+ * Unwinds a script that was cancelled from outside, from the next loop
+ * iteration or call it makes. Not a {@link RuntimeError}: it is not the
+ * script's fault and is not reported as one.
+ */
+class ScriptCancelled extends RuntimeException {
+    ScriptCancelled() {
+        super("Script cancelled.", null, false, false);
+    }
+}
@@ -0,0 +1,53 @@
+package cn.lfe.lox;
+
+import java.time.Duration;
+
+/**
+ * How one submission to a {@link ScriptService}, or one script of a batch,
+ * ended, with everything it printed and reported.
+ */
+public final class ScriptResult {
+    public enum Status {
+        OK,
+        COMPILE_ERROR,
+        RUNTIME_ERROR,
+        TIMED_OUT,
+        CANCELLED,
+        BUDGET_EXCEEDED
+    }
+
+    private final Status status;
+    private final String output;
+    private final String errors;
+    private final Duration elapsed;
+
+    ScriptResult(Status status, String output, String errors, Duration elapsed) {
+        this.status = status;
+        this.output = output;
+        this.errors = errors;
+        this.elapsed = elapsed;
+    }
+
+    public Status status() {
+        return status;
+    }
+
+    // What the script printed, one line per print.
+    public String output() {
+        return output;
+    }
+
+    // Compile and runtime errors, formatted like on the command line.
+    public String errors() {
+        return errors;
+    }
+
+    public Duration elapsed() {
+        return elapsed;
+    }
+
+    @Override
+    public String toString() {
+        return status + " in " + elapsed.toMillis() + "ms";
+    }
+}
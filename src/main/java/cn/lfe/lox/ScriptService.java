@@ -0,0 +1,139 @@
+package cn.lfe.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs submitted scripts concurrently, each on its own virtual thread in a
+ * fresh {@link LoxContext}, so tens of thousands of short or sleeping
+ * scripts cost no more than the memory they use. Every submission gets a
+ * timeout after which it is cancelled; a program compiled once can be
+ * submitted any number of times, and submitted sources are compiled once
+ * per distinct source through a {@link ProgramCache}. Each run can also be
+ * held to a {@link Budget}, which stops a runaway script without waiting
+ * for its timeout, and start from a {@link GlobalsSnapshot} of a prelude.
+ */
+public class ScriptService implements AutoCloseable {
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    // One platform thread fires the timeouts of all submissions.
+    private final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, task -> {
+        Thread thread = new Thread(task, "lox-script-timeouts");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Duration defaultTimeout;
+    private final ProgramCache programs;
+    private final Budget budget;
+    // Null if every script starts with just the natives.
+    private final GlobalsSnapshot prelude;
+
+    public ScriptService() {
+        this(Duration.ofSeconds(30));
+    }
+
+    public ScriptService(Duration defaultTimeout) {
+        this(defaultTimeout, new ProgramCache(1024));
+    }
+
+    public ScriptService(Duration defaultTimeout, ProgramCache programs) {
+        this(defaultTimeout, programs, Budget.UNLIMITED);
+    }
+
+    public ScriptService(Duration defaultTimeout, ProgramCache programs, Budget budget) {
+        this(defaultTimeout, programs, budget, null);
+    }
+
+    public ScriptService(Duration defaultTimeout, ProgramCache programs, Budget budget,
+                         GlobalsSnapshot prelude) {
+        this.defaultTimeout = defaultTimeout;
+        this.programs = programs;
+        this.budget = budget;
+        this.prelude = prelude;
+        // Most scripts finish long before their timeout.
+        timer.setRemoveOnCancelPolicy(true);
+    }
+
+    public Submission submit(String source) {
+        return submit(source, defaultTimeout);
+    }
+
+    public Submission submit(String source, Duration timeout) {
+        return start(null, source, timeout);
+    }
+
+    public Submission submit(CompiledProgram program) {
+        return submit(program, defaultTimeout);
+    }
+
+    public Submission submit(CompiledProgram program, Duration timeout) {
+        return start(program, null, timeout);
+    }
+
+    // Stops accepting submissions and cancels the ones still running.
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        timer.shutdownNow();
+    }
+
+    private Submission start(CompiledProgram program, String source, Duration timeout) {
+        Submission submission = new Submission();
+        ScheduledFuture<?> timeoutTask = timer.schedule(
+                submission::timeOut, timeout.toNanos(), TimeUnit.NANOSECONDS);
+        executor.execute(() -> {
+            long start = System.nanoTime();
+            // Created here rather than on submission, so only the scripts
+            // actually running hold an interpreter.
+            StringSink output = new StringSink();
+            ByteArrayOutputStream errors = new ByteArrayOutputStream();
+            Diagnostics diagnostics =
+                    new Diagnostics(new PrintStream(errors, true, StandardCharsets.UTF_8));
+            LoxContext context = prelude != null
+                    ? new LoxContext(output, diagnostics, prelude)
+                    : new LoxContext(output, diagnostics);
+            context.setBudget(budget);
+            submission.started(context, Thread.currentThread());
+            try {
+                ScriptResult.Status status = run(context, program, source);
+                // A script that finished before the cancellation got to it
+                // keeps its own result.
+                if (status != ScriptResult.Status.OK && context.isCancelled()) {
+                    status = submission.isTimedOut()
+                            ? ScriptResult.Status.TIMED_OUT : ScriptResult.Status.CANCELLED;
+                }
+                submission.complete(new ScriptResult(status, output.toString(),
+                        errors.toString(StandardCharsets.UTF_8),
+                        Duration.ofNanos(System.nanoTime() - start)));
+            } catch (Throwable error) {
+                submission.fail(error);
+            } finally {
+                timeoutTask.cancel(false);
+            }
+        });
+        return submission;
+    }
+
+    private ScriptResult.Status run(LoxContext context, CompiledProgram program, String source) {
+        if (context.isCancelled()) {
+            return ScriptResult.Status.CANCELLED;
+        }
+        if (program == null) {
+            program = programs.get(source, context.diagnostics());
+            if (program == null) {
+                return ScriptResult.Status.COMPILE_ERROR;
+            }
+        }
+        if (context.run(program)) {
+            return ScriptResult.Status.OK;
+        }
+        return context.exceededBudget() != null
+                ? ScriptResult.Status.BUDGET_EXCEEDED : ScriptResult.Status.RUNTIME_ERROR;
+    }
+}
@@ -0,0 +1,41 @@
+package cn.lfe.lox;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Hidden class of a {@link LoxInstance}: its class plus the order in which
+ * its fields were added. Instances built the same way share a shape, which
+ * maps each field name to its index in the instance's field array. Shapes
+ * form a tree of transitions rooted at the class, so adding the same field
+ * to two instances of one shape yields the same shape again.
+ */
+final class Shape {
+    final LoxClass klass;
+    final int fieldCount;
+    private final Map<String, Integer> indexes;
+    private final Map<String, Shape> transitions = new HashMap<>();
+
+    Shape(LoxClass klass) {
+        this.klass = klass;
+        this.fieldCount = 0;
+        this.indexes = Map.of();
+    }
+
+    private Shape(Shape parent, String field) {
+        this.klass = parent.klass;
+        this.fieldCount = parent.fieldCount + 1;
+        this.indexes = new HashMap<>(parent.indexes);
+        this.indexes.put(field, parent.fieldCount);
+    }
+
+    // Index of the field in instances of this shape, or -1.
+    int indexOf(String field) {
+        Integer index = indexes.get(field);
+        return index != null ? index : -1;
+    }
+
+    synchronized Shape withField(String field) {
+        return transitions.computeIfAbsent(field, name -> new Shape(this, name));
+    }
+}
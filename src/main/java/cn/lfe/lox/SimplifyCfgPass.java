@@ -0,0 +1,99 @@
+package cn.lfe.lox;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static cn.lfe.lox.Instruction.Op;
+
+/**
+ * Cleans up the control-flow graph: branches on constants become jumps,
+ * blocks that only jump elsewhere are bypassed, unreachable blocks are
+ * dropped and a block is merged into its only predecessor.
+ */
+class SimplifyCfgPass implements IrPass {
+    @Override
+    public String name() {
+        return "simplify-cfg";
+    }
+
+    @Override
+    public void run(IrFunction function) {
+        foldBranches(function);
+        bypassJumps(function);
+        removeUnreachable(function);
+        mergeBlocks(function);
+    }
+
+    private static void foldBranches(IrFunction function) {
+        for (BasicBlock block : function.blocks) {
+            Instruction branch = block.terminator();
+            if (branch.op != Op.BRANCH || !branch.args[0].isConstant()) continue;
+
+            Instruction jump = new Instruction(Op.JUMP, -1, null);
+            jump.target = Interpreter.isTruthy(branch.args[0].value)
+                    ? branch.target : branch.otherwise;
+            block.instructions.set(block.instructions.size() - 1, jump);
+        }
+    }
+
+    private static void bypassJumps(IrFunction function) {
+        BasicBlock entry = function.blocks.get(0);
+        for (BasicBlock block : function.blocks) {
+            Instruction terminator = block.terminator();
+            terminator.target = skipEmpty(terminator.target, entry);
+            terminator.otherwise = skipEmpty(terminator.otherwise, entry);
+        }
+    }
+
+    private static BasicBlock skipEmpty(BasicBlock block, BasicBlock entry) {
+        Set<BasicBlock> seen = new HashSet<>();
+        while (block != null && block != entry && seen.add(block)
+                && block.instructions.size() == 1 && block.terminator().op == Op.JUMP) {
+            block = block.terminator().target;
+        }
+        return block;
+    }
+
+    private static void removeUnreachable(IrFunction function) {
+        Set<BasicBlock> reachable = new HashSet<>();
+        Deque<BasicBlock> work = new ArrayDeque<>();
+        work.push(function.blocks.get(0));
+        while (!work.isEmpty()) {
+            BasicBlock block = work.pop();
+            if (reachable.add(block)) {
+                block.terminator().successors().forEach(work::push);
+            }
+        }
+        function.blocks.retainAll(reachable);
+    }
+
+    private static void mergeBlocks(IrFunction function) {
+        Map<BasicBlock, Integer> predecessors = new HashMap<>();
+        for (BasicBlock block : function.blocks) {
+            for (BasicBlock successor : block.terminator().successors()) {
+                predecessors.merge(successor, 1, Integer::sum);
+            }
+        }
+
+        BasicBlock entry = function.blocks.get(0);
+        for (int i = 0; i < function.blocks.size(); i++) {
+            BasicBlock block = function.blocks.get(i);
+            Instruction jump = block.terminator();
+            while (jump.op == Op.JUMP && jump.target != block && jump.target != entry
+                    && predecessors.get(jump.target) == 1) {
+                BasicBlock next = jump.target;
+                List<Instruction> instructions = block.instructions;
+                instructions.remove(instructions.size() - 1);
+                instructions.addAll(next.instructions);
+                function.blocks.remove(next);
+                if (function.blocks.indexOf(block) < i) i--;
+                jump = block.terminator();
+            }
+        }
+    }
+}
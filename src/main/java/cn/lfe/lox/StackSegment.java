@@ -0,0 +1,86 @@
+package cn.lfe.lox;
+
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * A virtual thread with a stack of its own, which runs the bodies of calls
+ * an {@link Interpreter} makes once its current stack is full, one at a
+ * time while the interpreter's thread waits. Between calls it stays
+ * parked, so code that keeps calling right at the depth where a stack
+ * fills hands each call over instead of starting and joining a thread for
+ * it.
+ *
+ * <p>Only one thread runs the interpreter at a time; the volatile writes
+ * that hand a call over and hand its outcome back carry its state along.
+ */
+final class StackSegment {
+    private final Thread thread;
+    // The call to run next, or null while there is none.
+    private volatile Supplier<Object> body = null;
+    private volatile Thread caller;
+    private volatile boolean done = false;
+    private volatile boolean closed = false;
+    // Written before done, read after it.
+    private Object result;
+    private Throwable error;
+
+    StackSegment() {
+        this.thread = Thread.ofVirtual().name("lox-stack").start(this::serve);
+    }
+
+    // Runs body on this segment's thread and returns what it returned, or
+    // throws what it threw. Interrupts, which wake a sleeping or waiting
+    // script when it is cancelled, are passed on to the running body.
+    Object run(Supplier<Object> body) {
+        caller = Thread.currentThread();
+        done = false;
+        this.body = body;
+        LockSupport.unpark(thread);
+        boolean interrupted = false;
+        while (!done) {
+            LockSupport.park(this);
+            if (Thread.interrupted()) {
+                interrupted = true;
+                thread.interrupt();
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+
+        Object value = result;
+        Throwable thrown = error;
+        result = null;
+        error = null;
+        if (thrown instanceof RuntimeException exception) throw exception;
+        if (thrown instanceof Error fatal) throw fatal;
+        return value;
+    }
+
+    // Lets the thread end once it is idle.
+    void close() {
+        closed = true;
+        LockSupport.unpark(thread);
+    }
+
+    private void serve() {
+        while (!closed) {
+            Supplier<Object> next = body;
+            if (next == null) {
+                LockSupport.park(this);
+                // An interrupt that came after the last call finished is
+                // no business of the next one.
+                Thread.interrupted();
+                continue;
+            }
+            body = null;
+            try {
+                result = next.get();
+            } catch (Throwable thrown) {
+                error = thrown;
+            }
+            Thread.interrupted();
+            done = true;
+            LockSupport.unpark(caller);
+        }
+    }
+}
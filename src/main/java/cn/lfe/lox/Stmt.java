@@ -4,9 +4,11 @@ import java.util.List;
 public abstract class Stmt {
   public interface Visitor<R> {
     R visitBlockStmt(Block stmt);
+    R visitClassStmt(Class stmt);
     R visitExpressionStmt(Expression stmt);
     R visitFunctionStmt(Function stmt);
     R visitIfStmt(If stmt);
+    R visitParallelStmt(Parallel stmt);
     R visitPrintStmt(Print stmt);
     R visitReturnStmt(Return stmt);
     R visitVarStmt(Var stmt);
@@ -26,6 +28,25 @@ public abstract class Stmt {
     public final List<Stmt> statements;
   }
 
+  public static class Class extends Stmt {
+    public Class(Token name, Expr.Variable superclass, List<Stmt.Function> methods) {
+      this.name = name;
+      this.superclass = superclass;
+      this.methods = methods;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitClassStmt(this);
+    }
+
+    public final Token name;
+    public final Expr.Variable superclass;
+    public final List<Stmt.Function> methods;
+    public Local local;
+    public Local superclassLocal;
+  }
+
   public static class Expression extends Stmt {
     public Expression(Expr expression) {
       this.expression = expression;
@@ -54,6 +75,8 @@ public abstract class Stmt {
     public final Token name;
     public final List<Token> params;
     public final List<Stmt> body;
+    public Local local;
+    public FunctionInfo info;
   }
 
   public static class If extends Stmt {
@@ -73,6 +96,21 @@ public abstract class Stmt {
     public final Stmt elseBranch;
   }
 
+  public static class Parallel extends Stmt {
+    public Parallel(Token keyword, Stmt.Block body) {
+      this.keyword = keyword;
+      this.body = body;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitParallelStmt(this);
+    }
+
+    public final Token keyword;
+    public final Stmt.Block body;
+  }
+
   public static class Print extends Stmt {
     public Print(Expr expression) {
       this.expression = expression;
@@ -84,6 +122,7 @@ public abstract class Stmt {
     }
 
     public final Expr expression;
+    public Superinstruction fused;
   }
 
   public static class Return extends Stmt {
@@ -114,6 +153,7 @@ public abstract class Stmt {
 
     public final Token name;
     public final Expr initializer;
+    public Local local;
   }
 
   public static class While extends Stmt {
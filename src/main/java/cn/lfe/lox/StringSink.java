@@ -0,0 +1,33 @@
+package cn.lfe.lox;
+
+/**
+ * Collects printed lines in memory, for scripts whose output is handed
+ * back to a caller instead of written anywhere.
+ */
+class StringSink implements OutputSink {
+    private final StringBuilder text = new StringBuilder();
+
+    @Override
+    public void println(CharSequence line) {
+        text.append(line).append('\n');
+    }
+
+    @Override
+    public void println(double number) {
+        text.append(NumberFormatter.format(number)).append('\n');
+    }
+
+    @Override
+    public void println(long number) {
+        text.append(NumberFormatter.format(number)).append('\n');
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public String toString() {
+        return text.toString();
+    }
+}
@@ -0,0 +1,64 @@
+package cn.lfe.lox;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A script handed to a {@link ScriptService}: its eventual result, and a
+ * way to stop it early.
+ */
+public final class Submission {
+    private final CompletableFuture<ScriptResult> result = new CompletableFuture<>();
+    // The context and virtual thread running the script, once it started.
+    private volatile LoxContext context;
+    private volatile Thread thread;
+    private volatile boolean cancelled = false;
+    private volatile boolean timedOut = false;
+
+    // Completes normally for every way a script can end, including errors,
+    // timeouts and cancellation; exceptionally only if the interpreter
+    // itself failed.
+    public CompletableFuture<ScriptResult> result() {
+        return result;
+    }
+
+    // Stops the script at its next loop iteration or call, or wakes it from
+    // a sleep. Returns false if it had already finished.
+    public boolean cancel() {
+        if (result.isDone()) {
+            return false;
+        }
+        cancelled = true;
+        LoxContext running = context;
+        if (running != null) {
+            running.cancel();
+            thread.interrupt();
+        }
+        return true;
+    }
+
+    boolean isTimedOut() {
+        return timedOut;
+    }
+
+    void timeOut() {
+        timedOut = true;
+        cancel();
+    }
+
+    void started(LoxContext context, Thread thread) {
+        this.thread = thread;
+        this.context = context;
+        // Cancelled before there was anything to cancel.
+        if (cancelled) {
+            context.cancel();
+        }
+    }
+
+    void complete(ScriptResult value) {
+        result.complete(value);
+    }
+
+    void fail(Throwable error) {
+        result.completeExceptionally(error);
+    }
+}
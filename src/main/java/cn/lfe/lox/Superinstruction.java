@@ -0,0 +1,121 @@
+package cn.lfe.lox;
+
+/**
+ * A fused node that runs a whole common statement or expression shape in
+ * one step, reading and writing frame slots directly instead of walking
+ * the visitor through each sub-node. Installed by
+ * {@link SuperinstructionPass}; whenever operands are not numbers the node
+ * falls back to the generic operator semantics on the values it already
+ * evaluated, so behavior (including errors) is unchanged.
+ */
+abstract class Superinstruction {
+    enum Kind {
+        // i = i + 1, i = i - 1
+        INCREMENT,
+        // x = x + expr
+        ACCUMULATE,
+        // i < n, i < 10
+        COMPARE,
+        // print x
+        PRINT
+    }
+
+    abstract Object execute(Interpreter interpreter);
+
+    static final class Increment extends Superinstruction {
+        private final int slot;
+        private final Token operator;
+        private final Object constant;
+        private final boolean add;
+
+        Increment(int slot, Token operator, Object constant) {
+            this.slot = slot;
+            this.operator = operator;
+            this.constant = constant;
+            this.add = operator.type == TokenType.PLUS;
+        }
+
+        @Override
+        Object execute(Interpreter interpreter) {
+            Object[] slots = interpreter.frame();
+            Object value = slots[slot];
+            Object result;
+            if (Numbers.isNumber(value)) {
+                result = add ? Numbers.add(value, constant) : Numbers.subtract(value, constant);
+            } else {
+                result = Interpreter.binary(operator, value, constant);
+            }
+            slots[slot] = result;
+            return result;
+        }
+    }
+
+    static final class Accumulate extends Superinstruction {
+        private final int slot;
+        private final Token operator;
+        private final Expr operand;
+
+        Accumulate(int slot, Token operator, Expr operand) {
+            this.slot = slot;
+            this.operator = operator;
+            this.operand = operand;
+        }
+
+        @Override
+        Object execute(Interpreter interpreter) {
+            Object[] slots = interpreter.frame();
+            Object value = slots[slot];
+            Object right = interpreter.evaluate(operand);
+            Object result = Numbers.isNumber(value) && Numbers.isNumber(right)
+                    ? Numbers.add(value, right)
+                    : Interpreter.binary(operator, value, right);
+            slots[slot] = result;
+            return result;
+        }
+    }
+
+    static final class Compare extends Superinstruction {
+        private final int slot;
+        private final Token operator;
+        // Either another slot, or a constant when rightSlot is negative.
+        private final int rightSlot;
+        private final Object constant;
+
+        Compare(int slot, Token operator, int rightSlot, Object constant) {
+            this.slot = slot;
+            this.operator = operator;
+            this.rightSlot = rightSlot;
+            this.constant = constant;
+        }
+
+        @Override
+        Object execute(Interpreter interpreter) {
+            Object[] slots = interpreter.frame();
+            Object left = slots[slot];
+            Object right = rightSlot >= 0 ? slots[rightSlot] : constant;
+            if (Numbers.isNumber(left) && Numbers.isNumber(right)) {
+                switch (operator.type) {
+                    case LESS -> { return Numbers.less(left, right); }
+                    case LESS_EQUAL -> { return Numbers.lessEqual(left, right); }
+                    case GREATER -> { return Numbers.greater(left, right); }
+                    case GREATER_EQUAL -> { return Numbers.greaterEqual(left, right); }
+                }
+            }
+            return Interpreter.binary(operator, left, right);
+        }
+    }
+
+    static final class Print extends Superinstruction {
+        private final int slot;
+
+        Print(int slot) {
+            this.slot = slot;
+        }
+
+        // Returns the value to print; the caller does the printing.
+        @Override
+        Object execute(Interpreter interpreter) {
+            return interpreter.frame()[slot];
+        }
+    }
+}
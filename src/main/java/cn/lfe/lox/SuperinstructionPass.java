@@ -0,0 +1,228 @@
+package cn.lfe.lox;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Finds the statement and expression shapes that dominate our profiles and
+ * attaches a fused {@link Superinstruction} to their root node. Only
+ * uncaptured locals qualify, since those live directly in a frame slot.
+ * Each {@link Superinstruction.Kind} can be switched off to measure it.
+ */
+class SuperinstructionPass implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    private final Set<Superinstruction.Kind> enabled;
+
+    SuperinstructionPass(Set<Superinstruction.Kind> enabled) {
+        this.enabled = enabled;
+    }
+
+    void fuse(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            statement.accept(this);
+        }
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        fuse(stmt.statements);
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        stmt.expression.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+        for (Stmt.Function method : stmt.methods) {
+            fuse(method.body);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        fuse(stmt.body);
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        stmt.condition.accept(this);
+        stmt.thenBranch.accept(this);
+        if (stmt.elseBranch != null) stmt.elseBranch.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        Local local = slotOf(stmt.expression);
+        if (local != null && enabled.contains(Superinstruction.Kind.PRINT)) {
+            stmt.fused = new Superinstruction.Print(local.slot);
+            return null;
+        }
+        stmt.expression.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.value != null) stmt.value.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        if (stmt.initializer != null) stmt.initializer.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitParallelStmt(Stmt.Parallel stmt) {
+        stmt.body.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        stmt.condition.accept(this);
+        stmt.body.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        Local target = expr.ref != null && expr.ref.local != null && !expr.ref.local.captured
+                ? expr.ref.local : null;
+        if (target != null && expr.value instanceof Expr.Binary binary
+                && slotOf(binary.left) == target) {
+            TokenType operator = binary.operator.type;
+            if ((operator == TokenType.PLUS || operator == TokenType.MINUS)
+                    && binary.right instanceof Expr.Literal literal
+                    && Numbers.isNumber(literal.value)
+                    && enabled.contains(Superinstruction.Kind.INCREMENT)) {
+                expr.fused = new Superinstruction.Increment(target.slot, binary.operator, literal.value);
+                return null;
+            }
+            if (operator == TokenType.PLUS && enabled.contains(Superinstruction.Kind.ACCUMULATE)) {
+                expr.fused = new Superinstruction.Accumulate(target.slot, binary.operator, binary.right);
+                binary.right.accept(this);
+                return null;
+            }
+        }
+        expr.value.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        Local left = slotOf(expr.left);
+        if (left != null && isOrdering(expr.operator.type)
+                && enabled.contains(Superinstruction.Kind.COMPARE)) {
+            Local right = slotOf(expr.right);
+            if (right != null) {
+                expr.fused = new Superinstruction.Compare(left.slot, expr.operator, right.slot, null);
+                return null;
+            }
+            if (expr.right instanceof Expr.Literal literal) {
+                expr.fused = new Superinstruction.Compare(left.slot, expr.operator, -1, literal.value);
+                return null;
+            }
+        }
+        expr.left.accept(this);
+        expr.right.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        expr.callee.accept(this);
+        for (Expr argument : expr.arguments) {
+            argument.accept(this);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitGetExpr(Expr.Get expr) {
+        expr.object.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        expr.expression.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitIndexExpr(Expr.Index expr) {
+        expr.object.accept(this);
+        expr.index.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        expr.left.accept(this);
+        expr.right.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitSetExpr(Expr.Set expr) {
+        expr.object.accept(this);
+        expr.value.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitSuperExpr(Expr.Super expr) {
+        return null;
+    }
+
+    @Override
+    public Void visitThisExpr(Expr.This expr) {
+        return null;
+    }
+
+    @Override
+    public Void visitSetIndexExpr(Expr.SetIndex expr) {
+        expr.object.accept(this);
+        expr.index.accept(this);
+        expr.value.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        expr.right.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        return null;
+    }
+
+    // The local an expression reads when it is a plain, uncaptured local.
+    private static Local slotOf(Expr expr) {
+        if (expr instanceof Expr.Variable variable && variable.ref != null) {
+            Local local = variable.ref.local;
+            if (local != null && !local.captured) return local;
+        }
+        return null;
+    }
+
+    private static boolean isOrdering(TokenType type) {
+        return type == TokenType.LESS || type == TokenType.LESS_EQUAL
+                || type == TokenType.GREATER || type == TokenType.GREATER_EQUAL;
+    }
+}
@@ -0,0 +1,49 @@
+package cn.lfe.lox;
+
+/**
+ * Native functions for running Lox code on several threads:
+ * <pre>
+ * spawn(fn)              runs fn, which takes no arguments, as a new task
+ * join(task)             waits for task and returns what fn returned
+ * increment(name)        adds one to the global called name, atomically,
+ *                        and returns the new value
+ * </pre>
+ * Tasks belong to the innermost {@code parallel} block running when they
+ * are spawned, or else to the script or task that spawned them, and all
+ * finish before it does. A task gets its own copy of the local
+ * variables fn captured, taken when it is spawned; globals are shared.
+ * Each read or assignment of a global is atomic, but {@code x = x + 1}
+ * is not, which is what increment is for. Lists, maps and instances are
+ * shared too, and are not safe to change from several tasks at once.
+ */
+final class TaskNatives {
+    private TaskNatives() {
+    }
+
+    static void define(Environment globals) {
+        globals.define("spawn", new NativeFunction(1) {
+            @Override
+            public Object call1(Interpreter interpreter, Object function) {
+                return interpreter.spawn(function);
+            }
+        });
+        globals.define("join", new NativeFunction(1) {
+            @Override
+            public Object call1(Interpreter interpreter, Object task) {
+                if (!(task instanceof LoxTask loxTask)) {
+                    throw new NativeError("Can only join tasks.");
+                }
+                return loxTask.join(interpreter);
+            }
+        });
+        globals.define("increment", new NativeFunction(1) {
+            @Override
+            public Object call1(Interpreter interpreter, Object name) {
+                if (!Rope.isString(name)) {
+                    throw new NativeError("Global name must be a string.");
+                }
+                return interpreter.globals.increment(name.toString());
+            }
+        });
+    }
+}
@@ -0,0 +1,71 @@
+package cn.lfe.lox;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The tasks spawned inside one {@code parallel} block, or by one run or
+ * task outside any block, which all finish before the code that spawned
+ * them goes on. The first task to fail cancels the others, and its error
+ * is what the block throws once they have all stopped.
+ */
+final class TaskScope {
+    final TaskScope enclosing;
+    // The tasks still running. Only the thread that owns the scope adds to
+    // it, and each task takes itself out when it ends, so a long run that
+    // keeps spawning and joining holds on to none of the finished ones;
+    // cancel() may walk it from any thread.
+    private final Set<LoxTask> tasks = ConcurrentHashMap.newKeySet();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private volatile boolean cancelled = false;
+
+    TaskScope(TaskScope enclosing) {
+        this.enclosing = enclosing;
+    }
+
+    void fork(LoxTask task) {
+        tasks.add(task);
+        if (cancelled) task.cancel();
+    }
+
+    // Called by a task that ended with an error, before finished().
+    void failed(Throwable error) {
+        if (failure.compareAndSet(null, error)) {
+            cancel();
+        }
+    }
+
+    // Called by a task once it has stopped running Lox code, however it
+    // ended.
+    void finished(LoxTask task) {
+        tasks.remove(task);
+    }
+
+    int size() {
+        return tasks.size();
+    }
+
+    void cancel() {
+        cancelled = true;
+        for (LoxTask task : tasks) {
+            task.cancel();
+        }
+    }
+
+    // Waits for every task, however it ends.
+    void await() {
+        for (LoxTask task : tasks) {
+            task.await();
+        }
+    }
+
+    // Waits for every task, then throws the error of the first one that
+    // failed.
+    void join() {
+        await();
+        Throwable error = failure.get();
+        if (error instanceof RuntimeException exception) throw exception;
+        if (error instanceof Error fatal) throw fatal;
+    }
+}
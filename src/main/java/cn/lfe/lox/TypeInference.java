@@ -0,0 +1,304 @@
+package cn.lfe.lox;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Flow-sensitive type inference over the locals laid out by the
+ * {@link Resolver}. It tracks one {@link ValueType} per frame slot through
+ * branches and loops (to a fixpoint), and narrows a local to a number once
+ * an operator that only accepts numbers has succeeded on it. Binary and
+ * unary operators whose operands are proven get annotated so the
+ * {@link Interpreter} can skip its runtime checks for them.
+ *
+ * <p>Globals, upvalues and captured locals may change behind our back and
+ * are always {@code ANY}.
+ */
+class TypeInference implements Expr.Visitor<ValueType>, Stmt.Visitor<Void> {
+    // Types of the current frame's slots, or null where control can't reach.
+    private ValueType[] slots;
+    // Bumped on every local assignment, to tell whether evaluating one
+    // operand may have changed the variable read by the other.
+    private int assignments = 0;
+
+    void infer(List<Stmt> statements) {
+        infer(statements, unknownSlots(Resolver.scriptSlots(statements)));
+    }
+
+    private void infer(List<Stmt> statements, ValueType[] frame) {
+        slots = frame;
+        for (Stmt statement : statements) {
+            if (slots == null) return;
+            statement.accept(this);
+        }
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        for (Stmt statement : stmt.statements) {
+            if (slots == null) return null;
+            statement.accept(this);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+        if (stmt.superclass != null) {
+            stmt.superclass.accept(this);
+        }
+        set(stmt.local, ValueType.ANY);
+        set(stmt.superclassLocal, ValueType.ANY);
+        for (Stmt.Function method : stmt.methods) {
+            ValueType[] enclosing = slots;
+            if (method.info != null) {
+                infer(method.body, unknownSlots(method.info.slotCount));
+            }
+            slots = enclosing;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        stmt.expression.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        ValueType[] enclosing = slots;
+        FunctionInfo info = stmt.info;
+        if (info != null) {
+            infer(stmt.body, unknownSlots(info.slotCount));
+        }
+        slots = enclosing;
+        set(stmt.local, ValueType.ANY);
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        stmt.condition.accept(this);
+        ValueType[] beforeBranches = slots;
+
+        slots = beforeBranches.clone();
+        stmt.thenBranch.accept(this);
+        ValueType[] afterThen = slots;
+
+        slots = beforeBranches.clone();
+        if (stmt.elseBranch != null) {
+            stmt.elseBranch.accept(this);
+        }
+        slots = join(afterThen, slots);
+        return null;
+    }
+
+    @Override
+    public Void visitParallelStmt(Stmt.Parallel stmt) {
+        stmt.body.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        stmt.expression.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.value != null) {
+            stmt.value.accept(this);
+        }
+        slots = null;
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        ValueType type = stmt.initializer != null
+                ? stmt.initializer.accept(this) : ValueType.NIL;
+        set(stmt.local, type);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        while (true) {
+            ValueType[] head = slots.clone();
+            stmt.condition.accept(this);
+            ValueType[] exit = slots.clone();
+
+            stmt.body.accept(this);
+            ValueType[] merged = join(head, slots);
+            if (Arrays.equals(merged, head)) {
+                slots = exit;
+                return null;
+            }
+            slots = merged;
+        }
+    }
+
+    @Override
+    public ValueType visitAssignExpr(Expr.Assign expr) {
+        ValueType type = expr.value.accept(this);
+        if (expr.ref != null) {
+            set(expr.ref.local, type);
+        }
+        return type;
+    }
+
+    @Override
+    public ValueType visitBinaryExpr(Expr.Binary expr) {
+        ValueType left = expr.left.accept(this);
+        int assignmentsBeforeRight = assignments;
+        ValueType right = expr.right.accept(this);
+        expr.operands = left.join(right).join(expr.operands);
+
+        switch (expr.operator.type) {
+            case PLUS -> {
+                return left == right && (left == ValueType.NUMBER || left == ValueType.STRING)
+                        ? left : ValueType.ANY;
+            }
+            case BANG_EQUAL -> {
+                return ValueType.BOOLEAN;
+            }
+            default -> {
+                // Everything else checks that both operands are numbers.
+                if (assignments == assignmentsBeforeRight) {
+                    narrowToNumber(expr.left);
+                }
+                narrowToNumber(expr.right);
+                return isComparison(expr.operator.type) ? ValueType.BOOLEAN : ValueType.NUMBER;
+            }
+        }
+    }
+
+    @Override
+    public ValueType visitCallExpr(Expr.Call expr) {
+        expr.callee.accept(this);
+        for (Expr argument : expr.arguments) {
+            argument.accept(this);
+        }
+        return ValueType.ANY;
+    }
+
+    @Override
+    public ValueType visitGetExpr(Expr.Get expr) {
+        expr.object.accept(this);
+        return ValueType.ANY;
+    }
+
+    @Override
+    public ValueType visitGroupingExpr(Expr.Grouping expr) {
+        return expr.expression.accept(this);
+    }
+
+    @Override
+    public ValueType visitIndexExpr(Expr.Index expr) {
+        expr.object.accept(this);
+        expr.index.accept(this);
+        return ValueType.ANY;
+    }
+
+    @Override
+    public ValueType visitLiteralExpr(Expr.Literal expr) {
+        return ValueType.of(expr.value);
+    }
+
+    @Override
+    public ValueType visitLogicalExpr(Expr.Logical expr) {
+        ValueType left = expr.left.accept(this);
+        ValueType[] skipRight = slots.clone();
+        ValueType right = expr.right.accept(this);
+        slots = join(skipRight, slots);
+        return left.join(right);
+    }
+
+    @Override
+    public ValueType visitSetExpr(Expr.Set expr) {
+        expr.object.accept(this);
+        return expr.value.accept(this);
+    }
+
+    @Override
+    public ValueType visitSuperExpr(Expr.Super expr) {
+        return ValueType.ANY;
+    }
+
+    @Override
+    public ValueType visitThisExpr(Expr.This expr) {
+        return ValueType.ANY;
+    }
+
+    @Override
+    public ValueType visitSetIndexExpr(Expr.SetIndex expr) {
+        expr.object.accept(this);
+        expr.index.accept(this);
+        return expr.value.accept(this);
+    }
+
+    @Override
+    public ValueType visitUnaryExpr(Expr.Unary expr) {
+        ValueType operand = expr.right.accept(this);
+        expr.operand = operand.join(expr.operand);
+        if (expr.operator.type == TokenType.BANG) {
+            return ValueType.BOOLEAN;
+        }
+
+        narrowToNumber(expr.right);
+        return ValueType.NUMBER;
+    }
+
+    @Override
+    public ValueType visitVariableExpr(Expr.Variable expr) {
+        Local local = expr.ref != null ? expr.ref.local : null;
+        if (local == null || local.captured) {
+            return ValueType.ANY;
+        }
+        return slots[local.slot];
+    }
+
+    private void narrowToNumber(Expr operand) {
+        while (operand instanceof Expr.Grouping grouping) {
+            operand = grouping.expression;
+        }
+        if (operand instanceof Expr.Variable variable && variable.ref != null) {
+            Local local = variable.ref.local;
+            if (local != null && !local.captured) {
+                slots[local.slot] = ValueType.NUMBER;
+            }
+        }
+    }
+
+    private void set(Local local, ValueType type) {
+        if (local == null) return;
+        slots[local.slot] = local.captured ? ValueType.ANY : type;
+        assignments++;
+    }
+
+    private static boolean isComparison(TokenType type) {
+        return switch (type) {
+            case GREATER, GREATER_EQUAL, LESS, LESS_EQUAL, EQUAL_EQUAL -> true;
+            default -> false;
+        };
+    }
+
+    private static ValueType[] join(ValueType[] a, ValueType[] b) {
+        if (a == null) return b;
+        if (b == null) return a;
+
+        ValueType[] joined = new ValueType[a.length];
+        for (int i = 0; i < a.length; i++) {
+            joined[i] = a[i].join(b[i]);
+        }
+        return joined;
+    }
+
+    private static ValueType[] unknownSlots(int count) {
+        ValueType[] slots = new ValueType[count];
+        Arrays.fill(slots, ValueType.ANY);
+        return slots;
+    }
+}
@@ -0,0 +1,48 @@
+package cn.lfe.lox;
+
+/**
+ * Self-specializing execution of an {@link Expr.Unary} site, see
+ * {@link BinaryNode}.
+ */
+enum UnaryNode {
+    UNINITIALIZED {
+        @Override
+        Object execute(Expr.Unary expr, Object right) {
+            UnaryNode node = GENERIC;
+            if (expr.operator.type == TokenType.MINUS && Numbers.isNumber(right)) {
+                node = NUMBER_NEGATE;
+            } else if (expr.operator.type == TokenType.BANG && right instanceof Boolean) {
+                node = BOOLEAN_NOT;
+            }
+            expr.node = node;
+            return node.execute(expr, right);
+        }
+    },
+    NUMBER_NEGATE {
+        @Override
+        Object execute(Expr.Unary expr, Object right) {
+            if (Numbers.isNumber(right)) return Numbers.negate(right);
+            return deoptimize(expr, right);
+        }
+    },
+    BOOLEAN_NOT {
+        @Override
+        Object execute(Expr.Unary expr, Object right) {
+            if (right instanceof Boolean value) return !value;
+            return deoptimize(expr, right);
+        }
+    },
+    GENERIC {
+        @Override
+        Object execute(Expr.Unary expr, Object right) {
+            return Interpreter.unary(expr.operator, right);
+        }
+    };
+
+    abstract Object execute(Expr.Unary expr, Object right);
+
+    private static Object deoptimize(Expr.Unary expr, Object right) {
+        expr.node = GENERIC;
+        return GENERIC.execute(expr, right);
+    }
+}
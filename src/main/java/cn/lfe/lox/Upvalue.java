@@ -0,0 +1,13 @@
+package cn.lfe.lox;
+
+/**
+ * Shared cell holding a captured local. The declaring frame and every
+ * closure that captured the variable point to the same cell.
+ */
+class Upvalue {
+    Object value;
+
+    Upvalue(Object value) {
+        this.value = value;
+    }
+}
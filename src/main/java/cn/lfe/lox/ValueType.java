@@ -0,0 +1,22 @@
+package cn.lfe.lox;
+
+/**
+ * What {@link TypeInference} can prove about a value. {@code ANY} means
+ * nothing is known; the other constants are exact.
+ */
+enum ValueType {
+    NIL, BOOLEAN, NUMBER, STRING, ANY;
+
+    static ValueType of(Object value) {
+        if (value == null) return NIL;
+        if (value instanceof Boolean) return BOOLEAN;
+        if (Numbers.isNumber(value)) return NUMBER;
+        if (Rope.isString(value)) return STRING;
+        return ANY;
+    }
+
+    ValueType join(ValueType other) {
+        if (other == null || other == this) return this;
+        return ANY;
+    }
+}
@@ -0,0 +1,21 @@
+package cn.lfe.lox;
+
+/**
+ * Where a resolved variable reference finds its value at runtime: either a
+ * {@link Local} of the current frame, or an entry of the current closure's
+ * upvalues. Unresolved references (no {@code VarRef}) are globals.
+ */
+class VarRef {
+    final Local local;
+    final int upvalue;
+
+    VarRef(Local local) {
+        this.local = local;
+        this.upvalue = -1;
+    }
+
+    VarRef(int upvalue) {
+        this.local = null;
+        this.upvalue = upvalue;
+    }
+}
@@ -0,0 +1,88 @@
+package cn.lfe.tool;
+
+import cn.lfe.lox.Budget;
+import cn.lfe.lox.CompiledProgram;
+import cn.lfe.lox.LoxContext;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Measures what execution budgets cost: runs call-heavy, loop-heavy and
+ * allocation-heavy scripts with no budget and with all four limits set
+ * high enough never to be reached, alternating between the two, and
+ * reports the average time of each after warm-up.
+ */
+public class BudgetBenchmark {
+    private static final Map<String, String> SCRIPTS = Map.of(
+            "calls", """
+                    fun fib(n) { if (n < 2) return n; return fib(n - 1) + fib(n - 2); }
+                    print fib(30);
+                    """,
+            "loops", """
+                    var total = 0;
+                    var i = 0;
+                    while (i < 5000000) {
+                      total = total + i;
+                      i = i + 1;
+                    }
+                    print total;
+                    """,
+            "allocations", """
+                    class Point {
+                      init(x, y) { this.x = x; this.y = y; }
+                    }
+                    var sum = 0;
+                    for (var i = 0; i < 500000; i = i + 1) {
+                      var p = Point(i, i);
+                      var l = list();
+                      push(l, p.x);
+                      sum = sum + l[0];
+                    }
+                    print sum;
+                    """);
+
+    private static final Budget ALL_LIMITS = Budget.UNLIMITED
+            .withInstructions(Long.MAX_VALUE / 2)
+            .withWallTime(Duration.ofHours(1))
+            .withCallDepth(1_000)
+            .withAllocations(Long.MAX_VALUE / 2);
+
+    public static void main(String[] args) {
+        if (args.length > 1) {
+            System.err.println("Usage: budget_benchmark [runs]");
+            System.exit(64);
+        }
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int warmUp = 3;
+
+        for (String name : new String[] {"calls", "loops", "allocations"}) {
+            CompiledProgram program = CompiledProgram.compile(SCRIPTS.get(name));
+            long unlimited = 0;
+            long limited = 0;
+            for (int run = 0; run < warmUp + runs; run++) {
+                long off = time(program, Budget.UNLIMITED);
+                long on = time(program, ALL_LIMITS);
+                if (run >= warmUp) {
+                    unlimited += off;
+                    limited += on;
+                }
+            }
+            System.out.printf("%-12s no budget %7.1fms, all limits %7.1fms (%+.1f%%)%n", name,
+                    unlimited / 1e6 / runs, limited / 1e6 / runs,
+                    100.0 * (limited - unlimited) / unlimited);
+        }
+    }
+
+    private static long time(CompiledProgram program, Budget budget) {
+        LoxContext context = new LoxContext(new PrintStream(OutputStream.nullOutputStream()), System.err);
+        context.setBudget(budget);
+        long start = System.nanoTime();
+        if (!context.run(program)) {
+            System.exit(70);
+        }
+        return System.nanoTime() - start;
+    }
+}
@@ -15,25 +15,38 @@ public class GenerateAst {
         String outputDir = args[0];
 
         defineAst(outputDir, "Expr", Arrays.asList(
-                "Assign   : Token name, Expr value",
-                "Binary   : Expr left, Token operator, Expr right",
+                "Assign   : Token name, Expr value | VarRef ref, int global = -1, Superinstruction fused",
+                "Binary   : Expr left, Token operator, Expr right" +
+                        " | ValueType operands, BinaryNode node = BinaryNode.UNINITIALIZED," +
+                        " Superinstruction fused",
                 "Call     : Expr callee, Token paren, List<Expr> arguments",
+                "Get      : Expr object, Token name | InlineCache cache",
                 "Grouping : Expr expression",
+                "Index    : Expr object, Token bracket, Expr index",
                 "Literal  : Object value",
-                "Logical  : Expr left, Token operator, Expr right",
-                "Unary    : Token operator, Expr right",
-                "Variable : Token name"
+                "Logical  : Expr left, Token operator, Expr right" +
+                        " | LogicalNode node = LogicalNode.UNINITIALIZED",
+                "Set      : Expr object, Token name, Expr value | InlineCache cache",
+                "SetIndex : Expr object, Token bracket, Expr index, Expr value",
+                "Super    : Token keyword, Token method | VarRef ref, VarRef receiver",
+                "This     : Token keyword | VarRef ref",
+                "Unary    : Token operator, Expr right" +
+                        " | ValueType operand, UnaryNode node = UnaryNode.UNINITIALIZED",
+                "Variable : Token name | VarRef ref, int global = -1"
         ));
 
         defineAst(outputDir, "Stmt", Arrays.asList(
                 "Block      : List<Stmt> statements",
+                "Class      : Token name, Expr.Variable superclass," +
+                        " List<Stmt.Function> methods | Local local, Local superclassLocal",
                 "Expression : Expr expression",
                 "Function   : Token name, List<Token> params," +
-                        " List<Stmt> body",
+                        " List<Stmt> body | Local local, FunctionInfo info",
                 "If         : Expr condition, Stmt thenBranch, Stmt elseBranch",
-                "Print      : Expr expression",
+                "Parallel   : Token keyword, Stmt.Block body",
+                "Print      : Expr expression | Superinstruction fused",
                 "Return     : Token keyword, Expr value",
-                "Var        : Token name, Expr initializer",
+                "Var        : Token name, Expr initializer | Local local",
                 "While      : Expr condition, Stmt body"
         ));
     }
@@ -50,8 +63,9 @@ public class GenerateAst {
         defineVisitor(writer, baseName, types);
         for (String type : types) {
             String className = type.split(":")[0].trim();
-            String fields = type.split(":")[1].trim();
-            defineType(writer, baseName, className, fields);
+            String[] fields = type.split(":")[1].split("\\|");
+            String annotations = fields.length > 1 ? fields[1].trim() : null;
+            defineType(writer, baseName, className, fields[0].trim(), annotations);
         }
 
         // The base accept() method.
@@ -77,7 +91,7 @@ public class GenerateAst {
 
     private static void defineType(
             PrintWriter writer, String baseName,
-            String className, String fieldList) {
+            String className, String fieldList, String annotationList) {
         writer.println();
         writer.println("  public static class " + className + " extends " +
                 baseName + " {");
@@ -107,6 +121,14 @@ public class GenerateAst {
             writer.println("    public final " + field + ";");
         }
 
+        // Annotations filled in by later passes (e.g. the Resolver) or by the
+        // interpreter while it runs; they may carry an initializer.
+        if (annotationList != null) {
+            for (String annotation : annotationList.split(", ")) {
+                writer.println("    public " + annotation + ";");
+            }
+        }
+
         writer.println("  }");
     }
 }
@@ -0,0 +1,87 @@
+package cn.lfe.tool;
+
+import cn.lfe.lox.CompiledProgram;
+import cn.lfe.lox.LoxContext;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Benchmark for Lox maps: fills a map with number keys from a Lox loop,
+ * reads every key back and walks the keys, next to an empty loop of the
+ * same length, and then has {@link HashMap} do the same from Java.
+ */
+public class MapBenchmark {
+    // Prints the seconds each phase took, then the size, which only comes
+    // out right if every key was read back.
+    private static final String SCRIPT = """
+            var n = %d;
+            var start = clock();
+            for (var i = 0; i < n; i = i + 1) {}
+            print clock() - start;
+
+            var m = map();
+            start = clock();
+            for (var i = 0; i < n; i = i + 1) m[i] = i;
+            print clock() - start;
+
+            var sum = 0;
+            start = clock();
+            for (var i = 0; i < n; i = i + 1) sum = sum + m[i];
+            print clock() - start;
+
+            start = clock();
+            var ks = keys(m);
+            for (var i = 0; i < length(ks); i = i + 1) sum = sum - ks[i];
+            print clock() - start;
+            print sum + size(m);
+            """;
+    private static final List<String> PHASES = List.of("empty loop", "put", "get", "keys");
+
+    public static void main(String[] args) {
+        if (args.length > 1) {
+            System.err.println("Usage: map_benchmark [entries]");
+            System.exit(64);
+        }
+        int entries = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+
+        // Warm up the interpreter before measuring.
+        run(100_000);
+        List<String> lines = run(entries);
+        System.out.printf("Lox map, %d number keys:%n", entries);
+        for (int i = 0; i < PHASES.size(); i++) {
+            System.out.printf("  %-10s %.3f%n", PHASES.get(i), Double.parseDouble(lines.get(i)));
+        }
+        System.out.printf("  %-10s %s%n", "size", lines.get(PHASES.size()));
+
+        System.out.printf("java.util.HashMap<Double, Object>, %d keys:%n", entries);
+        long start = System.nanoTime();
+        Map<Double, Object> map = new HashMap<>();
+        for (int i = 0; i < entries; i++) {
+            map.put((double) i, (double) i);
+        }
+        System.out.printf("  %-10s %.3f%n", "put", (System.nanoTime() - start) / 1e9);
+        start = System.nanoTime();
+        double sum = 0;
+        for (int i = 0; i < entries; i++) {
+            sum += (Double) map.get((double) i);
+        }
+        System.out.printf("  %-10s %.3f%n", "get", (System.nanoTime() - start) / 1e9);
+        System.out.printf("  %-10s %d (sum %.0f)%n", "size", map.size(), sum);
+    }
+
+    private static List<String> run(int entries) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        LoxContext context = new LoxContext(new PrintStream(output, true, StandardCharsets.UTF_8),
+                System.err);
+        CompiledProgram program = context.compile(SCRIPT.formatted(entries));
+        if (!context.run(program)) {
+            System.exit(70);
+        }
+        return output.toString(StandardCharsets.UTF_8).lines().toList();
+    }
+}
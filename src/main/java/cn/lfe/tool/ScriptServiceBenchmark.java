@@ -0,0 +1,69 @@
+package cn.lfe.tool;
+
+import cn.lfe.lox.CompiledProgram;
+import cn.lfe.lox.LoxContext;
+import cn.lfe.lox.ScriptResult;
+import cn.lfe.lox.ScriptService;
+import cn.lfe.lox.Submission;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Load generator for {@link ScriptService}: submits a burst of short
+ * scripts that compute a little and sleep a little, all at once, and
+ * reports throughput, latency and how the submissions ended.
+ */
+public class ScriptServiceBenchmark {
+    private static final String SCRIPT = """
+            var total = 0;
+            for (var i = 0; i < 200; i = i + 1) {
+              total = total + i;
+            }
+            sleep(%d);
+            print total;
+            """;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 2) {
+            System.err.println("Usage: script_service_benchmark [submissions] [sleep millis]");
+            System.exit(64);
+        }
+        int submissions = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int sleepMillis = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        CompiledProgram program = new LoxContext().compile(SCRIPT.formatted(sleepMillis));
+        try (ScriptService service = new ScriptService(Duration.ofMinutes(1))) {
+            // Warm up the interpreter before measuring.
+            run(service, program, Math.min(submissions, 2_000));
+            run(service, program, submissions);
+        }
+    }
+
+    private static void run(ScriptService service, CompiledProgram program, int count)
+            throws Exception {
+        long start = System.nanoTime();
+        List<Submission> pending = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            pending.add(service.submit(program));
+        }
+
+        long[] latencies = new long[count];
+        Map<ScriptResult.Status, Integer> statuses = new EnumMap<>(ScriptResult.Status.class);
+        for (int i = 0; i < count; i++) {
+            ScriptResult result = pending.get(i).result().get();
+            latencies[i] = result.elapsed().toNanos();
+            statuses.merge(result.status(), 1, Integer::sum);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        Arrays.sort(latencies);
+        System.out.printf("%d scripts in %.2fs: %.0f scripts/s, run time p50 %.1fms p99 %.1fms, %s%n",
+                count, seconds, count / seconds,
+                latencies[count / 2] / 1e6, latencies[count * 99 / 100] / 1e6, statuses);
+    }
+}
@@ -0,0 +1,94 @@
+package cn.lfe.lox;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for BatchRunner class
+ */
+public class BatchRunnerTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    @DisplayName("Should find scripts by directory or glob")
+    void testScripts() throws IOException {
+        Path a = write("a.lox", "print 1;");
+        Path b = write("sub/b.lox", "print 2;");
+        write("notes.txt", "not a script");
+
+        assertEquals(List.of(a, b), BatchRunner.scripts(dir.toString()));
+        assertEquals(List.of(b), BatchRunner.scripts(dir + "/sub/*.lox"));
+        assertEquals(List.of(a, b), BatchRunner.scripts(dir + "/**.lox"));
+    }
+
+    @Test
+    @DisplayName("Should run each script isolated and report how it ended")
+    void testRun() throws IOException {
+        List<Path> scripts = List.of(
+                write("ok.lox", "var shared = 1; print shared;"),
+                // Would see 1 if globals leaked between scripts.
+                write("isolated.lox", "var shared; print shared;"),
+                write("syntax.lox", "print 1 +;"),
+                write("runtime.lox", "print \"before\"; print -nil;"),
+                dir.resolve("missing.lox"));
+
+        List<BatchRunner.Entry> entries =
+                new BatchRunner(2, EnumSet.allOf(Superinstruction.Kind.class), null, false).run(scripts);
+
+        assertEquals(scripts.size(), entries.size());
+        assertEquals("1\n", entries.get(0).result.output());
+        assertEquals("nil\n", entries.get(1).result.output());
+        assertEquals(ScriptResult.Status.COMPILE_ERROR, entries.get(2).result.status());
+        assertEquals(ScriptResult.Status.RUNTIME_ERROR, entries.get(3).result.status());
+        assertEquals("before\n", entries.get(3).result.output());
+        assertEquals(BatchRunner.EXIT_UNREADABLE, entries.get(4).exitStatus);
+        assertEquals(ProgramCache.sha256("1\n"), entries.get(0).outputHash());
+
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        BatchRunner.report(entries, Duration.ofSeconds(1), new PrintStream(report, true, StandardCharsets.UTF_8));
+        String text = report.toString(StandardCharsets.UTF_8);
+        assertTrue(text.contains("    Operand must be a number."));
+        assertTrue(text.endsWith("5 scripts, 2 passed, 3 failed in 1.00s\n"));
+    }
+
+    @Test
+    @DisplayName("Should fail only the script that overflows the stack")
+    void testStackOverflow() throws IOException {
+        List<Path> scripts = List.of(
+                write("recursion.lox", "fun f(n) { return f(n + 1); } f(0);"),
+                // Too deeply nested for the parser.
+                write("nested.lox", "print " + "(".repeat(100_000) + "1" + ")".repeat(100_000) + ";"),
+                write("ok.lox", "print 1;"));
+
+        List<BatchRunner.Entry> entries =
+                new BatchRunner(2, EnumSet.allOf(Superinstruction.Kind.class), null, false).run(scripts);
+
+        assertEquals(ScriptResult.Status.RUNTIME_ERROR, entries.get(0).result.status());
+        assertTrue(entries.get(0).result.errors().startsWith("Stack overflow.\n"));
+        assertEquals(ScriptResult.Status.RUNTIME_ERROR, entries.get(1).result.status());
+        assertEquals("Stack overflow.", entries.get(1).result.errors().trim());
+        assertEquals(BatchRunner.EXIT_ERROR, entries.get(1).exitStatus);
+        assertEquals("1\n", entries.get(2).result.output());
+    }
+
+    private Path write(String name, String source) throws IOException {
+        Path path = dir.resolve(name);
+        Files.createDirectories(path.getParent());
+        return Files.writeString(path, source);
+    }
+}
@@ -0,0 +1,148 @@
+package cn.lfe.lox;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for Budget class
+ */
+public class BudgetTest {
+    private final StringSink output = new StringSink();
+    private final ByteArrayOutputStream errors = new ByteArrayOutputStream();
+    private final Diagnostics diagnostics =
+            new Diagnostics(new PrintStream(errors, true, StandardCharsets.UTF_8));
+    private final LoxContext context = new LoxContext(output, diagnostics);
+
+    private String errors() {
+        return errors.toString(StandardCharsets.UTF_8).trim();
+    }
+
+    @Test
+    @DisplayName("Should count loop iterations and calls as instructions")
+    void testInstructions() {
+        context.setBudget(Budget.UNLIMITED.withInstructions(10));
+        // Ten iterations are all the budget allows.
+        assertTrue(context.run("var i = 0; while (i < 10) i = i + 1; print i;"));
+        assertEquals("10\n", output.toString());
+
+        assertFalse(context.run("var j = 0; while (j < 11) j = j + 1;"));
+        assertEquals(Budget.Kind.INSTRUCTIONS, context.exceededBudget());
+        assertEquals("Instruction budget of 10 exceeded.", errors());
+
+        context.clearErrors();
+        assertFalse(context.run("fun f() {} for (var k = 0; k < 6; k = k + 1) f();"));
+        assertEquals(Budget.Kind.INSTRUCTIONS, context.exceededBudget());
+    }
+
+    @Test
+    @DisplayName("Should stop a runaway loop on either backend")
+    void testRunaway() {
+        for (boolean irBackend : List.of(false, true)) {
+            PassManager passManager = irBackend ? new PassManager(List.of(), null, null) : null;
+            LoxContext context = new LoxContext(output, diagnostics,
+                    EnumSet.allOf(Superinstruction.Kind.class), passManager, irBackend);
+            context.setBudget(Budget.UNLIMITED.withInstructions(1_000_000));
+            assertFalse(context.run("while (true) {}"));
+            assertEquals(Budget.Kind.INSTRUCTIONS, context.exceededBudget());
+            diagnostics.reset();
+        }
+    }
+
+    @Test
+    @DisplayName("Should stop a script that runs or sleeps past its wall time")
+    void testWallTime() {
+        context.setBudget(Budget.UNLIMITED.withWallTime(Duration.ofMillis(50)));
+        long start = System.nanoTime();
+        assertFalse(context.run("while (true) {}"));
+        assertEquals(Budget.Kind.WALL_TIME, context.exceededBudget());
+        assertEquals("Wall time budget of 50ms exceeded.", errors());
+
+        context.clearErrors();
+        assertFalse(context.run("sleep(60000);"));
+        assertEquals(Budget.Kind.WALL_TIME, context.exceededBudget());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+    }
+
+    @Test
+    @DisplayName("Should stop unbounded recursion at the call depth")
+    void testCallDepth() {
+        context.setBudget(Budget.UNLIMITED.withCallDepth(200));
+        assertTrue(context.run("""
+            fun down(n) { if (n > 0) down(n - 1); }
+            down(199);
+            """));
+        assertFalse(context.run("fun forever(n) { forever(n + 1); } forever(0);"));
+        assertEquals(Budget.Kind.CALL_DEPTH, context.exceededBudget());
+        assertEquals("Call depth budget of 200 exceeded.", errors());
+    }
+
+    @Test
+    @DisplayName("Should count instances, lists, maps and closures")
+    void testAllocations() {
+        context.setBudget(Budget.UNLIMITED.withAllocations(4));
+        assertTrue(context.run("""
+            class A {}
+            var a = A();
+            var l = list();
+            var m = map();
+            fun f() {}
+            """));
+        // Every run starts with the whole budget.
+        assertFalse(context.run("""
+            class B {}
+            for (var i = 0; i < 5; i = i + 1) B();
+            """));
+        assertEquals(Budget.Kind.ALLOCATIONS, context.exceededBudget());
+        assertEquals("Allocation budget of 4 exceeded.", errors());
+    }
+
+    @Test
+    @DisplayName("Should share the budget between a script and its tasks")
+    void testTasks() {
+        context.setBudget(Budget.UNLIMITED.withInstructions(100_000));
+        assertFalse(context.run("""
+            fun spin() { while (true) {} }
+            parallel {
+              spawn(spin);
+              spawn(spin);
+            }
+            print "unreachable";
+            """));
+        assertEquals(Budget.Kind.INSTRUCTIONS, context.exceededBudget());
+        assertEquals("", output.toString());
+    }
+
+    @Test
+    @DisplayName("Should report scripts over budget from the script service")
+    void testScriptService() throws Exception {
+        Budget budget = Budget.UNLIMITED.withInstructions(1000);
+        try (ScriptService service = new ScriptService(Duration.ofSeconds(30),
+                new ProgramCache(16), budget)) {
+            ScriptResult result = service.submit("while (true) {}").result().get(10, TimeUnit.SECONDS);
+            assertEquals(ScriptResult.Status.BUDGET_EXCEEDED, result.status());
+            assertEquals("Instruction budget of 1000 exceeded.", result.errors().trim());
+
+            result = service.submit("print 1;").result().get(10, TimeUnit.SECONDS);
+            assertEquals(ScriptResult.Status.OK, result.status());
+        }
+    }
+
+    @Test
+    @DisplayName("Should reject limits that aren't positive")
+    void testInvalid() {
+        assertThrows(IllegalArgumentException.class, () -> Budget.UNLIMITED.withInstructions(0));
+        assertThrows(IllegalArgumentException.class, () -> Budget.UNLIMITED.withWallTime(Duration.ZERO));
+        assertThrows(IllegalArgumentException.class, () -> Budget.UNLIMITED.withCallDepth(0));
+        assertThrows(IllegalArgumentException.class, () -> Budget.UNLIMITED.withAllocations(-1));
+    }
+}
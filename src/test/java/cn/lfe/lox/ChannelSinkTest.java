@@ -0,0 +1,75 @@
+package cn.lfe.lox;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for ChannelSink class
+ */
+public class ChannelSinkTest {
+    private static final String NL = System.lineSeparator();
+
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final ChannelSink sink =
+            new ChannelSink(Channels.newChannel(bytes), StandardCharsets.UTF_8);
+
+    private String written() {
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    @DisplayName("Should hold output until flushed")
+    void testBuffering() {
+        sink.println("hello");
+        sink.println(1.5);
+        sink.println(-0.0);
+        sink.println(-42L);
+        sink.println(12_345_678_901L);
+        assertEquals("", written());
+
+        sink.flush();
+        assertEquals("hello" + NL + "1.5" + NL + "-0" + NL + "-42" + NL + "1.2345678901E10" + NL,
+                written());
+    }
+
+    @Test
+    @DisplayName("Should write lines larger than the buffer and non-ASCII text")
+    void testLargeAndEncodedLines() {
+        String large = "x".repeat(200_000);
+        String accented = "héllo ✓ 𝄞 " + "é".repeat(100_000);
+        sink.println(large);
+        sink.println(accented);
+        for (int i = 0; i < 10_000; i++) {
+            sink.println(i);
+        }
+        sink.flush();
+
+        StringBuilder expected = new StringBuilder()
+                .append(large).append(NL).append(accented).append(NL);
+        for (int i = 0; i < 10_000; i++) {
+            expected.append(i).append(NL);
+        }
+        assertEquals(expected.toString(), written());
+    }
+
+    @Test
+    @DisplayName("Should flush printed values before reporting a runtime error")
+    void testFlushOnRuntimeError() {
+        Interpreter interpreter = new Interpreter(sink);
+        List<Stmt> statements = new Parser(new Scanner(
+                "print \"before\"; print 2 * 3; print 1 + nil; print \"after\";").scanTokens()).parse();
+        new Resolver(interpreter).resolve(statements);
+
+        interpreter.interpret(statements);
+        assertTrue(interpreter.diagnostics.hadRuntimeError());
+
+        assertEquals("before" + NL + "6" + NL, written());
+    }
+}
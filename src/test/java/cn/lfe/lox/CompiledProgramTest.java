@@ -0,0 +1,71 @@
+package cn.lfe.lox;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for CompiledProgram class
+ */
+public class CompiledProgramTest {
+
+    @Test
+    @DisplayName("Should run one program concurrently in many contexts, each with fresh globals")
+    void testConcurrentRuns() throws Exception {
+        CompiledProgram program = CompiledProgram.compile("""
+            var count = 0;
+            fun add(n) { count = count + n; }
+            for (var i = 0; i < 1000; i = i + 1) add(input);
+            print count;
+            """);
+
+        List<Future<String>> runs = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(4)) {
+            for (int i = 0; i < 32; i++) {
+                long input = i;
+                runs.add(executor.submit(() -> {
+                    StringSink output = new StringSink();
+                    LoxContext context = new LoxContext(output, new Diagnostics());
+                    context.define("input", input);
+                    assertTrue(context.run(program));
+                    // A second run starts again from the same globals.
+                    assertTrue(context.run(program));
+                    return output.toString();
+                }));
+            }
+        }
+
+        for (int i = 0; i < runs.size(); i++) {
+            String expected = (i * 1000) + "\n";
+            assertEquals(expected + expected, runs.get(i).get());
+        }
+    }
+
+    @Test
+    @DisplayName("Should reject sources with errors")
+    void testCompileErrors() {
+        IllegalArgumentException syntax = assertThrows(IllegalArgumentException.class,
+                () -> CompiledProgram.compile("print 1 +;"));
+        assertEquals("[line 1] Error at ';': Expect expression.", syntax.getMessage());
+
+        IllegalArgumentException resolution = assertThrows(IllegalArgumentException.class,
+                () -> CompiledProgram.compile("return 1;"));
+        assertTrue(resolution.getMessage().contains("Can't return from top-level code."));
+
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        LoxContext context = new LoxContext(System.out, new PrintStream(errors, true, StandardCharsets.UTF_8));
+        assertNull(context.compile("var a = ;"));
+        assertTrue(context.hadError());
+        assertFalse(errors.toString(StandardCharsets.UTF_8).isEmpty());
+    }
+}
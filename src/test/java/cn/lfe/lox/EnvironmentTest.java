@@ -0,0 +1,127 @@
+package cn.lfe.lox;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static cn.lfe.lox.TokenType.IDENTIFIER;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for Environment class
+ */
+public class EnvironmentTest {
+    private static Token name(String lexeme) {
+        return new Token(IDENTIFIER, lexeme, null, 1);
+    }
+
+    @Test
+    @DisplayName("Should define, read and assign globals, nil included")
+    void testBindings() {
+        Environment globals = new Environment();
+        globals.define("a", 1L);
+        globals.define("b", null);
+        assertEquals(1L, globals.get(name("a")));
+        assertNull(globals.get(name("b")));
+
+        globals.assign(name("b"), "x");
+        globals.assign(globals.layout.find("a"), name("a"), null);
+        assertEquals("x", globals.get(globals.layout.find("b"), name("b")));
+        assertNull(globals.get(name("a")));
+        assertEquals(2, globals.bindings().size());
+    }
+
+    @Test
+    @DisplayName("Should report undefined globals without giving them a slot")
+    void testUndefined() {
+        Environment globals = new Environment();
+        RuntimeError error = assertThrows(RuntimeError.class,
+                () -> globals.get(name("environmentTestMissing")));
+        assertEquals("Undefined variable 'environmentTestMissing'.", error.getMessage());
+        assertThrows(RuntimeError.class, () -> globals.assign(name("environmentTestMissing"), 1L));
+        assertThrows(NativeError.class, () -> globals.increment("environmentTestMissing"));
+        assertEquals(-1, globals.layout.find("environmentTestMissing"));
+        assertEquals(0, globals.layout.size());
+    }
+
+    @Test
+    @DisplayName("Should grow to names whose index is past the end of the table")
+    void testGrow() {
+        Environment globals = new Environment();
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            names.add("environmentTestGrow" + i);
+            globals.define(names.get(i), (long) i);
+        }
+        for (int i = 0; i < 300; i++) {
+            assertEquals((long) i, globals.get(name(names.get(i))));
+        }
+    }
+
+    @Test
+    @DisplayName("Should increment atomically from many threads")
+    void testIncrement() throws InterruptedException {
+        Environment globals = new Environment();
+        globals.define("count", 0L);
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 10_000; j++) globals.increment("count");
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) thread.join();
+        assertEquals(80_000L, globals.get(name("count")));
+
+        globals.define("half", 0.5);
+        assertEquals(1.5, globals.increment("half"));
+        globals.define("text", "x");
+        NativeError error = assertThrows(NativeError.class, () -> globals.increment("text"));
+        assertEquals("Operand must be a number.", error.getMessage());
+    }
+
+    @Test
+    @DisplayName("Should copy shared bindings on their first write")
+    void testShared() {
+        GlobalLayout layout = new GlobalLayout();
+        layout.index("environmentTestOther");
+        Object[] shared = new Object[layout.index("environmentTestShared") + 1];
+        shared[layout.find("environmentTestShared")] = 1L;
+        Environment first = new Environment(new GlobalLayout(layout), shared);
+        Environment second = new Environment(new GlobalLayout(layout), shared);
+
+        first.assign(name("environmentTestShared"), 5L);
+        assertEquals(2L, second.increment("environmentTestShared"));
+        assertEquals(5L, first.get(name("environmentTestShared")));
+        assertEquals(1L, shared[layout.find("environmentTestShared")]);
+        assertEquals(Map.of("environmentTestShared", 2L), second.bindings());
+    }
+
+    @Test
+    @DisplayName("Should let tasks count into a shared global with increment")
+    void testIncrementFromTasks() {
+        StringSink output = new StringSink();
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        LoxContext context = new LoxContext(output,
+                new Diagnostics(new PrintStream(errors, true, StandardCharsets.UTF_8)));
+        assertTrue(context.run("""
+            var hits = 0;
+            fun work() { for (var i = 0; i < 1000; i = i + 1) increment("hits"); }
+            parallel {
+              for (var t = 0; t < 4; t = t + 1) spawn(work);
+            }
+            print hits;
+            """));
+        assertEquals("4000\n", output.toString());
+
+        assertFalse(context.run("increment(1);"));
+        assertEquals("Global name must be a string.\n[line 1]",
+                errors.toString(StandardCharsets.UTF_8).trim());
+    }
+}
@@ -0,0 +1,65 @@
+package cn.lfe.lox;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for GlobalLayout class
+ */
+public class GlobalLayoutTest {
+    @Test
+    @DisplayName("Should give names indices only when defined or linked")
+    void testIndices() {
+        GlobalLayout layout = new GlobalLayout();
+        assertEquals(-1, layout.find("a"));
+        assertEquals(0, layout.size());
+
+        assertEquals(0, layout.index("a"));
+        assertEquals(0, layout.index("a"));
+        assertArrayEquals(new int[] {1, 0, 2}, layout.link(List.of("b", "a", "c")));
+        assertEquals(3, layout.size());
+        assertEquals("c", layout.name(2));
+    }
+
+    @Test
+    @DisplayName("Should extend a frozen base without changing it or other extensions")
+    void testLineage() {
+        GlobalLayout layout = new GlobalLayout();
+        layout.index("a");
+        layout.index("b");
+        GlobalLayout base = layout.frozen();
+        layout.index("c");
+
+        GlobalLayout first = new GlobalLayout(base);
+        GlobalLayout second = new GlobalLayout(base);
+        assertEquals(1, first.find("b"));
+        assertEquals(2, first.index("x"));
+        assertEquals(2, second.index("y"));
+        assertEquals(3, second.index("x"));
+
+        assertEquals(-1, first.find("y"));
+        assertEquals(-1, first.find("c"));
+        assertEquals(-1, base.find("x"));
+        assertEquals(2, base.size());
+        assertEquals("y", second.name(2));
+        assertEquals("a", second.name(0));
+    }
+
+    @Test
+    @DisplayName("Should keep the globals of separate contexts apart")
+    void testContexts() {
+        LoxContext first = new LoxContext(new StringSink(), new Diagnostics());
+        LoxContext second = new LoxContext(new StringSink(), new Diagnostics());
+        assertTrue(first.run("var onlyHere = 1;"));
+        assertTrue(second.run("var onlyThere = 2;"));
+
+        assertEquals(-1, second.interpreter().globals.layout.find("onlyHere"));
+        assertEquals(-1, first.interpreter().globals.layout.find("onlyThere"));
+        assertEquals(first.interpreter().globals.layout.find("onlyHere"),
+                second.interpreter().globals.layout.find("onlyThere"));
+    }
+}
@@ -0,0 +1,139 @@
+package cn.lfe.lox;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for GlobalsSnapshot class
+ */
+public class GlobalsSnapshotTest {
+    private static final String PRELUDE = """
+        fun twice(x) { return x * 2; }
+        class Greeter {
+          init(name) { this.name = name; }
+          greet() { return "hello " + this.name; }
+        }
+        var limit = 10;
+        var unset;
+        """;
+
+    private static GlobalsSnapshot prelude() {
+        LoxContext context = new LoxContext(new StringSink(), new Diagnostics());
+        assertTrue(context.run(PRELUDE));
+        return context.snapshot();
+    }
+
+    private static LoxContext fork(GlobalsSnapshot snapshot, StringSink output) {
+        return new LoxContext(output, new Diagnostics(), snapshot);
+    }
+
+    @Test
+    @DisplayName("Should start contexts with the globals and natives of the snapshot")
+    void testFork() {
+        StringSink output = new StringSink();
+        assertTrue(fork(prelude(), output).run("""
+            print twice(limit);
+            print Greeter("lox").greet();
+            print unset;
+            var l = list();
+            push(l, 1);
+            print length(l);
+            """));
+        assertEquals("20\nhello lox\nnil\n1\n", output.toString());
+    }
+
+    @Test
+    @DisplayName("Should give each context its own copy of the bindings it changes")
+    void testCopyOnWrite() {
+        GlobalsSnapshot snapshot = prelude();
+        StringSink first = new StringSink();
+        StringSink second = new StringSink();
+        LoxContext a = fork(snapshot, first);
+        LoxContext b = fork(snapshot, second);
+
+        assertTrue(a.run("limit = 1; fun twice(x) { return x; } var extra = 3;"));
+        assertTrue(b.run("limit = limit + 5;"));
+        assertTrue(a.run("print limit; print twice(4); print extra;"));
+        assertTrue(b.run("print limit; print twice(4);"));
+        assertEquals("1\n4\n3\n", first.toString());
+        assertEquals("15\n8\n", second.toString());
+
+        StringSink third = new StringSink();
+        assertTrue(fork(snapshot, third).run("print limit;"));
+        assertEquals("10\n", third.toString());
+    }
+
+    @Test
+    @DisplayName("Should let snapshot functions find globals each context defines its own way")
+    void testForkLayouts() {
+        LoxContext context = new LoxContext(new StringSink(), new Diagnostics());
+        assertTrue(context.run("fun report() { return total; }"));
+        GlobalsSnapshot snapshot = context.snapshot();
+
+        StringSink first = new StringSink();
+        StringSink second = new StringSink();
+        LoxContext a = fork(snapshot, first);
+        LoxContext b = fork(snapshot, second);
+        assertTrue(a.run("var total = 1; print report();"));
+        assertTrue(b.run("var other = 2; var more = 3; var total = 4; print report();"));
+        assertTrue(a.run("print report();"));
+        assertEquals("1\n1\n", first.toString());
+        assertEquals("4\n", second.toString());
+
+        // What the forks added stays out of each other and the snapshot.
+        assertEquals(-1, a.interpreter().globals.layout.find("other"));
+        assertEquals(-1, snapshot.layout.find("other"));
+        assertEquals(-1, context.interpreter().globals.layout.find("other"));
+    }
+
+    @Test
+    @DisplayName("Should refuse globals that contexts could change under each other")
+    void testMutable() {
+        LoxContext context = new LoxContext(new StringSink(), new Diagnostics());
+        assertTrue(context.run("var table = list();"));
+        IllegalStateException error = assertThrows(IllegalStateException.class, context::snapshot);
+        assertEquals("Can't snapshot global 'table', scripts sharing its value could change it.",
+                error.getMessage());
+
+        context = new LoxContext(new StringSink(), new Diagnostics());
+        assertTrue(context.run("""
+            fun make() { var count = 0; fun next() { count = count + 1; return count; } return next; }
+            var next = make();
+            """));
+        assertThrows(IllegalStateException.class, context::snapshot);
+    }
+
+    @Test
+    @DisplayName("Should start the scripts of a service from the snapshot")
+    void testScriptService() throws Exception {
+        try (ScriptService service = new ScriptService(Duration.ofSeconds(30),
+                new ProgramCache(16), Budget.UNLIMITED, prelude())) {
+            ScriptResult result = service.submit("limit = limit + 1; print twice(limit);")
+                    .result().get(10, TimeUnit.SECONDS);
+            assertEquals(ScriptResult.Status.OK, result.status());
+            assertEquals("22\n", result.output());
+
+            result = service.submit("print limit;").result().get(10, TimeUnit.SECONDS);
+            assertEquals("10\n", result.output());
+        }
+    }
+
+    @Test
+    @DisplayName("Should report errors of forked contexts to their own diagnostics")
+    void testErrors() {
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        LoxContext context = new LoxContext(prelude(), new PrintStream(new ByteArrayOutputStream()),
+                new PrintStream(errors, true, StandardCharsets.UTF_8));
+        assertFalse(context.run("print missing;"));
+        assertEquals("Undefined variable 'missing'.\n[line 1]",
+                errors.toString(StandardCharsets.UTF_8).trim());
+    }
+}
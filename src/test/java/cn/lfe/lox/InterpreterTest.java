@@ -466,4 +466,203 @@ public class InterpreterTest {
         
         tearDown();
     }
+
+    @Test
+    @DisplayName("Should share captured variables between closures and their frame")
+    void testClosuresShareUpvalues() {
+        run("""
+            fun makeCounter() {
+              var count = 0;
+              fun increment() { count = count + 1; return count; }
+              fun read() { return count; }
+              increment();
+              print read();
+              return increment;
+            }
+            var counter = makeCounter();
+            print counter();
+            print counter();
+            print makeCounter()();
+            """);
+
+        String output = outputStream.toString().trim();
+        assertEquals("1\n2\n3\n1\n2", output);
+
+        tearDown();
+    }
+
+    @Test
+    @DisplayName("Should capture a fresh variable for every loop iteration")
+    void testClosuresInLoops() {
+        run("""
+            var first;
+            var second;
+            for (var i = 0; i < 2; i = i + 1) {
+              var j = i;
+              fun show() { print j; }
+              if (i == 0) first = show; else second = show;
+            }
+            first();
+            second();
+            """);
+
+        String output = outputStream.toString().trim();
+        assertEquals("0\n1", output);
+
+        tearDown();
+    }
+
+    @Test
+    @DisplayName("Should bind arguments of every arity and adapt list-based natives")
+    void testCallArities() {
+        interpreter.globals.define("sum", new LoxCallable() {
+            @Override
+            public int arity() { return 3; }
+
+            @Override
+            public Object call(Interpreter interpreter, List<Object> arguments) {
+                return Numbers.toDouble(arguments.get(0)) + Numbers.toDouble(arguments.get(1))
+                        + Numbers.toDouble(arguments.get(2));
+            }
+        });
+        run("""
+            fun zero() { return "zero"; }
+            fun two(a, b) { return a - b; }
+            fun four(a, b, c, d) { return a + b + c + d; }
+            fun six(a, b, c, d, e, f) { return a + b + c + d + e + f; }
+            fun keep(x) { fun get() { return x; } x = x + 1; return get; }
+            print zero();
+            print two(5, 3);
+            print four(1, 2, 3, 4);
+            print six(1, 2, 3, 4, 5, 6);
+            print keep(41)();
+            print sum(1, 2, 3);
+            print two(1);
+            """);
+        assertTrue(interpreter.diagnostics.hadRuntimeError());
+
+        String output = outputStream.toString().trim();
+        assertEquals("zero\n2\n10\n21\n42\n6", output);
+
+        tearDown();
+    }
+
+    @Test
+    @DisplayName("Should specialize binary sites on observed operand types")
+    void testBinarySpecialization() {
+        Expr.Binary add = new Expr.Binary(
+            new Expr.Variable(new Token(IDENTIFIER, "a", null, 1)),
+            new Token(PLUS, "+", null, 1),
+            new Expr.Variable(new Token(IDENTIFIER, "b", null, 1))
+        );
+        interpreter.globals.define("a", 1.0);
+        interpreter.globals.define("b", 2.0);
+        assertEquals(BinaryNode.UNINITIALIZED, add.node);
+
+        assertEquals(3.0, interpreter.visitBinaryExpr(add));
+        assertEquals(BinaryNode.NUMBER_ADD, add.node);
+
+        // A string shows up: the site deoptimizes but still adds correctly.
+        interpreter.globals.define("a", "x");
+        interpreter.globals.define("b", "y");
+        assertEquals("xy", interpreter.visitBinaryExpr(add));
+        assertEquals(BinaryNode.GENERIC, add.node);
+
+        interpreter.globals.define("b", 1.0);
+        assertThrows(RuntimeError.class, () -> interpreter.visitBinaryExpr(add));
+    }
+
+    @Test
+    @DisplayName("Should specialize unary and logical sites and deoptimize on mismatch")
+    void testUnaryAndLogicalSpecialization() {
+        Expr.Unary not = new Expr.Unary(
+            new Token(BANG, "!", null, 1),
+            new Expr.Variable(new Token(IDENTIFIER, "v", null, 1))
+        );
+        Expr.Logical or = new Expr.Logical(
+            new Expr.Variable(new Token(IDENTIFIER, "v", null, 1)),
+            new Token(OR, "or", null, 1),
+            new Expr.Literal("right")
+        );
+
+        interpreter.globals.define("v", false);
+        assertEquals(true, interpreter.visitUnaryExpr(not));
+        assertEquals("right", interpreter.visitLogicalExpr(or));
+        assertEquals(UnaryNode.BOOLEAN_NOT, not.node);
+        assertEquals(LogicalNode.BOOLEAN, or.node);
+
+        interpreter.globals.define("v", null);
+        assertEquals(true, interpreter.visitUnaryExpr(not));
+        assertEquals("right", interpreter.visitLogicalExpr(or));
+        assertEquals(UnaryNode.GENERIC, not.node);
+        assertEquals(LogicalNode.GENERIC, or.node);
+    }
+
+    @Test
+    @DisplayName("Should report the Lox calls a runtime error unwound")
+    void testRuntimeErrorTrace() {
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        PrintStream originalErr = System.err;
+        System.setErr(new PrintStream(errors));
+        try {
+            run("""
+                fun inner(x) {
+                  return x + nil;
+                }
+                fun outer() { return inner(1); }
+                outer();
+                """);
+            // The interpreter is usable again, from an empty call stack.
+            run("print -nil;");
+        } finally {
+            System.setErr(originalErr);
+        }
+
+        assertEquals("""
+            Operands must be two numbers or two strings.
+            [line 2] in inner()
+            [line 4] in outer()
+            [line 5] in script
+            Operand must be a number.
+            [line 1]""", errors.toString().trim());
+        assertEquals(0, new RuntimeError(null, "message").getStackTrace().length);
+
+        tearDown();
+    }
+
+    @Test
+    @DisplayName("Should sum up the middle of a deep runtime error trace")
+    void testDeepRuntimeErrorTrace() {
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        PrintStream originalErr = System.err;
+        System.setErr(new PrintStream(errors));
+        try {
+            run("""
+                fun f(n) {
+                  if (n == 0) return -nil;
+                  return f(n - 1);
+                }
+                f(40);
+                """);
+        } finally {
+            System.setErr(originalErr);
+        }
+
+        List<String> trace = errors.toString().lines().toList();
+        assertEquals(36, trace.size());
+        assertEquals("Operand must be a number.", trace.get(0));
+        assertEquals("[line 2] in f()", trace.get(1));
+        assertEquals("[line 3] in f()", trace.get(32));
+        assertEquals("[8 more calls]", trace.get(33));
+        assertEquals("[line 3] in f()", trace.get(34));
+        assertEquals("[line 5] in script", trace.get(35));
+
+        tearDown();
+    }
+
+    private void run(String source) {
+        List<Stmt> statements = new Parser(new Scanner(source).scanTokens()).parse();
+        new Resolver(interpreter).resolve(statements);
+        interpreter.interpret(statements);
+    }
 }
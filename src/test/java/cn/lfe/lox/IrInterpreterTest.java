@@ -0,0 +1,113 @@
+package cn.lfe.lox;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the IR pipeline: lowering, passes and the IR backend
+ */
+public class IrInterpreterTest {
+
+    private Interpreter interpreter;
+    private ByteArrayOutputStream outputStream;
+    private PrintStream originalOut;
+
+    @BeforeEach
+    void setUp() {
+        interpreter = new Interpreter();
+        outputStream = new ByteArrayOutputStream();
+        originalOut = System.out;
+        System.setOut(new PrintStream(outputStream));
+    }
+
+    @AfterEach
+    void tearDown() {
+        System.setOut(originalOut);
+    }
+
+    @Test
+    @DisplayName("Should run the same program identically before and after optimization")
+    void testOptimizedProgramMatchesUnoptimized() {
+        String source = """
+            var total = 0;
+            for (var i = 0; i < 5 and true; i = i + 1) {
+              total = total + i * 2;
+            }
+            print total;
+            fun makeAdder(n) { fun add(x) { return x + n; } return add; }
+            print makeAdder(10)(5);
+            print nil or "fallback";
+            if (1 > 2) print "unreachable"; else print "reachable";
+            """;
+
+        run(source, List.of());
+        String unoptimized = outputStream.toString();
+        outputStream.reset();
+        run(source, PassManager.DEFAULT_PASSES);
+
+        assertEquals("20\n15\nfallback\nreachable\n", unoptimized);
+        assertEquals(unoptimized, outputStream.toString());
+    }
+
+    @Test
+    @DisplayName("Should fold constants and drop dead branches")
+    void testFoldingAndCfgSimplification() {
+        IrFunction script = lower("if (1 + 2 > 2) print 2 * 3; else print \"no\";");
+        new PassManager(List.of("fold", "simplify-cfg", "dce"), null, System.err).run(script);
+
+        assertEquals(1, script.blocks.size());
+        List<Instruction> instructions = script.blocks.get(0).instructions;
+        assertEquals(Instruction.Op.PRINT, instructions.get(0).op);
+        assertEquals(6L, instructions.get(0).args[0].value);
+        assertEquals(Instruction.Op.RETURN, instructions.get(1).op);
+    }
+
+    @Test
+    @DisplayName("Should keep operations that fail at runtime")
+    void testFoldingKeepsRuntimeErrors() {
+        IrFunction script = lower("print 1 + \"a\";");
+        new PassManager(List.of("fold"), null, System.err).run(script);
+
+        assertEquals(Instruction.Op.ADD, script.blocks.get(0).instructions.get(0).op);
+    }
+
+    @Test
+    @DisplayName("Should dump IR after the requested pass")
+    void testDumpAfterPass() {
+        ByteArrayOutputStream dump = new ByteArrayOutputStream();
+        new PassManager(List.of("fold", "dce"), "fold", new PrintStream(dump))
+            .run(lower("print 1 + 2;"));
+
+        assertEquals("; IR after fold\n" +
+            "fn script (arity=0, slots=0, temps=1, upvalues=0)\n" +
+            "b0:\n" +
+            "  print 3\n" +
+            "  return nil\n", dump.toString());
+    }
+
+    @Test
+    @DisplayName("Should reject unknown passes")
+    void testUnknownPass() {
+        assertThrows(IllegalArgumentException.class,
+            () -> new PassManager(List.of("inline"), null, System.err));
+    }
+
+    private IrFunction lower(String source) {
+        List<Stmt> statements = new Parser(new Scanner(source).scanTokens()).parse();
+        new Resolver(interpreter).resolve(statements);
+        return new IrBuilder().lower(statements);
+    }
+
+    private void run(String source, List<String> passes) {
+        IrFunction script = new PassManager(passes, null, System.err).run(lower(source));
+        new IrInterpreter(interpreter).interpret(script);
+    }
+}
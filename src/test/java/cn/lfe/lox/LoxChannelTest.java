@@ -0,0 +1,166 @@
+package cn.lfe.lox;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for LoxChannel class
+ */
+public class LoxChannelTest {
+    private final Interpreter interpreter = new Interpreter(new StringSink());
+
+    @Test
+    @DisplayName("Should hand values over in order, nil included")
+    void testOrder() {
+        LoxChannel channel = new LoxChannel(3);
+        channel.send(interpreter, 1L);
+        channel.send(interpreter, null);
+        channel.send(interpreter, "three");
+
+        assertEquals(1L, channel.receive(interpreter));
+        assertNull(channel.receive(interpreter));
+        channel.send(interpreter, 4L);
+        assertEquals("[three, 4]", channel.receiveMany(interpreter, 10).toString());
+    }
+
+    @Test
+    @DisplayName("Should drain a closed channel, then give nil and refuse sends")
+    void testClose() {
+        LoxChannel channel = new LoxChannel(4);
+        channel.send(interpreter, 1L);
+        channel.close();
+
+        assertThrows(NativeError.class, () -> channel.send(interpreter, 2L));
+        assertEquals(1L, channel.receive(interpreter));
+        assertNull(channel.receive(interpreter));
+        assertEquals(0, channel.receiveMany(interpreter, 4).size());
+    }
+
+    @Test
+    @DisplayName("Should block senders while full and receivers while empty")
+    void testBlocking() throws Exception {
+        LoxChannel channel = new LoxChannel(1);
+        channel.send(interpreter, 1L);
+        CompletableFuture<Void> sender = CompletableFuture.runAsync(
+                () -> channel.send(new Interpreter(new StringSink()), 2L));
+        Thread.sleep(100);
+        assertFalse(sender.isDone());
+
+        assertEquals(1L, channel.receive(interpreter));
+        sender.get(10, TimeUnit.SECONDS);
+        assertEquals(2L, channel.receive(interpreter));
+
+        CompletableFuture<Object> receiver = CompletableFuture.supplyAsync(
+                () -> channel.receive(new Interpreter(new StringSink())));
+        Thread.sleep(100);
+        assertFalse(receiver.isDone());
+        channel.close();
+        assertNull(receiver.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    @DisplayName("Should lose and duplicate nothing with many senders and receivers")
+    void testManySendersAndReceivers() throws Exception {
+        LoxChannel channel = new LoxChannel(8);
+        int senders = 4;
+        int perSender = 20_000;
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            List<Future<?>> sending = new ArrayList<>();
+            for (int s = 0; s < senders; s++) {
+                long base = (long) s * perSender;
+                sending.add(executor.submit(() -> {
+                    Interpreter own = new Interpreter(new StringSink());
+                    for (long i = 0; i < perSender; i++) {
+                        channel.send(own, base + i);
+                    }
+                }));
+            }
+            List<Future<long[]>> receiving = new ArrayList<>();
+            for (int r = 0; r < 4; r++) {
+                boolean batched = r % 2 == 0;
+                receiving.add(executor.submit(() -> {
+                    Interpreter own = new Interpreter(new StringSink());
+                    long count = 0;
+                    long sum = 0;
+                    while (true) {
+                        if (batched) {
+                            LoxList values = channel.receiveMany(own, 5);
+                            if (values.size() == 0) break;
+                            for (int i = 0; i < values.size(); i++) {
+                                sum += (long) Numbers.toDouble(values.get((long) i));
+                                count++;
+                            }
+                        } else {
+                            Object value = channel.receive(own);
+                            if (value == null) break;
+                            sum += (Long) value;
+                            count++;
+                        }
+                    }
+                    return new long[] {count, sum};
+                }));
+            }
+
+            for (Future<?> future : sending) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+            channel.close();
+            long count = 0;
+            long sum = 0;
+            for (Future<long[]> future : receiving) {
+                long[] result = future.get(30, TimeUnit.SECONDS);
+                count += result[0];
+                sum += result[1];
+            }
+            long total = (long) senders * perSender;
+            assertEquals(total, count);
+            assertEquals(total * (total - 1) / 2, sum);
+        }
+    }
+
+    @Test
+    @DisplayName("Should connect the stages of a pipeline of tasks")
+    void testPipeline() {
+        StringSink output = new StringSink();
+        LoxContext context = new LoxContext(output, new Diagnostics());
+        assertTrue(context.run("""
+            var numbers = channel(4);
+            var squares = channel(4);
+            fun produce() {
+              for (var i = 1; i <= 100; i = i + 1) send(numbers, i);
+              close(numbers);
+            }
+            fun square() {
+              var n = receive(numbers);
+              while (n != nil) {
+                send(squares, n * n);
+                n = receive(numbers);
+              }
+              close(squares);
+            }
+            fun sum() {
+              var total = 0;
+              var batch = receiveMany(squares, 16);
+              while (length(batch) > 0) {
+                for (var i = 0; i < length(batch); i = i + 1) total = total + get(batch, i);
+                batch = receiveMany(squares, 16);
+              }
+              return total;
+            }
+            spawn(produce);
+            spawn(square);
+            print join(spawn(sum));
+            """));
+        assertEquals("338350\n", output.toString());
+    }
+}
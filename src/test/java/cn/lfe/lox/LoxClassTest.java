@@ -0,0 +1,145 @@
+package cn.lfe.lox;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for LoxClass class
+ */
+public class LoxClassTest {
+
+    private final Interpreter interpreter = new Interpreter();
+
+    @Test
+    @DisplayName("Should run methods, initializers, this and super")
+    void testClasses() {
+        String output = run("""
+            class Animal {
+              init(name) { this.name = name; }
+              speak() { return this.name + " makes a sound"; }
+            }
+            class Dog < Animal {
+              init(name) { super.init(name); this.tricks = 0; }
+              speak() { return super.speak() + ", woof"; }
+              learn() { this.tricks = this.tricks + 1; return this; }
+            }
+            var d = Dog("rex");
+            print d.speak();
+            print d.learn().learn().tricks;
+            var bound = d.speak;
+            print bound();
+            fun later() { return bound; }
+            print later()();
+            print d.init("max").name;
+            print d;
+            """);
+
+        assertEquals("""
+            rex makes a sound, woof
+            2
+            rex makes a sound, woof
+            rex makes a sound, woof
+            max
+            Dog instance""", output);
+    }
+
+    @Test
+    @DisplayName("Should share shapes between instances with the same field order")
+    void testShapes() {
+        run("""
+            class P {}
+            var a = P(); a.x = 1; a.y = 2;
+            var b = P(); b.x = 3; b.y = 4;
+            var c = P(); c.y = 5; c.x = 6;
+            """);
+        LoxInstance a = (LoxInstance) interpreter.globals.get(name("a"));
+        LoxInstance b = (LoxInstance) interpreter.globals.get(name("b"));
+        LoxInstance c = (LoxInstance) interpreter.globals.get(name("c"));
+
+        assertSame(a.shape, b.shape);
+        assertNotSame(a.shape, c.shape);
+        assertEquals(2, a.shape.fieldCount);
+        assertEquals(0, a.shape.indexOf("x"));
+        assertEquals(1, c.shape.indexOf("x"));
+        assertEquals(4L, b.fields[b.shape.indexOf("y")]);
+        // Later instances are allocated with room for the fields up front.
+        assertEquals(2, a.shape.klass.expectedFields);
+    }
+
+    @Test
+    @DisplayName("Should cache property sites on shape and follow shape changes")
+    void testInlineCaches() {
+        List<Stmt> statements = parse("""
+            class P { get() { return this.v; } }
+            var out = list();
+            var p = P(); p.v = 1;
+            var q = P(); q.w = 0; q.v = 2;
+            for (var i = 0; i < 4; i = i + 1) {
+              var o = p;
+              if (i >= 2) o = q;
+              push(out, o.get() + o.v);
+            }
+            print out;
+            """);
+        run(statements);
+
+        Stmt.Class p = (Stmt.Class) statements.getFirst();
+        Stmt.Return ret = (Stmt.Return) p.methods.getFirst().body.getFirst();
+        Expr.Get get = (Expr.Get) ret.value;
+        LoxInstance q = (LoxInstance) interpreter.globals.get(name("q"));
+        // The site last saw q, whose v lives in the second field.
+        assertSame(q.shape, get.cache.shape);
+        assertEquals(1, get.cache.index);
+        assertNull(get.cache.method);
+    }
+
+    @Test
+    @DisplayName("Should call methods directly and fall back to callable fields")
+    void testMethodCalls() {
+        String output = run("""
+            class Box {
+              init() { this.f = clock; }
+              id(x) { return x; }
+            }
+            var b = Box();
+            print b.id("direct");
+            print b.f() > 0;
+            b.id = Box;
+            print b.id();
+            """);
+
+        assertEquals("direct\ntrue\nBox instance", output);
+    }
+
+    private String run(String source) {
+        return run(parse(source));
+    }
+
+    private List<Stmt> parse(String source) {
+        List<Stmt> statements = new Parser(new Scanner(source).scanTokens()).parse();
+        new Resolver(interpreter).resolve(statements);
+        return statements;
+    }
+
+    private String run(List<Stmt> statements) {
+        PrintStream originalOut = System.out;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(out));
+        try {
+            interpreter.interpret(statements);
+        } finally {
+            System.setOut(originalOut);
+        }
+        return out.toString().trim();
+    }
+
+    private static Token name(String lexeme) {
+        return new Token(TokenType.IDENTIFIER, lexeme, null, 1);
+    }
+}
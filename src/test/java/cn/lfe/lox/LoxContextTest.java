@@ -0,0 +1,91 @@
+package cn.lfe.lox;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for LoxContext class
+ */
+public class LoxContextTest {
+
+    @Test
+    @DisplayName("Should keep globals, output and errors apart between contexts")
+    void testIsolation() {
+        ByteArrayOutputStream out1 = new ByteArrayOutputStream(), err1 = new ByteArrayOutputStream();
+        ByteArrayOutputStream out2 = new ByteArrayOutputStream(), err2 = new ByteArrayOutputStream();
+        LoxContext first = new LoxContext(new PrintStream(out1), new PrintStream(err1));
+        LoxContext second = new LoxContext(new PrintStream(out2), new PrintStream(err2));
+
+        assertTrue(first.run("var name = \"first\";"));
+        assertFalse(second.run("print name;"));
+        assertTrue(first.run("print name;"));
+
+        assertEquals("first", out1.toString().trim());
+        assertEquals("", err1.toString());
+        assertEquals("Undefined variable 'name'.\n[line 1]", err2.toString().trim());
+        assertFalse(first.hadError());
+        assertTrue(second.hadRuntimeError());
+
+        // Errors stick until cleared; globals survive clearing.
+        assertFalse(second.run("var name = \"second\";"));
+        second.clearErrors();
+        assertTrue(second.run("var name = \"second\"; print name;"));
+        assertEquals("second", out2.toString().trim());
+    }
+
+    @Test
+    @DisplayName("Should report compile errors to its own diagnostics")
+    void testCompileErrors() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(), err = new ByteArrayOutputStream();
+        LoxContext context = new LoxContext(new PrintStream(out), new PrintStream(err));
+
+        assertFalse(context.run("print 1 +;"));
+        assertTrue(context.hadError());
+        assertFalse(context.hadRuntimeError());
+        assertEquals("[line 1] Error at ';': Expect expression.", err.toString().trim());
+        assertEquals("", out.toString());
+    }
+
+    @Test
+    @DisplayName("Should run many contexts on parallel threads without interference")
+    void testParallelContexts() throws Exception {
+        int count = 32;
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                int id = i;
+                results.add(executor.submit(() -> {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    LoxContext context = new LoxContext(new PrintStream(out), new PrintStream(out));
+                    context.define("id", (long) id);
+                    String source = """
+                        var total = 0;
+                        fun add(n) { total = total + n; }
+                        for (var i = 0; i < 20000; i = i + 1) add(id);
+                        print total;
+                        """ + (id % 4 == 0 ? "print nil + 1;" : "");
+                    boolean ok = context.run(source);
+                    return ok + " " + out.toString().trim();
+                }));
+            }
+            for (int i = 0; i < count; i++) {
+                String expected = (i % 4 != 0) + " " + (20000 * i)
+                        + (i % 4 == 0 ? "\nOperands must be two numbers or two strings.\n[line 5]" : "");
+                assertEquals(expected, results.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
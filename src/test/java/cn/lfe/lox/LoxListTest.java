@@ -0,0 +1,173 @@
+package cn.lfe.lox;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for LoxList class
+ */
+public class LoxListTest {
+
+    @Test
+    @DisplayName("Should keep numbers unboxed until something else is stored")
+    void testSpecialization() {
+        LoxList list = new LoxList();
+        for (int i = 0; i < 20; i++) {
+            list.push((double) i);
+        }
+        assertTrue(list.isNumeric());
+        assertEquals(20, list.size());
+        assertEquals(19L, list.get(19.0));
+
+        list.set(3.0, 30.0);
+        assertTrue(list.isNumeric());
+
+        list.set(4.0, "four");
+        assertFalse(list.isNumeric());
+        assertEquals(30L, list.get(3.0));
+        assertEquals("four", list.get(4.0));
+        assertEquals(19L, list.get(19.0));
+
+        list.push(null);
+        assertNull(list.get(20.0));
+    }
+
+    @Test
+    @DisplayName("Should read integral numbers back as Longs")
+    void testIntegralElements() {
+        LoxList list = new LoxList();
+        list.push(3L);
+        list.push(2.5);
+        list.push(4.0);
+        list.push(-0.0);
+        list.push((double) Numbers.MAX_EXACT);
+        list.push((double) (Numbers.MAX_EXACT * 2));
+        assertTrue(list.isNumeric());
+        assertEquals(3L, list.get(0L));
+        assertEquals(2.5, list.get(1L));
+        assertEquals(4L, list.get(2L));
+        assertEquals(-0.0, list.get(3L));
+        assertEquals(Numbers.MAX_EXACT, list.get(4L));
+        assertEquals((double) (Numbers.MAX_EXACT * 2), list.get(5L));
+    }
+
+    @Test
+    @DisplayName("Should keep integral numbers as Longs when a list generalizes")
+    void testGeneralizedNumbers() {
+        LoxList list = new LoxList();
+        list.push(3L);
+        list.push(0.5);
+        list.push(-0.0);
+        list.push((double) (Numbers.MAX_EXACT * 2));
+        list.push("x");
+        assertFalse(list.isNumeric());
+        assertEquals(3L, list.get(0.0));
+        assertEquals(0.5, list.get(1.0));
+        assertEquals(-0.0, list.get(2.0));
+        assertEquals((double) (Numbers.MAX_EXACT * 2), list.get(3.0));
+    }
+
+    @Test
+    @DisplayName("Should slice, sort and print lists")
+    void testSliceAndSort() {
+        LoxList numbers = new LoxList();
+        for (double value : new double[] {3, -1, 2.5, 10}) {
+            numbers.push(value);
+        }
+        LoxList slice = numbers.slice(1.0, 4.0);
+        slice.sort();
+        assertEquals("[-1, 2.5, 10]", slice.toString());
+        assertEquals("[3, -1, 2.5, 10]", numbers.toString());
+
+        LoxList strings = new LoxList();
+        strings.push("pear");
+        strings.push(Rope.concat("apple".repeat(20), "!"));
+        strings.push("fig");
+        strings.sort();
+        assertEquals("fig", strings.get(1.0));
+        assertEquals("pear", strings.get(2.0));
+    }
+
+    @Test
+    @DisplayName("Should print lists and maps that contain themselves, however indirectly")
+    void testCycles() {
+        StringSink output = new StringSink();
+        assertTrue(new LoxContext(output, new Diagnostics()).run("""
+            var a = list();
+            var b = list();
+            push(a, b);
+            push(b, a);
+            print a;
+            var m = map();
+            put(m, "self", m);
+            put(m, "list", a);
+            push(b, m);
+            print m;
+            var shared = list();
+            push(shared, 1);
+            var twice = list();
+            push(twice, shared);
+            push(twice, shared);
+            print twice;
+            """));
+        assertEquals("[[[...]]]\n{self: {...}, list: [[[...], {...}]]}\n[[1], [1]]\n",
+                output.toString());
+    }
+
+    @Test
+    @DisplayName("Should reject bad indexes and unsortable lists")
+    void testErrors() {
+        LoxList list = new LoxList();
+        list.push(1.0);
+
+        assertEquals("List index out of range.",
+                assertThrows(NativeError.class, () -> list.get(1.0)).getMessage());
+        assertEquals("List index must be an integer.",
+                assertThrows(NativeError.class, () -> list.get(0.5)).getMessage());
+        assertEquals("List index must be an integer.",
+                assertThrows(NativeError.class, () -> list.set("0", 1.0)).getMessage());
+        assertThrows(NativeError.class, () -> list.slice(1.0, 0.0));
+
+        list.push(true);
+        assertThrows(NativeError.class, list::sort);
+        assertThrows(NativeError.class, () -> LoxList.cast("list"));
+    }
+
+    @Test
+    @DisplayName("Should index lists from Lox and report errors at the bracket")
+    void testIndexingFromLox() {
+        PrintStream originalOut = System.out;
+        PrintStream originalErr = System.err;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(out));
+        System.setErr(new PrintStream(err));
+        try {
+            Interpreter interpreter = new Interpreter();
+            List<Stmt> statements = new Parser(new Scanner("""
+                var xs = list();
+                push(xs, 1);
+                push(xs, 2);
+                xs[1] = xs[0] + xs[1];
+                print xs;
+                print length(slice(xs, 0, 1));
+                print xs[2];
+                """).scanTokens()).parse();
+            new Resolver(interpreter).resolve(statements);
+            interpreter.interpret(statements);
+            assertTrue(interpreter.diagnostics.hadRuntimeError());
+        } finally {
+            System.setOut(originalOut);
+            System.setErr(originalErr);
+        }
+
+        assertEquals("[1, 3]\n1", out.toString().trim());
+        assertEquals("List index out of range.\n[line 7]", err.toString().trim());
+    }
+}
@@ -0,0 +1,132 @@
+package cn.lfe.lox;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for LoxMap class
+ */
+public class LoxMapTest {
+
+    @Test
+    @DisplayName("Should compare keys like Lox equality")
+    void testKeyEquality() {
+        LoxMap map = new LoxMap();
+        map.put(1.0, "one");
+        map.put("name", "lox");
+        map.put(true, "yes");
+        map.put(null, "nil");
+        map.put(Double.NaN, "nan");
+
+        assertEquals("one", map.get(1.0));
+        assertEquals("lox", map.get(new String("name")));
+        assertEquals("yes", map.get(true));
+        assertEquals("nil", map.get(null));
+        assertEquals("nan", map.get(0.0 / 0.0));
+        assertNull(map.get("missing"));
+        assertFalse(map.has(false));
+        assertEquals(5, map.size());
+
+        // Ropes are flattened so they find the equal string.
+        Object rope = Rope.concat("k".repeat(40), "k".repeat(40));
+        map.put(rope, "rope");
+        assertEquals("rope", map.get("k".repeat(80)));
+
+        // Other values are keys by identity.
+        LoxList list = new LoxList();
+        map.put(list, "list");
+        assertEquals("list", map.get(list));
+        assertNull(map.get(new LoxList()));
+    }
+
+    @Test
+    @DisplayName("Should agree with HashMap under random puts and removes")
+    void testAgainstHashMap() {
+        Random random = new Random(42);
+        LoxMap map = new LoxMap();
+        Map<Object, Object> expected = new HashMap<>();
+        for (int i = 0; i < 200_000; i++) {
+            int n = random.nextInt(5_000);
+            Object key = random.nextBoolean() ? (Object) (double) n : "k" + n;
+            switch (random.nextInt(3)) {
+                case 0, 1 -> {
+                    map.put(key, (double) i);
+                    expected.put(key, (double) i);
+                }
+                default -> assertEquals(expected.remove(key), map.remove(key));
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        for (int n = 0; n < 5_000; n++) {
+            assertEquals(expected.get((double) n), map.get((double) n));
+            assertEquals(expected.containsKey("k" + n), map.has("k" + n));
+        }
+
+        // Integral number keys come back as Longs.
+        Set<Object> expectedKeys = new HashSet<>();
+        for (Object key : expected.keySet()) {
+            expectedKeys.add(key instanceof Double number ? Numbers.fromDouble(number) : key);
+        }
+        LoxList keys = map.keys();
+        Set<Object> seen = new HashSet<>();
+        for (int i = 0; i < keys.size(); i++) {
+            seen.add(keys.get((double) i));
+        }
+        assertEquals(expectedKeys, seen);
+    }
+
+    @Test
+    @DisplayName("Should list number keys without boxing them")
+    void testNumericKeys() {
+        LoxMap map = new LoxMap();
+        for (int i = 0; i < 1_000; i++) {
+            map.put((double) i, null);
+        }
+        LoxList keys = map.keys();
+        assertTrue(keys.isNumeric());
+        assertEquals(1_000, keys.size());
+        keys.sort();
+        assertEquals(999L, keys.get(999.0));
+        assertEquals(0L, keys.get(0.0));
+    }
+
+    @Test
+    @DisplayName("Should use maps from Lox through natives and indexing")
+    void testMapsFromLox() {
+        PrintStream originalOut = System.out;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(out));
+        try {
+            Interpreter interpreter = new Interpreter();
+            List<Stmt> statements = new Parser(new Scanner("""
+                var m = map();
+                put(m, "a", 1);
+                m["b"] = 2;
+                m[3] = "three";
+                print get(m, "a") + m["b"];
+                print has(m, "c");
+                print remove(m, 3);
+                print size(m);
+                print length(keys(m));
+                """).scanTokens()).parse();
+            new Resolver(interpreter).resolve(statements);
+            interpreter.interpret(statements);
+        } finally {
+            System.setOut(originalOut);
+        }
+
+        assertEquals("3\nfalse\nthree\n2\n2", out.toString().trim());
+    }
+}
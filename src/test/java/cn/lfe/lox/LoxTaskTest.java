@@ -0,0 +1,156 @@
+package cn.lfe.lox;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for LoxTask class
+ */
+public class LoxTaskTest {
+    private final StringSink output = new StringSink();
+    private final ByteArrayOutputStream errors = new ByteArrayOutputStream();
+    private final LoxContext context = new LoxContext(output,
+            new Diagnostics(new PrintStream(errors, true, StandardCharsets.UTF_8)));
+
+    @Test
+    @DisplayName("Should run spawned functions and join their results")
+    void testSpawnAndJoin() {
+        assertTrue(context.run("""
+            fun fib(n) { if (n < 2) return n; return fib(n - 1) + fib(n - 2); }
+            var tasks = list();
+            for (var i = 0; i < 4; i = i + 1) {
+              var n = 10 + i;
+              fun work() { return fib(n); }
+              push(tasks, spawn(work));
+            }
+            for (var i = 0; i < 4; i = i + 1) print join(get(tasks, i));
+            """));
+        assertEquals("55\n89\n144\n233\n", output.toString());
+    }
+
+    @Test
+    @DisplayName("Should give tasks their own copy of captured variables")
+    void testCapturesAreCopied() {
+        assertTrue(context.run("""
+            fun counter() {
+              var count = 0;
+              fun increment() { count = count + 1; return count; }
+              print join(spawn(increment));
+              print join(spawn(increment));
+              print count;
+
+              fun countdown(n) { if (n == 0) return "done"; return countdown(n - 1); }
+              fun run() { return countdown(20); }
+              print join(spawn(run));
+            }
+            counter();
+            """));
+        assertEquals("1\n1\n0\ndone\n", output.toString());
+    }
+
+    @Test
+    @DisplayName("Should wait for every task of a parallel block")
+    void testParallelBlock() {
+        assertTrue(context.run("""
+            fun work() { sleep(20); print "task"; }
+            parallel {
+              for (var i = 0; i < 8; i = i + 1) spawn(work);
+            }
+            print "after";
+            """));
+        String[] lines = output.toString().split("\n");
+        assertEquals(9, lines.length);
+        assertTrue(Arrays.stream(lines, 0, 8).allMatch("task"::equals));
+        assertEquals("after", lines[8]);
+    }
+
+    @Test
+    @DisplayName("Should cancel the other tasks when one fails and report its trace")
+    void testFailure() throws Exception {
+        CompletableFuture<Boolean> run = CompletableFuture.supplyAsync(() -> context.run("""
+            fun spin() { while (true) {} }
+            fun sleepy() { sleep(60000); }
+            fun fail() { sleep(20); return -"x"; }
+            parallel {
+              spawn(spin);
+              spawn(sleepy);
+              spawn(fail);
+            }
+            print "unreachable";
+            """));
+
+        assertFalse(run.get(10, TimeUnit.SECONDS));
+        assertEquals("", output.toString());
+        assertEquals("Operand must be a number.\n[line 3] in fail()\n[line 7] in task",
+                errors.toString(StandardCharsets.UTF_8).trim());
+    }
+
+    @Test
+    @DisplayName("Should stop tasks when the script is cancelled")
+    void testCancel() throws Exception {
+        CompletableFuture<Boolean> run = CompletableFuture.supplyAsync(() -> context.run("""
+            fun spin() { while (true) {} }
+            spawn(spin);
+            spawn(spin);
+            while (true) {}
+            """));
+        Thread.sleep(50);
+        context.cancel();
+
+        assertFalse(run.get(10, TimeUnit.SECONDS));
+        assertFalse(context.hadRuntimeError());
+    }
+
+    @Test
+    @DisplayName("Should let go of finished tasks, keeping the first failure")
+    void testFinishedTasksLeaveScope() {
+        Interpreter interpreter = context.interpreter();
+        TaskScope scope = new TaskScope(null);
+        NativeFunction work = new NativeFunction(0) {
+            @Override
+            public Object call0(Interpreter interpreter) {
+                return 1L;
+            }
+        };
+        for (int i = 0; i < 1_000; i++) {
+            LoxTask task = new LoxTask(interpreter, work, scope);
+            scope.fork(task);
+            task.start();
+            assertEquals(1L, task.join(interpreter));
+        }
+        assertEquals(0, scope.size());
+
+        NativeFunction fail = new NativeFunction(0) {
+            @Override
+            public Object call0(Interpreter interpreter) {
+                throw new RuntimeError(new Token(TokenType.IDENTIFIER, "fail", null, 3), "Failed.");
+            }
+        };
+        LoxTask failing = new LoxTask(interpreter, fail, scope);
+        scope.fork(failing);
+        failing.start();
+        assertThrows(RuntimeError.class, () -> failing.join(interpreter));
+        assertEquals(0, scope.size());
+        assertEquals("Failed.", assertThrows(RuntimeError.class, scope::join).getMessage());
+    }
+
+    @Test
+    @DisplayName("Should reject what can't be spawned or joined")
+    void testErrors() {
+        assertFalse(context.run("fun f(a) {} spawn(f);"));
+        context.clearErrors();
+        assertFalse(context.run("join(1);"));
+        assertEquals("Can only spawn functions that take no arguments.\n[line 1]\n"
+                        + "Can only join tasks.\n[line 1]\n",
+                errors.toString(StandardCharsets.UTF_8).replace("\r\n", "\n"));
+    }
+}
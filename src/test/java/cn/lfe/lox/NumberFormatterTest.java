@@ -0,0 +1,91 @@
+package cn.lfe.lox;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for NumberFormatter class
+ */
+public class NumberFormatterTest {
+
+    @Test
+    @DisplayName("Should format special and boundary values like stringify did")
+    void testSpecialValues() {
+        double[] values = {
+            0.0, -0.0, 1.0, -1.0, 0.5, 0.1, 0.2 + 0.1, 1e-3, 9.99e-4, 1e7, 9999999.0,
+            9999999.5, 1e21, 123456789.125, Double.NaN, Double.POSITIVE_INFINITY,
+            Double.NEGATIVE_INFINITY, Double.MAX_VALUE, Double.MIN_VALUE,
+            Double.MIN_NORMAL, Math.PI, -Math.E, 100.0 / 3, 2.5e-3
+        };
+        for (double value : values) {
+            assertEquals(legacyStringify(value), NumberFormatter.format(value), "value " + value);
+        }
+    }
+
+    @Test
+    @DisplayName("Should match the old stringify across a large random corpus")
+    void testRandomCorpus() {
+        Random random = new Random(20251018);
+        for (int i = 0; i < 300_000; i++) {
+            double value = switch (i % 5) {
+                // Any bit pattern.
+                case 0 -> Double.longBitsToDouble(random.nextLong());
+                // Counters and indices.
+                case 1 -> random.nextInt(20_000_000) - 10_000_000;
+                // Short decimals, as written in scripts.
+                case 2 -> (random.nextInt(2_000_000) - 1_000_000) / Math.pow(10, random.nextInt(7));
+                // Results of arithmetic.
+                case 3 -> random.nextDouble() * Math.pow(10, random.nextInt(12) - 4);
+                default -> (random.nextInt(1000) + 1) / (double) (random.nextInt(1000) + 1);
+            };
+            assertEquals(legacyStringify(value), NumberFormatter.format(value), "value " + value);
+        }
+    }
+
+    @Test
+    @DisplayName("Should format integer numbers like the same doubles")
+    void testIntegers() {
+        long[] values = {0, 1, -1, 9_999_999, -9_999_999, 10_000_000, -10_000_000,
+                123_456_789, Numbers.MAX_EXACT, -Numbers.MAX_EXACT};
+        byte[] buffer = new byte[NumberFormatter.MAX_LENGTH];
+        for (long value : values) {
+            assertEquals(legacyStringify(value), NumberFormatter.format(value), "value " + value);
+            int end = NumberFormatter.format(value, buffer, 0);
+            assertEquals(legacyStringify(value), new String(buffer, 0, end), "value " + value);
+        }
+    }
+
+    @Test
+    @DisplayName("Should format values around 15 significant digits like stringify did")
+    void testDigitLimit() {
+        double[] values = {
+            0.123456789012345, 0.1234567890123456, 0.12345678901234567,
+            1234567.12345678, 1234567.123456789, 9999999.99999999, 0.001000000000000001
+        };
+        for (double value : values) {
+            assertEquals(legacyStringify(value), NumberFormatter.format(value), "value " + value);
+            assertEquals(legacyStringify(-value), NumberFormatter.format(-value), "value " + -value);
+        }
+    }
+
+    @Test
+    @DisplayName("Should write into a buffer at an offset")
+    void testBufferOffset() {
+        byte[] buffer = new byte[4 + NumberFormatter.MAX_LENGTH];
+        int end = NumberFormatter.format(-12.75, buffer, 4);
+        assertEquals("-12.75", new String(buffer, 4, end - 4));
+    }
+
+    // How Interpreter.stringify printed numbers before NumberFormatter.
+    private static String legacyStringify(double value) {
+        String text = Double.toString(value);
+        if (text.endsWith(".0")) {
+            text = text.substring(0, text.length() - 2);
+        }
+        return text;
+    }
+}
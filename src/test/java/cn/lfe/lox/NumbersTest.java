@@ -0,0 +1,105 @@
+package cn.lfe.lox;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for Numbers class
+ */
+public class NumbersTest {
+
+    @Test
+    @DisplayName("Should keep integral literals in range as longs")
+    void testLiterals() {
+        assertEquals(42L, Numbers.literal(42.0));
+        assertEquals(0L, Numbers.literal(0.0));
+        assertEquals(Numbers.MAX_EXACT, Numbers.literal(9007199254740992.0));
+        assertEquals(-0.0, Numbers.literal(-0.0));
+        assertEquals(1.5, Numbers.literal(1.5));
+        assertEquals(1e300, Numbers.literal(1e300));
+        assertEquals("text", Numbers.literal("text"));
+    }
+
+    @Test
+    @DisplayName("Should stay long only while the result is exact")
+    void testIntegerResults() {
+        assertEquals(5L, Numbers.add(2L, 3L));
+        assertEquals(-1L, Numbers.subtract(2L, 3L));
+        assertEquals(6L, Numbers.multiply(2L, 3L));
+        assertEquals(2L, Numbers.divide(6L, 3L));
+        assertEquals(3.5, Numbers.divide(7L, 2L));
+        assertEquals(-3L, Numbers.negate(3L));
+        assertEquals(9007199254740992.0, Numbers.add(Numbers.MAX_EXACT, 1L));
+        assertEquals(9e18, Numbers.multiply(3_000_000_000L, 3_000_000_000L));
+        assertEquals(2.5, Numbers.add(2L, 0.5));
+        assertEquals(2.0, Numbers.add(1.0, 1.0));
+    }
+
+    @Test
+    @DisplayName("Should keep the sign of zero and the double special values")
+    void testSpecialValues() {
+        assertEquals(-0.0, Numbers.negate(0L));
+        assertEquals(-0.0, Numbers.multiply(0L, -5L));
+        assertEquals(-0.0, Numbers.multiply(-5L, 0L));
+        assertEquals(0L, Numbers.multiply(0L, 0L));
+        assertEquals(-0.0, Numbers.divide(0L, -5L));
+        assertEquals(Double.POSITIVE_INFINITY, Numbers.divide(1L, 0L));
+        assertEquals(Double.NaN, Numbers.divide(0L, 0L));
+        assertFalse(Numbers.equal(0L, -0.0));
+        assertTrue(Numbers.equal(1L, 1.0));
+        assertTrue(Numbers.equal(Double.NaN, Double.NaN));
+    }
+
+    @Test
+    @DisplayName("Should share boxes for small integers but not for -0.0")
+    void testBoxCache() {
+        assertSame(Numbers.add(500L, 500L), Numbers.literal(1000.0));
+        assertSame(Numbers.box(1.0), Numbers.multiply(0.5, 2.0));
+        assertSame(Numbers.box(0.0), Numbers.box(0.0));
+        assertSame(Numbers.box(-1024L), Numbers.subtract(0L, 1024L));
+        assertNotSame(Numbers.box(1025L), Numbers.box(1025L));
+        assertEquals(-0.0, Numbers.box(-0.0));
+        assertEquals(0.5, Numbers.box(0.5));
+        assertEquals(Double.NaN, Numbers.box(Double.NaN));
+    }
+
+    @Test
+    @DisplayName("Should count cache hits and misses only when asked to")
+    void testBoxStats() {
+        String before = Numbers.boxStats();
+        Numbers.box(7L);
+        Numbers.box(7.5);
+        assertEquals(Numbers.COUNT_BOXES, !before.equals(Numbers.boxStats()));
+        assertTrue(Numbers.boxStats().startsWith("box cache: "));
+    }
+
+    @Test
+    @DisplayName("Should agree with double arithmetic on random integers")
+    void testMatchesDoubles() {
+        Random random = new Random(20261018);
+        for (int i = 0; i < 200_000; i++) {
+            long a = randomInteger(random);
+            long b = randomInteger(random);
+            double x = a, y = b;
+            assertEquals(x + y, Numbers.toDouble(Numbers.add(a, b)));
+            assertEquals(x - y, Numbers.toDouble(Numbers.subtract(a, b)));
+            assertEquals(x * y, Numbers.toDouble(Numbers.multiply(a, b)));
+            assertEquals(x / y, Numbers.toDouble(Numbers.divide(a, b)));
+            assertEquals(x < y, Numbers.less(a, b));
+            assertEquals(Double.valueOf(x).equals(y), Numbers.equal(a, b));
+        }
+    }
+
+    private static long randomInteger(Random random) {
+        return switch (random.nextInt(4)) {
+            case 0 -> random.nextInt(21) - 10;
+            case 1 -> random.nextInt();
+            case 2 -> random.nextLong(-Numbers.MAX_EXACT, Numbers.MAX_EXACT + 1);
+            default -> (random.nextInt(1000) - 500) * (long) random.nextInt(1000);
+        };
+    }
+}
@@ -29,7 +29,7 @@ public class ParserTest {
         assertInstanceOf(Stmt.Expression.class, statements.getFirst());
         Stmt.Expression exprStmt = (Stmt.Expression) statements.getFirst();
         assertInstanceOf(Expr.Literal.class, exprStmt.expression);
-        assertEquals(42.0, ((Expr.Literal) exprStmt.expression).value);
+        assertEquals(42L, ((Expr.Literal) exprStmt.expression).value);
     }
 
     @Test
@@ -52,8 +52,8 @@ public class ParserTest {
         
         Expr.Binary binary = (Expr.Binary) exprStmt.expression;
         assertEquals(PLUS, binary.operator.type);
-        assertEquals(1.0, ((Expr.Literal) binary.left).value);
-        assertEquals(2.0, ((Expr.Literal) binary.right).value);
+        assertEquals(1L, ((Expr.Literal) binary.left).value);
+        assertEquals(2L, ((Expr.Literal) binary.right).value);
     }
 
     @Test
@@ -75,7 +75,7 @@ public class ParserTest {
         
         Expr.Unary unary = (Expr.Unary) exprStmt.expression;
         assertEquals(MINUS, unary.operator.type);
-        assertEquals(5.0, ((Expr.Literal) unary.right).value);
+        assertEquals(5L, ((Expr.Literal) unary.right).value);
     }
 
     @Test
@@ -98,7 +98,7 @@ public class ParserTest {
         Stmt.Var varStmt = (Stmt.Var) statements.getFirst();
         assertEquals("x", varStmt.name.lexeme);
         assertInstanceOf(Expr.Literal.class, varStmt.initializer);
-        assertEquals(5.0, ((Expr.Literal) varStmt.initializer).value);
+        assertEquals(5L, ((Expr.Literal) varStmt.initializer).value);
     }
 
     @Test
@@ -205,7 +205,7 @@ public class ParserTest {
         
         Expr.Assign assign = (Expr.Assign) exprStmt.expression;
         assertEquals("x", assign.name.lexeme);
-        assertEquals(5.0, ((Expr.Literal) assign.value).value);
+        assertEquals(5L, ((Expr.Literal) assign.value).value);
     }
 
     @Test
@@ -300,7 +300,7 @@ public class ParserTest {
         
         Stmt.Return returnStmt = (Stmt.Return) statements.getFirst();
         assertInstanceOf(Expr.Literal.class, returnStmt.value);
-        assertEquals(42.0, ((Expr.Literal) returnStmt.value).value);
+        assertEquals(42L, ((Expr.Literal) returnStmt.value).value);
     }
 
     @Test
@@ -332,4 +332,37 @@ public class ParserTest {
         Expr.Binary innerBinary = (Expr.Binary) outerBinary.right;
         assertEquals(STAR, innerBinary.operator.type);
     }
+
+    @Test
+    @DisplayName("Should parse index expressions and index assignments")
+    void testIndexExpressions() {
+        // Test: xs[i][0] = 1;
+        List<Stmt> statements = new Parser(
+            new Scanner("xs[i][0] = 1;").scanTokens()).parse();
+
+        assertEquals(1, statements.size());
+        Stmt.Expression exprStmt = (Stmt.Expression) statements.getFirst();
+        assertInstanceOf(Expr.SetIndex.class, exprStmt.expression);
+
+        Expr.SetIndex set = (Expr.SetIndex) exprStmt.expression;
+        assertEquals(RIGHT_BRACKET, set.bracket.type);
+        assertEquals(0L, ((Expr.Literal) set.index).value);
+        assertEquals(1L, ((Expr.Literal) set.value).value);
+        assertInstanceOf(Expr.Index.class, set.object);
+        assertInstanceOf(Expr.Variable.class, ((Expr.Index) set.object).index);
+    }
+
+    @Test
+    @DisplayName("Should parse parallel blocks")
+    void testParallelBlock() {
+        // Test: parallel { spawn(f); spawn(g); }
+        List<Stmt> statements = new Parser(
+            new Scanner("parallel { spawn(f); spawn(g); }").scanTokens()).parse();
+
+        assertEquals(1, statements.size());
+        assertInstanceOf(Stmt.Parallel.class, statements.getFirst());
+        Stmt.Parallel parallel = (Stmt.Parallel) statements.getFirst();
+        assertEquals(PARALLEL, parallel.keyword.type);
+        assertEquals(2, parallel.body.statements.size());
+    }
 }
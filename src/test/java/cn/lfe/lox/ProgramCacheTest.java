@@ -0,0 +1,57 @@
+package cn.lfe.lox;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for ProgramCache class
+ */
+public class ProgramCacheTest {
+
+    @Test
+    @DisplayName("Should compile each source once")
+    void testHits() {
+        ProgramCache cache = new ProgramCache(8);
+        CompiledProgram first = cache.get("print 1;");
+        assertSame(first, cache.get("print 1;"));
+        assertNotSame(first, cache.get("print 2;"));
+
+        assertEquals(1, cache.hits());
+        assertEquals(2, cache.misses());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    @DisplayName("Should evict the least recently used program")
+    void testEviction() {
+        ProgramCache cache = new ProgramCache(2);
+        CompiledProgram a = cache.get("print \"a\";");
+        CompiledProgram b = cache.get("print \"b\";");
+        // Touching a leaves b as the eldest.
+        cache.get("print \"a\";");
+        cache.get("print \"c\";");
+
+        assertEquals(2, cache.size());
+        assertSame(a, cache.get("print \"a\";"));
+        assertNotSame(b, cache.get("print \"b\";"));
+    }
+
+    @Test
+    @DisplayName("Should not keep sources that fail to compile")
+    void testErrors() {
+        ProgramCache cache = new ProgramCache(8);
+        assertThrows(IllegalArgumentException.class, () -> cache.get("print 1 +;"));
+        assertThrows(IllegalArgumentException.class, () -> cache.get("print 1 +;"));
+
+        Diagnostics diagnostics = new Diagnostics(new PrintStream(OutputStream.nullOutputStream()));
+        assertNull(cache.get("print 1 +;", diagnostics));
+        assertTrue(diagnostics.hadError());
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.hits());
+    }
+}
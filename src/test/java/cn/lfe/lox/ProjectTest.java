@@ -0,0 +1,101 @@
+package cn.lfe.lox;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for Project class
+ */
+public class ProjectTest {
+    @TempDir
+    Path dir;
+
+    private Path write(String name, String source) throws IOException {
+        return Files.writeString(dir.resolve(name), source);
+    }
+
+    private static List<String> names(Project project) {
+        List<String> names = new ArrayList<>();
+        for (Project.Unit unit : project.units()) {
+            names.add(unit.path.getFileName().toString());
+        }
+        return names;
+    }
+
+    private static String run(Project project) {
+        StringSink output = new StringSink();
+        assertTrue(project.run(new LoxContext(output, new Diagnostics())));
+        return output.toString();
+    }
+
+    private static String errors(Project project) {
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        project.reportErrors(new PrintStream(errors, true, StandardCharsets.UTF_8));
+        return errors.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    @DisplayName("Should run files after the files defining the globals they use")
+    void testRunOrder() throws IOException {
+        List<Path> files = List.of(
+                write("a.lox", "print greet(name);"),
+                write("m.lox", "var name = \"lox\";"),
+                write("z.lox", "fun greet(who) { return \"hello \" + who; }"),
+                write("b.lox", "print clock() > 0;"));
+        Project project = Project.compile(files, 4);
+        assertFalse(project.hadError());
+        assertEquals(List.of("b.lox", "m.lox", "z.lox", "a.lox"), names(project));
+        assertEquals("true\nhello lox\n", run(project));
+    }
+
+    @Test
+    @DisplayName("Should fall back to path order for files that use each other")
+    void testCycle() throws IOException {
+        List<Path> files = List.of(
+                write("b.lox", "fun pong(n) { if (n > 0) return ping(n - 1); return \"pong\"; }"),
+                write("a.lox", "fun ping(n) { if (n > 0) return pong(n - 1); return \"ping\"; }"),
+                write("c.lox", "print ping(3);"));
+        Project project = Project.compile(files, 2);
+        assertEquals(List.of("a.lox", "b.lox", "c.lox"), names(project));
+        assertEquals("pong\n", run(project));
+    }
+
+    @Test
+    @DisplayName("Should report every file's errors in path order, whatever the jobs")
+    void testErrors() throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            files.add(write(String.format("f%02d.lox", i), i % 3 == 0 ? "print ;\nvar;" : "print " + i + ";"));
+        }
+        Project sequential = Project.compile(files, 1);
+        Project parallel = Project.compile(files.reversed(), 4);
+        assertTrue(sequential.hadError());
+        assertEquals(errors(sequential), errors(parallel));
+
+        String first = dir.resolve("f00.lox") + ": ";
+        assertTrue(errors(parallel).startsWith(first + "[line 1] Error at ';': Expect expression.\n"
+                + first + "[line 2] Error at ';': Expect variable name.\n"), errors(parallel));
+        assertEquals(14, errors(parallel).lines().count());
+        assertThrows(IllegalStateException.class, () -> parallel.run(new LoxContext()));
+    }
+
+    @Test
+    @DisplayName("Should report files it can't read")
+    void testMissing() throws IOException {
+        Project project = Project.compile(List.of(write("a.lox", "print 1;"), dir.resolve("gone.lox")), 2);
+        assertTrue(project.hadError());
+        assertTrue(errors(project).startsWith(dir.resolve("gone.lox") + ": [line 0] Error: Could not read file"));
+    }
+}
@@ -352,4 +352,49 @@ public class ResolverTest {
         
         assertDoesNotThrow(() -> resolver.resolve(statements));
     }
+
+    @Test
+    @DisplayName("Should capture only the variables a closure references")
+    void testClosureCapturesOnlyReferencedVariables() {
+        // fun outer(a) { var b; var c; fun inner() { return c; } }
+        Stmt.Return ret = new Stmt.Return(new Token(RETURN, "return", null, 1),
+            new Expr.Variable(new Token(IDENTIFIER, "c", null, 1)));
+        Stmt.Function inner = new Stmt.Function(
+            new Token(IDENTIFIER, "inner", null, 1), List.of(), List.of(ret));
+        Stmt.Var b = new Stmt.Var(new Token(IDENTIFIER, "b", null, 1), null);
+        Stmt.Var c = new Stmt.Var(new Token(IDENTIFIER, "c", null, 1), null);
+        Stmt.Function outer = new Stmt.Function(
+            new Token(IDENTIFIER, "outer", null, 1),
+            List.of(new Token(IDENTIFIER, "a", null, 1)),
+            Arrays.asList(b, c, inner));
+
+        resolver.resolve(List.of(outer));
+
+        assertEquals(4, outer.info.slotCount);
+        assertFalse(outer.info.params.get(0).captured);
+        assertFalse(b.local.captured);
+        assertTrue(c.local.captured);
+        assertArrayEquals(new int[]{c.local.slot}, inner.info.upvalueIndex);
+        assertEquals(0, ((Expr.Variable) ret.value).ref.upvalue);
+    }
+
+    @Test
+    @DisplayName("Should give methods a receiver slot and capture super")
+    void testMethodReceiverAndSuper() {
+        // class B < A { m(x) { fun f() { return this; } return super.m; } }
+        List<Stmt> statements = new Parser(new Scanner(
+            "class A {} class B < A { m(x) { fun f() { return this; } return super.m; } }")
+            .scanTokens()).parse();
+        resolver.resolve(statements);
+
+        Stmt.Class b = (Stmt.Class) statements.get(1);
+        Stmt.Function m = b.methods.getFirst();
+        assertEquals(0, m.info.receiver.slot);
+        assertEquals(1, m.info.params.getFirst().slot);
+        // 'this' is captured by f, 'super' by the method itself.
+        assertTrue(m.info.receiver.captured);
+        assertTrue(b.superclassLocal.captured);
+        assertArrayEquals(new boolean[]{true}, m.info.upvalueIsLocal);
+        assertArrayEquals(new int[]{b.superclassLocal.slot}, m.info.upvalueIndex);
+    }
 }
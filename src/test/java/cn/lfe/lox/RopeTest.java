@@ -0,0 +1,70 @@
+package cn.lfe.lox;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for Rope class
+ */
+public class RopeTest {
+
+    @Test
+    @DisplayName("Should keep short concatenations as plain strings")
+    void testShortConcatenation() {
+        assertEquals("ab", Rope.concat("a", "b"));
+        assertInstanceOf(String.class, Rope.concat("a", "b"));
+        assertSame("a", Rope.concat("a", ""));
+    }
+
+    @Test
+    @DisplayName("Should flatten long ropes in order")
+    void testFlattening() {
+        Object rope = "";
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 100_000; i++) {
+            String line = "line " + i + "\n";
+            rope = Rope.concat(rope, line);
+            expected.append(line);
+        }
+
+        assertInstanceOf(Rope.class, rope);
+        assertEquals(expected.length(), ((Rope) rope).length());
+        assertEquals(expected.toString(), rope.toString());
+        // Flattened once, then cached.
+        assertSame(rope.toString(), rope.toString());
+    }
+
+    @Test
+    @DisplayName("Should concatenate ropes on both sides and share pieces")
+    void testSharedPieces() {
+        Object base = Rope.concat("x".repeat(40), "y".repeat(40));
+        Object left = Rope.concat(base, "z".repeat(70));
+        Object right = Rope.concat("w".repeat(70), base);
+
+        assertEquals("x".repeat(40) + "y".repeat(40) + "z".repeat(70), left.toString());
+        assertEquals("w".repeat(70) + "x".repeat(40) + "y".repeat(40), right.toString());
+        assertEquals("x".repeat(40) + "y".repeat(40), base.toString());
+    }
+
+    @Test
+    @DisplayName("Should compare and print ropes like strings in Lox")
+    void testInterpreterTreatsRopesAsStrings() {
+        Interpreter interpreter = new Interpreter();
+        Object rope = Rope.concat("a".repeat(50), "b".repeat(50));
+        String flat = "a".repeat(50) + "b".repeat(50);
+        interpreter.globals.define("rope", rope);
+        interpreter.globals.define("flat", flat);
+
+        Expr.Binary notEqual = new Expr.Binary(
+            new Expr.Variable(new Token(TokenType.IDENTIFIER, "rope", null, 1)),
+            new Token(TokenType.BANG_EQUAL, "!=", null, 1),
+            new Expr.Variable(new Token(TokenType.IDENTIFIER, "flat", null, 1))
+        );
+
+        assertEquals(false, interpreter.visitBinaryExpr(notEqual));
+        assertEquals(flat, Interpreter.stringify(rope));
+        assertEquals(ValueType.STRING, ValueType.of(rope));
+    }
+}
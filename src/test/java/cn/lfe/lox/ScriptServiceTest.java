@@ -0,0 +1,126 @@
+package cn.lfe.lox;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for ScriptService class
+ */
+public class ScriptServiceTest {
+
+    @Test
+    @DisplayName("Should capture output and errors of each submission")
+    void testResults() throws Exception {
+        try (ScriptService service = new ScriptService()) {
+            ScriptResult ok = service.submit("print 1 + 2; print \"done\";").result().get();
+            ScriptResult syntax = service.submit("print 1 +;").result().get();
+            ScriptResult runtime = service.submit("print \"before\"; print -nil;").result().get();
+
+            assertEquals(ScriptResult.Status.OK, ok.status());
+            assertEquals("3\ndone\n", ok.output());
+            assertEquals("", ok.errors());
+            assertEquals(ScriptResult.Status.COMPILE_ERROR, syntax.status());
+            assertEquals("[line 1] Error at ';': Expect expression.", syntax.errors().trim());
+            assertEquals(ScriptResult.Status.RUNTIME_ERROR, runtime.status());
+            assertEquals("before\n", runtime.output());
+            assertEquals("Operand must be a number.\n[line 1]", runtime.errors().trim());
+        }
+    }
+
+    @Test
+    @DisplayName("Should stop runaway loops and recursion at their timeout")
+    void testTimeouts() throws Exception {
+        try (ScriptService service = new ScriptService()) {
+            Submission loop = service.submit("while (true) {}", Duration.ofMillis(100));
+            // Never deeper than 500 calls, but exponentially many of them.
+            Submission recursion = service.submit(
+                    "fun f(n) { if (n > 500) return 0; f(n + 1); return f(n + 1); } f(0);",
+                    Duration.ofMillis(100));
+
+            assertEquals(ScriptResult.Status.TIMED_OUT, loop.result().get(10, TimeUnit.SECONDS).status());
+            assertEquals(ScriptResult.Status.TIMED_OUT,
+                    recursion.result().get(10, TimeUnit.SECONDS).status());
+        }
+    }
+
+    @Test
+    @DisplayName("Should cancel scripts while they run or sleep")
+    void testCancel() throws Exception {
+        try (ScriptService service = new ScriptService()) {
+            Submission sleeping = service.submit("print \"start\"; sleep(60000); print \"end\";");
+            Thread.sleep(50);
+            assertTrue(sleeping.cancel());
+
+            ScriptResult result = sleeping.result().get(10, TimeUnit.SECONDS);
+            assertEquals(ScriptResult.Status.CANCELLED, result.status());
+            assertEquals("start\n", result.output());
+            assertFalse(sleeping.cancel());
+        }
+    }
+
+    @Test
+    @DisplayName("Should run deep recursion and report runaway recursion as a stack overflow")
+    void testDeepRecursion() throws Exception {
+        try (ScriptService service = new ScriptService()) {
+            ScriptResult deep = service.submit(
+                    "fun f(n) { if (n == 0) return 0; return f(n - 1) + 1; } print f(5000);")
+                    .result().get(10, TimeUnit.SECONDS);
+            assertEquals(ScriptResult.Status.OK, deep.status());
+            assertEquals("5000\n", deep.output());
+
+            ScriptResult runaway = service.submit("fun f(n) {\n  return f(n + 1);\n}\nf(0);")
+                    .result().get(10, TimeUnit.SECONDS);
+            assertEquals(ScriptResult.Status.RUNTIME_ERROR, runaway.status());
+            List<String> trace = runaway.errors().lines().toList();
+            assertEquals("Stack overflow.", trace.get(0));
+            assertEquals("[line 2] in f()", trace.get(1));
+            assertEquals("[" + (Interpreter.MAX_CALL_DEPTH - 33) + " more calls]", trace.get(33));
+            assertEquals("[line 4] in script", trace.get(trace.size() - 1));
+        }
+    }
+
+    @Test
+    @DisplayName("Should cancel scripts sleeping deep in recursion")
+    void testCancelDeep() throws Exception {
+        try (ScriptService service = new ScriptService()) {
+            Submission sleeping = service.submit(
+                    "fun f(n) { if (n == 0) sleep(60000); else f(n - 1); } f(1000);");
+            Thread.sleep(100);
+            assertTrue(sleeping.cancel());
+            assertEquals(ScriptResult.Status.CANCELLED,
+                    sleeping.result().get(10, TimeUnit.SECONDS).status());
+        }
+    }
+
+    @Test
+    @DisplayName("Should run one compiled program in many concurrent sleeping submissions")
+    void testConcurrentSubmissions() throws Exception {
+        CompiledProgram program = new LoxContext().compile("""
+            var total = 0;
+            for (var i = 0; i < 100; i = i + 1) total = total + i;
+            sleep(200);
+            print total;
+            """);
+        try (ScriptService service = new ScriptService()) {
+            long start = System.nanoTime();
+            List<Submission> submissions = new ArrayList<>();
+            for (int i = 0; i < 5_000; i++) {
+                submissions.add(service.submit(program));
+            }
+            for (Submission submission : submissions) {
+                ScriptResult result = submission.result().get(30, TimeUnit.SECONDS);
+                assertEquals(ScriptResult.Status.OK, result.status());
+                assertEquals("4950\n", result.output());
+            }
+            // The sleeps overlap instead of taking 5000 * 200ms.
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(20));
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package cn.lfe.lox;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for SuperinstructionPass class
+ */
+public class SuperinstructionPassTest {
+
+    private static final String LOOP = """
+        {
+          var total = 0;
+          var s = "";
+          for (var i = 0; i < 4; i = i + 1) {
+            total = total + i;
+            s = s + "x";
+          }
+          print total;
+          print s;
+        }
+        """;
+
+    private Interpreter interpreter;
+    private ByteArrayOutputStream outputStream;
+    private PrintStream originalOut;
+
+    @BeforeEach
+    void setUp() {
+        interpreter = new Interpreter();
+        outputStream = new ByteArrayOutputStream();
+        originalOut = System.out;
+        System.setOut(new PrintStream(outputStream));
+    }
+
+    @AfterEach
+    void tearDown() {
+        System.setOut(originalOut);
+    }
+
+    @Test
+    @DisplayName("Should fuse increments, accumulators, comparisons and prints")
+    void testFusesCommonShapes() {
+        List<Stmt> statements = compile(LOOP, EnumSet.allOf(Superinstruction.Kind.class));
+        List<Stmt> block = ((Stmt.Block) statements.get(0)).statements;
+        List<Stmt> loop = ((Stmt.Block) block.get(2)).statements;
+        Stmt.While whileStmt = (Stmt.While) loop.get(1);
+        List<Stmt> body = ((Stmt.Block) whileStmt.body).statements;
+        List<Stmt> inner = ((Stmt.Block) body.get(0)).statements;
+
+        assertInstanceOf(Superinstruction.Compare.class, ((Expr.Binary) whileStmt.condition).fused);
+        assertInstanceOf(Superinstruction.Increment.class,
+            ((Expr.Assign) ((Stmt.Expression) body.get(1)).expression).fused);
+        assertInstanceOf(Superinstruction.Accumulate.class,
+            ((Expr.Assign) ((Stmt.Expression) inner.get(0)).expression).fused);
+        assertInstanceOf(Superinstruction.Print.class, ((Stmt.Print) block.get(3)).fused);
+
+        interpreter.interpret(statements);
+        assertEquals("6\nxxxx\n", outputStream.toString());
+    }
+
+    @Test
+    @DisplayName("Should leave switched-off shapes alone and print the same output")
+    void testOffSwitch() {
+        List<Stmt> statements = compile(LOOP, EnumSet.noneOf(Superinstruction.Kind.class));
+        List<Stmt> block = ((Stmt.Block) statements.get(0)).statements;
+        assertNull(((Stmt.Print) block.get(3)).fused);
+
+        interpreter.interpret(statements);
+        assertEquals("6\nxxxx\n", outputStream.toString());
+    }
+
+    @Test
+    @DisplayName("Should keep generic errors when fused operands are not numbers")
+    void testFallbackErrors() {
+        List<Stmt> statements = compile("{ var i = \"a\"; i = i + 1; }",
+            EnumSet.allOf(Superinstruction.Kind.class));
+        Stmt.Block block = (Stmt.Block) statements.get(0);
+        Expr.Assign increment = (Expr.Assign) ((Stmt.Expression) block.statements.get(1)).expression;
+
+        // Sets up the script frame for the block's locals.
+        interpreter.interpret(List.of());
+        interpreter.visitVarStmt((Stmt.Var) block.statements.get(0));
+
+        RuntimeError error = assertThrows(RuntimeError.class,
+            () -> interpreter.visitAssignExpr(increment));
+        assertEquals("Operands must be two numbers or two strings.", error.getMessage());
+    }
+
+    private List<Stmt> compile(String source, Set<Superinstruction.Kind> kinds) {
+        List<Stmt> statements = new Parser(new Scanner(source).scanTokens()).parse();
+        new Resolver(interpreter).resolve(statements);
+        new SuperinstructionPass(kinds).fuse(statements);
+        return statements;
+    }
+}
@@ -0,0 +1,154 @@
+package cn.lfe.lox;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for TypeInference class
+ */
+public class TypeInferenceTest {
+
+    @Test
+    @DisplayName("Should prove loop counters are numbers")
+    void testLoopCounter() {
+        List<Expr.Binary> binaries = infer("""
+            {
+              var i = 0;
+              while (i < 10) { i = i + 1; }
+            }
+            """);
+
+        assertEquals(ValueType.NUMBER, binaries.get(0).operands);
+        assertEquals(ValueType.NUMBER, binaries.get(1).operands);
+    }
+
+    @Test
+    @DisplayName("Should narrow parameters after a checked operation")
+    void testNarrowingParameters() {
+        List<Expr.Binary> binaries = infer("""
+            fun fib(n) {
+              if (n < 2) return n;
+              return fib(n - 1) + fib(n - 2);
+            }
+            """);
+
+        assertEquals(ValueType.ANY, binaries.get(0).operands);    // n < 2
+        assertEquals(ValueType.ANY, binaries.get(1).operands);    // fib() + fib()
+        assertEquals(ValueType.NUMBER, binaries.get(2).operands); // n - 1
+        assertEquals(ValueType.NUMBER, binaries.get(3).operands); // n - 2
+    }
+
+    @Test
+    @DisplayName("Should prove string concatenation")
+    void testStrings() {
+        List<Expr.Binary> binaries = infer("""
+            fun greet(name) {
+              var greeting = "Hello, ";
+              var line = greeting + "world";
+              return line + name;
+            }
+            """);
+
+        assertEquals(ValueType.STRING, binaries.get(0).operands);
+        assertEquals(ValueType.ANY, binaries.get(1).operands);
+    }
+
+    @Test
+    @DisplayName("Should merge types flowing around loops and branches")
+    void testMergingAtJoinPoints() {
+        List<Expr.Binary> binaries = infer("""
+            fun f(flag) {
+              var x = 1;
+              while (flag) { x = x - 1; x = "s"; flag = false; }
+              return x - 1;
+            }
+            """);
+
+        assertEquals(ValueType.ANY, binaries.get(0).operands);
+        assertEquals(ValueType.ANY, binaries.get(1).operands);
+    }
+
+    @Test
+    @DisplayName("Should not trust captured locals or globals")
+    void testCapturedAndGlobals() {
+        List<Expr.Binary> binaries = infer("""
+            var g = 1;
+            fun f() {
+              var c = 1;
+              fun set() { c = "s"; }
+              set();
+              return c - g;
+            }
+            """);
+
+        assertEquals(ValueType.ANY, binaries.get(0).operands);
+    }
+
+    @Test
+    @DisplayName("Should not narrow a variable reassigned by the other operand")
+    void testNoNarrowingAcrossAssignment() {
+        List<Expr.Binary> binaries = infer("""
+            fun id(x) { return x; }
+            fun f(a) {
+              var b = a * id(a = "s");
+              return a - 1;
+            }
+            """);
+
+        assertEquals(ValueType.ANY, binaries.get(1).operands);
+    }
+
+    private static List<Expr.Binary> infer(String source) {
+        List<Stmt> statements = new Parser(new Scanner(source).scanTokens()).parse();
+        new Resolver(new Interpreter()).resolve(statements);
+        new TypeInference().infer(statements);
+
+        List<Expr.Binary> binaries = new ArrayList<>();
+        collect(statements, binaries);
+        return binaries;
+    }
+
+    // Binary expressions in source order.
+    private static void collect(List<Stmt> statements, List<Expr.Binary> binaries) {
+        for (Stmt statement : statements) {
+            if (statement instanceof Stmt.Block block) {
+                collect(block.statements, binaries);
+            } else if (statement instanceof Stmt.Function function) {
+                collect(function.body, binaries);
+            } else if (statement instanceof Stmt.If stmt) {
+                collect(stmt.condition, binaries);
+                collect(List.of(stmt.thenBranch), binaries);
+                if (stmt.elseBranch != null) collect(List.of(stmt.elseBranch), binaries);
+            } else if (statement instanceof Stmt.While stmt) {
+                collect(stmt.condition, binaries);
+                collect(List.of(stmt.body), binaries);
+            } else if (statement instanceof Stmt.Return stmt && stmt.value != null) {
+                collect(stmt.value, binaries);
+            } else if (statement instanceof Stmt.Var stmt && stmt.initializer != null) {
+                collect(stmt.initializer, binaries);
+            } else if (statement instanceof Stmt.Expression stmt) {
+                collect(stmt.expression, binaries);
+            }
+        }
+    }
+
+    private static void collect(Expr expr, List<Expr.Binary> binaries) {
+        if (expr instanceof Expr.Binary binary) {
+            binaries.add(binary);
+            collect(binary.left, binaries);
+            collect(binary.right, binaries);
+        } else if (expr instanceof Expr.Assign assign) {
+            collect(assign.value, binaries);
+        } else if (expr instanceof Expr.Grouping grouping) {
+            collect(grouping.expression, binaries);
+        } else if (expr instanceof Expr.Call call) {
+            collect(call.callee, binaries);
+            call.arguments.forEach(argument -> collect(argument, binaries));
+        }
+    }
+}